@@ -2,26 +2,48 @@ package Engine;
 
 /** * @author Wael Abouelsaadat */
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
-import java.util.Vector;
 
 import Exceptions.DBAppException;
 import Table.Page;
 import Table.BPlusTreeIndex;
+import Table.HashIndex;
+import Table.BufferPool;
 import Table.FileHandler;
 import Table.Table;
+import Table.Tuple;
+import Table.BTree.BTree;
 
 import java.util.Hashtable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 public class DBApp {
+	// Tables stay open across operations, their headers are saved at checkpoints
+	private static Hashtable<String, Table> openTables = new Hashtable<>();
+	private static int checkpointInterval = 1000;
+	private static int writesSinceCheckpoint = 0;
+	private static boolean shutdownHookAdded = false;
+
+	// Exists from the first write after a checkpoint until the next checkpoint
+	// ends. Found when the engine starts, it means the last run did not shut
+	// down cleanly, and the indices on disk may not match the pages
+	private static final String UNSAVED_WRITES_MARKER = "src\\main\\java\\resources\\DBApp.unsaved";
+	private static boolean unsavedWrites = false;
+	private static boolean recoveryChecked = false;
+
 	private Metadata metadata;
 	private FileHandler fileHandler;
 
 	/**
 	 * Constructs a new DBApp.
-	 * Loads max number of rows in page from DBApp.config.
+	 * Loads max number of rows in page, the buffer pool size (in bytes), the
+	 * number of writes between checkpoints, the default B+tree order and the
+	 * number of cached nodes per B+tree index from DBApp.config.
 	 * Initializes the tables hashtable and the metadata object.
 	 */
 	public DBApp() throws IOException {
@@ -31,8 +53,43 @@ public class DBApp {
 		String maxRowsCountInPageStr = prop.getProperty("MaximumRowsCountinPage");
 		Page.maximumRowsCountInPage = Integer.parseInt(maxRowsCountInPageStr);
 
+		String maxBufferPoolSizeStr = prop.getProperty("MaximumBufferPoolSize");
+		if (maxBufferPoolSizeStr != null)
+			BufferPool.maximumBufferPoolSize = Long.parseLong(maxBufferPoolSizeStr.trim());
+
+		String checkpointIntervalStr = prop.getProperty("CheckpointInterval");
+		if (checkpointIntervalStr != null)
+			checkpointInterval = Integer.parseInt(checkpointIntervalStr.trim());
+
+		String bPlusTreeOrderStr = prop.getProperty("BPlusTreeOrder");
+		if (bPlusTreeOrderStr != null)
+			BTree.defaultOrder = Integer.parseInt(bPlusTreeOrderStr.trim());
+
+		String cachedIndexNodesStr = prop.getProperty("MaximumCachedIndexNodes");
+		if (cachedIndexNodesStr != null)
+			BTree.maximumCachedNodes = Integer.parseInt(cachedIndexNodesStr.trim());
+
 		metadata = Metadata.getInstance();
 		fileHandler = new FileHandler();
+
+		synchronized (DBApp.class) {
+			if (!recoveryChecked) {
+				recoveryChecked = true;
+				if (new File(UNSAVED_WRITES_MARKER).exists())
+					rebuildIndices();
+			}
+			if (!shutdownHookAdded) {
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						checkpoint();
+						BTree.closeAll();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}));
+				shutdownHookAdded = true;
+			}
+		}
 	}
 
 	/**
@@ -59,12 +116,35 @@ public class DBApp {
 			String strClusteringKeyColumn,
 			Hashtable<String, String> htblColNameType) throws DBAppException, IOException, ClassNotFoundException {
 
-		Table table = loadTable(strTableName);
-		if (table != null)
+		createTable(strTableName, strClusteringKeyColumn, htblColNameType, false);
+	}
+
+	/**
+	 * Creates a table whose pages may be stored column by column. A columnar
+	 * table suits scans that filter on a few columns of a wide table: a select
+	 * only decodes the columns its conditions refer to, and skips pages whose
+	 * stored column ranges cannot match.
+	 *
+	 * @param strTableName           The name of the table to be created
+	 * @param strClusteringKeyColumn The name of the column that will be the primary
+	 *                               key
+	 * @param htblColNameType        A hashtable mapping column names to their types
+	 * @param columnar               Whether the pages are stored column by column
+	 * @throws DBAppException         If an error occurs during table creation
+	 * @throws ClassNotFoundException
+	 */
+	public void createTable(String strTableName,
+			String strClusteringKeyColumn,
+			Hashtable<String, String> htblColNameType,
+			boolean columnar) throws DBAppException, IOException, ClassNotFoundException {
+
+		// the catalog may list the table even if its file is missing
+		if (metadata.getSchema(strTableName) != null || loadTable(strTableName) != null)
 			throw new DBAppException("Table already exists");
 
 		// create a new table object
-		Table t = new Table(strTableName, strClusteringKeyColumn);
+		Table t = new Table(strTableName, strClusteringKeyColumn, columnar);
+		openTables.put(strTableName, t);
 
 		// save the table metadata
 		metadata.saveTable(t, htblColNameType);
@@ -82,25 +162,160 @@ public class DBApp {
 			String strColName,
 			String strIndexName) throws DBAppException, IOException, ClassNotFoundException {
 
+		createIndex(strTableName, strColName, strIndexName, BTree.defaultOrder);
+	}
+
+	/**
+	 * Creates a B+tree index with the given order on a specified column of a
+	 * table.
+	 *
+	 * @param strTableName the name of the table to create the index on
+	 * @param strColName   the name of the column to create the index on
+	 * @param strIndexName the name of the index to be created
+	 * @param order        the maximum number of keys in a node of the index
+	 * @throws DBAppException if an error occurs while creating the index
+	 */
+	public void createIndex(String strTableName,
+			String strColName,
+			String strIndexName,
+			int order) throws DBAppException, IOException, ClassNotFoundException {
+
+		if (order < 4)
+			throw new DBAppException("Index order must be at least 4");
+
+		Table table = loadTableToIndex(strTableName, strColName);
+		String colType = metadata.getSchema(strTableName).getColType(strColName);
+		new BPlusTreeIndex<>(table, strColName, colType, order);
+		metadata.saveIndex(strTableName, strColName, strIndexName, BPlusTreeIndex.TYPE);
+	}
+
+	/**
+	 * Creates an index of the given type on a specified column of a table.
+	 * A hash index answers equality conditions on the column in constant time
+	 * but no range conditions, which are then answered by scanning the table; a
+	 * B+tree index answers both.
+	 *
+	 * @param strTableName the name of the table to create the index on
+	 * @param strColName   the name of the column to create the index on
+	 * @param strIndexName the name of the index to be created
+	 * @param strIndexType the type of the index, "B+tree" or "Hash"
+	 * @throws DBAppException if an error occurs while creating the index
+	 */
+	public void createIndex(String strTableName,
+			String strColName,
+			String strIndexName,
+			String strIndexType) throws DBAppException, IOException, ClassNotFoundException {
+
+		if (BPlusTreeIndex.TYPE.equals(strIndexType)) {
+			createIndex(strTableName, strColName, strIndexName);
+			return;
+		}
+		if (!HashIndex.TYPE.equals(strIndexType))
+			throw new DBAppException("Invalid index type " + strIndexType);
+
+		Table table = loadTableToIndex(strTableName, strColName);
+		new HashIndex(table, strColName);
+		metadata.saveIndex(strTableName, strColName, strIndexName, HashIndex.TYPE);
+	}
+
+	/**
+	 * Creates a B+tree index on an ordered list of columns of a table. Its keys
+	 * compare on the first column, then on the second, and so on, so a select
+	 * ANDing equalities on the leading columns with a range on the next one
+	 * reads one run of the index.
+	 *
+	 * @param strTableName  the name of the table to create the index on
+	 * @param strarrColName the names of the columns to index, in key order
+	 * @param strIndexName  the name of the index to be created
+	 * @throws DBAppException if the table or a column does not exist, fewer than
+	 *                        two columns are given, or the index already exists
+	 */
+	public void createIndex(String strTableName,
+			String[] strarrColName,
+			String strIndexName) throws DBAppException, IOException, ClassNotFoundException {
+
 		Table table = loadTable(strTableName);
 		if (table == null)
 			throw new DBAppException("Table does not exist");
 
-		BPlusTreeIndex tree = table.loadIndex(strColName);
-		if (tree != null)
+		table.createCompositeIndex(metadata.getSchema(strTableName), strarrColName, strIndexName);
+		table.markDirty();
+		afterWrite();
+	}
+
+	/**
+	 * Creates a B+tree index on an ordered list of columns of a table that also
+	 * carries the values of other columns. A select or count reading only
+	 * columns of the index is answered from the index without reading the
+	 * table's pages.
+	 *
+	 * @param strTableName          the name of the table to create the index on
+	 * @param strarrColName         the names of the columns to index, in key order
+	 * @param strarrIncludedColName the names of the columns the index carries
+	 * @param strIndexName          the name of the index to be created
+	 * @throws DBAppException if the table or a column does not exist, no key
+	 *                        column is given, or the index already exists
+	 */
+	public void createIndex(String strTableName,
+			String[] strarrColName,
+			String[] strarrIncludedColName,
+			String strIndexName) throws DBAppException, IOException, ClassNotFoundException {
+
+		Table table = loadTable(strTableName);
+		if (table == null)
+			throw new DBAppException("Table does not exist");
+
+		table.createCompositeIndex(metadata.getSchema(strTableName), strarrColName, strarrIncludedColName,
+				strIndexName);
+		table.markDirty();
+		afterWrite();
+	}
+
+	/**
+	 * @return the table to create an index on
+	 * @throws DBAppException if the table or the column does not exist, or the
+	 *                        column is already indexed
+	 */
+	private Table loadTableToIndex(String strTableName, String strColName)
+			throws DBAppException, IOException, ClassNotFoundException {
+
+		Table table = loadTable(strTableName);
+		if (table == null)
+			throw new DBAppException("Table does not exist");
+
+		if (table.loadIndex(strColName) != null)
 			throw new DBAppException("Index already exists");
 
-		Hashtable<String, String> colTypes = metadata.loadColumnTypes(strTableName);
+		if (metadata.getSchema(strTableName).getColType(strColName) == null)
+			throw new DBAppException("invalid Column Name " + strColName);
 
-		for (String col : colTypes.keySet()) {
-			if (col.equals(strColName)) {
-				tree = new BPlusTreeIndex(strTableName, strColName, colTypes.get(col));
-				metadata.saveIndex(strTableName, strColName, strIndexName);
-				return;
-			}
-		}
+		return table;
+	}
 
-		throw new DBAppException("invalid Column Name " + strColName);
+	/**
+	 * Keeps a Bloom filter of a column on every page of a table, so equality
+	 * lookups on the column skip the pages that cannot hold the value. All
+	 * filters of a table share one false positive rate; setting it rebuilds
+	 * them.
+	 *
+	 * @param strTableName          the name of the table
+	 * @param strColName            the name of the column
+	 * @param dblFalsePositiveRate  the probability that a page without the value
+	 *                              is still read, between 0 and 1 exclusive
+	 * @throws DBAppException if the table or the column does not exist, or the
+	 *                        rate is invalid
+	 */
+	public void createBloomFilter(String strTableName,
+			String strColName,
+			double dblFalsePositiveRate) throws DBAppException, IOException, ClassNotFoundException {
+
+		Table table = loadTable(strTableName);
+		if (table == null)
+			throw new DBAppException("Table does not exist");
+
+		table.createBloomFilter(metadata.getSchema(strTableName), strColName, dblFalsePositiveRate);
+		table.markDirty();
+		afterWrite();
 	}
 
 	/**
@@ -124,9 +339,42 @@ public class DBApp {
 
 		Utils.checkColsTypeValidity(htblColNameValue, htblColNameType);
 		Table table = loadTable(strTableName);
+		beforeWrite();
+
+		table.insertRow(metadata.getSchema(strTableName), htblColNameValue);
+		table.markDirty();
+		afterWrite();
+	}
+
+	/**
+	 * Inserts a batch of tuples into the specified table.
+	 * The batch is sorted by clustering key and merged into the table pages in one
+	 * pass, so each touched page and index is written once per batch.
+	 *
+	 * @param strTableName the name of the table to insert into
+	 * @param rows         the rows to insert, each a Hashtable containing the
+	 *                     column-value pairs of one tuple
+	 * @throws DBAppException         if there is an error in the database operation
+	 * @throws ClassNotFoundException if the specified class is not found
+	 * @throws IOException            if there is an error in the input/output
+	 *                                operation
+	 */
+	public void insertIntoTable(String strTableName,
+			List<Hashtable<String, Object>> rows) throws DBAppException, ClassNotFoundException, IOException {
+
+		Hashtable<String, String> htblColNameType = metadata.loadColumnTypes(strTableName);
+		for (Hashtable<String, Object> htblColNameValue : rows) {
+			if (htblColNameType.size() != htblColNameValue.size())
+				throw new DBAppException("Number of columns in table does not match number of columns in input");
+
+			Utils.checkColsTypeValidity(htblColNameValue, htblColNameType);
+		}
+		Table table = loadTable(strTableName);
+		beforeWrite();
 
-		table.insertRow(htblColNameType, htblColNameValue);
-		table.saveTable();
+		table.insertRows(metadata.getSchema(strTableName), rows);
+		table.markDirty();
+		afterWrite();
 	}
 
 	// following method updates one row only
@@ -140,8 +388,11 @@ public class DBApp {
 		Hashtable<String, String> htblColNameType = metadata.loadColumnTypes(strTableName);
 		Utils.checkColsTypeValidity(htblColNameValue, htblColNameType);
 		Table table = loadTable(strTableName);
+		beforeWrite();
 
-		table.updateRow(htblColNameType, htblColNameValue, strClusteringKeyValue);
+		table.updateRow(metadata.getSchema(strTableName), htblColNameValue, strClusteringKeyValue);
+		table.markDirty();
+		afterWrite();
 	}
 
 	// following method could be used to delete one or more rows.
@@ -154,26 +405,133 @@ public class DBApp {
 		Hashtable<String, String> htblColNameType = metadata.loadColumnTypes(strTableName);
 		Utils.checkColsTypeValidity(htblColNameValue, htblColNameType);
 		Table t = loadTable(strTableName);
-		if (htblColNameValue.isEmpty()) {
-			t.pageNums = new Vector<>();
-			t.pageRanges = new Hashtable<>();
-		}
+		beforeWrite();
+
+		t.deleteRow(htblColNameValue, metadata.getSchema(strTableName));
+		t.markDirty();
+		afterWrite();
+	}
+
+	public Iterator<Tuple> selectFromTable(SQLTerm[] arrSQLTerms,
+			String[] strarrOperators) throws DBAppException, IOException, ClassNotFoundException {
+
+		Table t = loadTable(arrSQLTerms[0]._strTableName);
+		Schema schema = metadata.getSchema(arrSQLTerms[0]._strTableName);
+		return t.selectFromTable(arrSQLTerms, strarrOperators, schema);
+	}
+
+	/**
+	 * Selects only the given columns of the rows matching the conditions. If an
+	 * index holds every column the query reads, the rows come from the index in
+	 * its key order and no page of the table is read.
+	 *
+	 * @param arrSQLTerms     the conditions of the query
+	 * @param strarrOperators the logical operators between the conditions
+	 * @param strarrColName   the columns to return, in this order
+	 * @return an iterator over the selected columns of the matching rows
+	 * @throws DBAppException if a column, an operator or a value is invalid
+	 */
+	public Iterator<Tuple> selectFromTable(SQLTerm[] arrSQLTerms,
+			String[] strarrOperators,
+			String[] strarrColName) throws DBAppException, IOException, ClassNotFoundException {
 
-		t.deleteRow(htblColNameValue, htblColNameType);
-		t.saveTable();
+		Table t = loadTable(arrSQLTerms[0]._strTableName);
+		Schema schema = metadata.getSchema(arrSQLTerms[0]._strTableName);
+		return t.selectFromTable(arrSQLTerms, strarrOperators, schema, strarrColName);
 	}
 
-	public Iterator selectFromTable(SQLTerm[] arrSQLTerms,
+	/**
+	 * Counts the rows matching the conditions. If an index holds every column of
+	 * the conditions, the count is taken from the index without reading the
+	 * table's pages.
+	 *
+	 * @param arrSQLTerms     the conditions of the query
+	 * @param strarrOperators the logical operators between the conditions
+	 * @return the number of matching rows
+	 * @throws DBAppException if a column, an operator or a value is invalid
+	 */
+	public int countFromTable(SQLTerm[] arrSQLTerms,
 			String[] strarrOperators) throws DBAppException, IOException, ClassNotFoundException {
 
 		Table t = loadTable(arrSQLTerms[0]._strTableName);
-		Hashtable<String, String> htblColNameType = metadata.loadColumnTypes(arrSQLTerms[0]._strTableName);
-		return t.selectFromTable(arrSQLTerms, strarrOperators, htblColNameType);
+		Schema schema = metadata.getSchema(arrSQLTerms[0]._strTableName);
+		return t.countRows(arrSQLTerms, strarrOperators, schema);
 	}
 
+	/**
+	 * Returns the open handle of a table, deserializing the table only the first
+	 * time it is used.
+	 *
+	 * @param tableName the name of the table
+	 * @return the table, or null if it does not exist
+	 */
 	public Table loadTable(String tableName) throws IOException, ClassNotFoundException {
+		Table table = openTables.get(tableName);
+		if (table != null)
+			return table;
+
 		String tableDirectory = "src\\main\\java\\Table\\" + tableName + "\\";
-		return (Table) fileHandler.loadInstance(tableDirectory, tableName);
+		table = (Table) fileHandler.loadInstance(tableDirectory, tableName);
+		if (table != null)
+			openTables.put(tableName, table);
+
+		return table;
+	}
+
+	/**
+	 * Saves the headers and changed indices of all modified tables and writes
+	 * all dirty pages to disk. Runs every CheckpointInterval writes and when the
+	 * JVM shuts down.
+	 *
+	 * @throws IOException if an I/O error occurs while saving
+	 */
+	public static synchronized void checkpoint() throws IOException {
+		for (Table table : openTables.values()) {
+			table.saveIndices();
+			if (table.isDirty())
+				table.saveTable();
+		}
+		BufferPool.getInstance().flushAll();
+		writesSinceCheckpoint = 0;
+
+		if (unsavedWrites) {
+			Files.deleteIfExists(Paths.get(UNSAVED_WRITES_MARKER));
+			unsavedWrites = false;
+		}
+	}
+
+	/**
+	 * Rebuilds the indices of every table from its pages, after a run that did
+	 * not shut down cleanly, then saves them with a checkpoint.
+	 */
+	private void rebuildIndices() throws IOException {
+		unsavedWrites = true;
+		try {
+			for (String tableName : metadata.getTableNames()) {
+				Table table = loadTable(tableName);
+				if (table != null)
+					table.rebuildIndices();
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		checkpoint();
+	}
+
+	/**
+	 * Records that the files on disk may change before the next checkpoint.
+	 */
+	private static synchronized void beforeWrite() throws IOException {
+		if (!unsavedWrites) {
+			new File(UNSAVED_WRITES_MARKER).createNewFile();
+			unsavedWrites = true;
+		}
+	}
+
+	private static synchronized void afterWrite() throws IOException {
+		writesSinceCheckpoint++;
+		if (writesSinceCheckpoint >= checkpointInterval)
+			checkpoint();
 	}
 
 	public static void main(String[] args) {
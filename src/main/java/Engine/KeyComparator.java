@@ -0,0 +1,67 @@
+package Engine;
+
+import java.util.Comparator;
+
+/**
+ * Compares column values of one of the supported types without converting
+ * them to strings. Integer and Double values are compared as primitives.
+ */
+public enum KeyComparator implements Comparator<Object> {
+    INTEGER {
+        @Override
+        public int compare(Object a, Object b) {
+            return Integer.compare((Integer) a, (Integer) b);
+        }
+
+        @Override
+        public Object parse(String value) {
+            return Integer.parseInt(value);
+        }
+    },
+    DOUBLE {
+        @Override
+        public int compare(Object a, Object b) {
+            return Double.compare((Double) a, (Double) b);
+        }
+
+        @Override
+        public Object parse(String value) {
+            return Double.parseDouble(value);
+        }
+    },
+    STRING {
+        @Override
+        public int compare(Object a, Object b) {
+            return ((String) a).compareTo((String) b);
+        }
+
+        @Override
+        public Object parse(String value) {
+            return value;
+        }
+    };
+
+    /**
+     * Converts the string form of a value, as given to updateTable, to a value
+     * of the column's type.
+     *
+     * @param value the string form of the value
+     * @return the value
+     */
+    public abstract Object parse(String value);
+
+    /**
+     * @param colType the type of a column, as stored in the metadata
+     * @return the comparator for values of that column
+     */
+    public static KeyComparator forType(String colType) {
+        switch (colType) {
+            case "java.lang.Integer":
+                return INTEGER;
+            case "java.lang.Double":
+                return DOUBLE;
+            default:
+                return STRING;
+        }
+    }
+}
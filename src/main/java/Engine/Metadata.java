@@ -1,27 +1,78 @@
 package Engine;
 
+import Table.BPlusTreeIndex;
 import Table.Table;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 
+/**
+ * In-memory catalog of all tables.
+ * metadata.csv is parsed once when the instance is created, and rewritten
+ * atomically (write to a temporary file, then rename) whenever it changes.
+ */
 public class Metadata {
     private String fileName = "metadata.csv";
     private static Metadata metadataInstance;
 
+    // rows of metadata.csv in file order, each row split into its cells
+    private List<String[]> rows;
+
+    // table name -> (column name -> column type)
+    private HashMap<String, Hashtable<String, String>> columnTypes;
+
+    // table name -> clustering key column
+    private HashMap<String, String> clusteringKeys;
+
+    // table name -> (column name -> index name)
+    private HashMap<String, Hashtable<String, String>> indexNames;
+
+    // table name -> (column name -> index type)
+    private HashMap<String, Hashtable<String, String>> indexTypes;
+
+    // table name -> schema, built on first use
+    private HashMap<String, Schema> schemas;
+
     private Metadata() throws IOException {
+        rows = new ArrayList<>();
+        columnTypes = new HashMap<>();
+        clusteringKeys = new HashMap<>();
+        indexNames = new HashMap<>();
+        indexTypes = new HashMap<>();
+        schemas = new HashMap<>();
 
+        if (!new File(fileName).exists())
+            return;
+
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty())
+                continue;
+            String[] cells = line.split(",");
+            rows.add(cells);
+            cacheRow(cells);
+        }
+        reader.close();
     }
 
     public static Metadata getInstance() throws IOException {
         if (metadataInstance == null) {
-            return new Metadata();
+            metadataInstance = new Metadata();
         }
 
         return metadataInstance;
@@ -29,88 +80,207 @@ public class Metadata {
 
     /**
      * Saves the table metadata to a file.
+     * The columns are written in the iteration order of htblColNameType, and
+     * that order becomes the order of the fields in the table's tuples.
      *
      * @param table the table to save
      * @throws IOException if an I/O error occurs while writing to the file
      */
     public void saveTable(Table table, Hashtable<String, String> htblColNameType) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true));
-
-        // Write each column data to the metadata file
+        // Add a row for each column of the table
         for (String key : htblColNameType.keySet()) {
-            writer.write(table.name + "," + key + "," + htblColNameType.get(key) + "," +
-                    (key == table.getClusteringKey()) + ",null,null\n");
+            String[] cells = new String[] { table.name, key, htblColNameType.get(key),
+                    String.valueOf(key.equals(table.getClusteringKey())), "null", "null" };
+            rows.add(cells);
+            cacheRow(cells);
         }
 
-        // Close the writer
-        writer.close();
+        writeFile();
     }
 
     /**
-     * Saves the index name and type for a specified table and column in the
+     * Saves the name of a B+tree index for a specified table and column in the
      * metadata file.
      *
      * @param strTableName the name of the table
      * @param strColName   the name of the column
      * @param strIndexName the name of the index
-     * @throws IOException if an I/O error occurs while reading or writing the
-     *                     metadata file
+     * @throws IOException if an I/O error occurs while writing the metadata file
      */
     public void saveIndex(String strTableName, String strColName, String strIndexName) throws IOException {
-        List<String> lines = new ArrayList<>();
-        int row = 0;
+        saveIndex(strTableName, strColName, strIndexName, BPlusTreeIndex.TYPE);
+    }
 
+    /**
+     * Saves the index name and type for a specified table and column in the
+     * metadata file.
+     *
+     * @param strTableName the name of the table
+     * @param strColName   the name of the column
+     * @param strIndexName the name of the index
+     * @param strIndexType the type of the index, "B+tree" or "Hash"
+     * @throws IOException if an I/O error occurs while writing the metadata file
+     */
+    public void saveIndex(String strTableName, String strColName, String strIndexName, String strIndexType)
+            throws IOException {
         // Update row to include the index name & type
-        BufferedReader reader = new BufferedReader(new FileReader(fileName));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] cells = line.split(",");
-            lines.add(line);
+        for (String[] cells : rows) {
             if (cells[0].equals(strTableName) && cells[1].equals(strColName)) {
                 cells[4] = strIndexName;
-                cells[5] = "B+tree";
-                lines.set(row, String.join(",", cells));
+                cells[5] = strIndexType;
+                cacheRow(cells);
             }
-            row++;
-        }
-        reader.close();
-
-        // Write the updated content back to the metadata file
-        BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
-        for (String updatedLine : lines) {
-            writer.write(updatedLine);
-            writer.newLine();
         }
 
-        writer.close();
+        writeFile();
     }
 
     /**
-     * Loads the column types for a given table name from the metadata file.
-     * 
+     * Returns the column types of a table.
+     * The returned hashtable is shared by all callers and must not be modified.
+     *
      * @param tableName the name of the table
      * @return a Hashtable containing the column names as keys and their
      *         corresponding types as values
-     * @throws IOException if an I/O error occurs while reading the metadata file
      */
-    public Hashtable<String, String> loadColumnTypes(String tableName) throws IOException {
-        Hashtable<String, String> htblColNameTypes = new Hashtable<String, String>();
+    public Hashtable<String, String> loadColumnTypes(String tableName) {
+        Hashtable<String, String> htblColNameTypes = columnTypes.get(tableName);
+        if (htblColNameTypes == null)
+            return new Hashtable<String, String>();
 
-        BufferedReader reader = new BufferedReader(new FileReader(fileName));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] cells = line.split(",");
-            String currtableName = cells[0];
-            String colName = cells[1];
-            String colType = cells[2];
+        return htblColNameTypes;
+    }
 
-            if (!currtableName.equals(tableName))
-                continue;
+    /**
+     * Returns the schema of a table, whose column ordinals follow the order of
+     * the table's rows in metadata.csv. A column listed more than once keeps
+     * its first row.
+     *
+     * @param tableName the name of the table
+     * @return the schema of the table, or null if the table does not exist
+     */
+    public Schema getSchema(String tableName) {
+        Schema schema = schemas.get(tableName);
+        if (schema != null || !columnTypes.containsKey(tableName))
+            return schema;
 
-            htblColNameTypes.put(colName, colType);
+        List<String[]> columns = new ArrayList<>();
+        HashSet<String> colNames = new HashSet<>();
+        for (String[] cells : rows) {
+            if (cells[0].equals(tableName) && colNames.add(cells[1]))
+                columns.add(cells);
         }
-        reader.close();
+        schema = new Schema(tableName, columns);
+        schemas.put(tableName, schema);
+        return schema;
+    }
 
-        return htblColNameTypes;
+    /**
+     * @param tableName the name of the table
+     * @return the clustering key column of the table, or null if the table does
+     *         not exist
+     */
+    public String getClusteringKey(String tableName) {
+        return clusteringKeys.get(tableName);
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param colName   the name of the column
+     * @return the name of the index on the column, or null if it is not indexed
+     */
+    public String getIndexName(String tableName, String colName) {
+        Hashtable<String, String> tableIndices = indexNames.get(tableName);
+        if (tableIndices == null)
+            return null;
+
+        return tableIndices.get(colName);
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param colName   the name of the column
+     * @return the type of the index on the column, "B+tree" or "Hash", or null
+     *         if it is not indexed
+     */
+    public String getIndexType(String tableName, String colName) {
+        Hashtable<String, String> tableIndices = indexTypes.get(tableName);
+        if (tableIndices == null)
+            return null;
+
+        return tableIndices.get(colName);
+    }
+
+    /**
+     * @return the names of all tables in the metadata
+     */
+    public List<String> getTableNames() {
+        return new ArrayList<>(columnTypes.keySet());
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @return the names of the indexed columns of the table
+     */
+    public List<String> getIndexedColumns(String tableName) {
+        Hashtable<String, String> tableIndices = indexNames.get(tableName);
+        if (tableIndices == null)
+            return new ArrayList<>();
+
+        return new ArrayList<>(tableIndices.keySet());
+    }
+
+    private void cacheRow(String[] cells) {
+        String tableName = cells[0];
+        String colName = cells[1];
+
+        Hashtable<String, String> htblColNameTypes = columnTypes.get(tableName);
+        if (htblColNameTypes == null) {
+            htblColNameTypes = new Hashtable<String, String>();
+            columnTypes.put(tableName, htblColNameTypes);
+        }
+        htblColNameTypes.put(colName, cells[2]);
+        schemas.remove(tableName);
+
+        if (Boolean.parseBoolean(cells[3]))
+            clusteringKeys.put(tableName, colName);
+
+        if (!cells[4].equals("null")) {
+            Hashtable<String, String> tableIndices = indexNames.get(tableName);
+            if (tableIndices == null) {
+                tableIndices = new Hashtable<String, String>();
+                indexNames.put(tableName, tableIndices);
+            }
+            tableIndices.put(colName, cells[4]);
+
+            Hashtable<String, String> tableIndexTypes = indexTypes.get(tableName);
+            if (tableIndexTypes == null) {
+                tableIndexTypes = new Hashtable<String, String>();
+                indexTypes.put(tableName, tableIndexTypes);
+            }
+            tableIndexTypes.put(colName, cells[5]);
+        }
+    }
+
+    /**
+     * Writes all rows to a temporary file and renames it over metadata.csv, so
+     * the file is never left half written.
+     */
+    private void writeFile() throws IOException {
+        Path target = Paths.get(fileName);
+        Path tmp = Paths.get(fileName + ".tmp");
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(tmp.toFile()));
+        for (String[] cells : rows) {
+            writer.write(String.join(",", cells));
+            writer.newLine();
+        }
+        writer.close();
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package Engine;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+
+import Exceptions.DBAppException;
+
+/**
+ * The columns of a table in the order of their fields in a tuple.
+ * A column's ordinal is the position of its row among the table's rows in
+ * metadata.csv, so the layout is fixed when the table is created and does not
+ * depend on the iteration order of any Hashtable. Looking up the ordinal of a
+ * column by name takes constant time.
+ */
+public class Schema {
+    private final String tableName;
+    private final String[] colNames;
+    private final String[] colTypes;
+    private final HashMap<String, Integer> ordinals;
+    private final int clusteringKeyIndex;
+
+    /**
+     * @param tableName the name of the table
+     * @param columns   the metadata rows of the table's columns, in file order
+     */
+    Schema(String tableName, List<String[]> columns) {
+        this.tableName = tableName;
+        this.colNames = new String[columns.size()];
+        this.colTypes = new String[columns.size()];
+        this.ordinals = new HashMap<>();
+
+        int clusteringKeyIndex = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            String[] cells = columns.get(i);
+            colNames[i] = cells[1];
+            colTypes[i] = cells[2];
+            ordinals.put(cells[1], i);
+            if (Boolean.parseBoolean(cells[3]))
+                clusteringKeyIndex = i;
+        }
+        this.clusteringKeyIndex = clusteringKeyIndex;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the number of columns, which is the number of fields in a tuple
+     */
+    public int getColumnCount() {
+        return colNames.length;
+    }
+
+    /**
+     * @param ordinal the ordinal of a column
+     * @return the name of the column
+     */
+    public String getColName(int ordinal) {
+        return colNames[ordinal];
+    }
+
+    /**
+     * @param ordinal the ordinal of a column
+     * @return the type of the column, as stored in the metadata
+     */
+    public String getColType(int ordinal) {
+        return colTypes[ordinal];
+    }
+
+    /**
+     * @param colName the name of a column
+     * @return the type of the column, or null if the table has no such column
+     */
+    public String getColType(String colName) {
+        Integer ordinal = ordinals.get(colName);
+        return ordinal == null ? null : colTypes[ordinal];
+    }
+
+    /**
+     * @param colName the name of a column
+     * @return the index of the column's field in a tuple, or -1 if the table has
+     *         no such column
+     */
+    public int getOrdinal(String colName) {
+        Integer ordinal = ordinals.get(colName);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * @return the index of the clustering key's field in a tuple
+     */
+    public int getClusteringKeyIndex() {
+        return clusteringKeyIndex;
+    }
+
+    /**
+     * @return the name of the clustering key column
+     */
+    public String getClusteringKey() {
+        return colNames[clusteringKeyIndex];
+    }
+
+    /**
+     * Places the values of a row at the ordinals of their columns.
+     *
+     * @param htblColNameValue maps column name to value
+     * @return the fields of the row; columns without a value are null
+     * @throws DBAppException if a column does not exist in the table
+     */
+    public Object[] toFields(Hashtable<String, Object> htblColNameValue) throws DBAppException {
+        Object[] fields = new Object[colNames.length];
+        for (String col : htblColNameValue.keySet()) {
+            Integer ordinal = ordinals.get(col);
+            if (ordinal == null)
+                throw new DBAppException("Column " + col + " does not exist in table");
+            fields[ordinal] = htblColNameValue.get(col);
+        }
+        return fields;
+    }
+}
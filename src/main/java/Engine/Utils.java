@@ -10,38 +10,27 @@ public class Utils {
     /**
      * converts form of input for easier insertion.
      * 
-     * @param htblColNameType  maps column name to its data type.
+     * @param schema           the schema of the table.
      * @param htblColNameValue maps column name to value of insertion.
-     * @return tuple containing values to insert.
+     * @return tuple containing values to insert, each at its column's ordinal.
      */
-    public static Tuple convertInputToTuple(Hashtable<String, String> htblColNameType,
-            Hashtable<String, Object> htblColNameValue)
+    public static Tuple convertInputToTuple(Schema schema, Hashtable<String, Object> htblColNameValue)
             throws DBAppException, IOException, ClassNotFoundException {
 
         // fill tuple with values from input parameter htblColNameValue
         Tuple newTuple = new Tuple();
-
-        Object[] newFields = new Object[htblColNameType.size()];
-        int pos = 0;
-
-        for (String col : htblColNameValue.keySet()) {
-            newFields[pos++] = htblColNameValue.get(col);
-        }
-
-        newTuple.setFields(newFields);
+        newTuple.setFields(schema.toFields(htblColNameValue));
 
         return newTuple;
     }
 
-    public static Hashtable<String, Object> convertTupleToHashtable(Hashtable<String, String> htblColNameType,
-            Tuple tuple)
+    public static Hashtable<String, Object> convertTupleToHashtable(Schema schema, Tuple tuple)
             throws DBAppException, IOException, ClassNotFoundException {
 
         Hashtable<String, Object> htblColNameValue = new Hashtable<>();
 
-        for (String col : htblColNameType.keySet()) {
-            int colIndex = getColIndex(htblColNameType, col);
-            htblColNameValue.put(col, tuple.getFields()[colIndex]);
+        for (int i = 0; i < schema.getColumnCount(); i++) {
+            htblColNameValue.put(schema.getColName(i), tuple.getFields()[i]);
         }
 
         return htblColNameValue;
@@ -78,42 +67,4 @@ public class Utils {
             }
         }
     }
-
-    /**
-     * @param targetKey         first clustering key in comparison.
-     * @param currKey           second clustering key in comparison.
-     * @param clusteringKeyType type of clustering key.
-     * @return which key is larger (> 0 means targetKey is larger,
-     *         < 0 means currKey is larger, = 0 means both keys are equal)
-     */
-    public static int compareKeys(String targetKey, String currKey, String clusteringKeyType) {
-        switch (clusteringKeyType) {
-            case "java.lang.integer":
-                return Integer.parseInt(targetKey) - Integer.parseInt(currKey);
-            case "java.lang.double":
-                return Double.compare(Double.parseDouble(targetKey), Double.parseDouble(currKey));
-            case "java.lang.string":
-                return targetKey.compareTo(currKey);
-            default:
-                return 0;
-        }
-    }
-
-    /**
-     * Returns the index of the clustering key in the given hashtable.
-     *
-     * @param htblColNameType a hashtable that maps column names to their data types
-     * @return the index of the clustering key in the hashtable
-     */
-    public static int getColIndex(Hashtable<String, String> htblColNameType, String targetCol) {
-        int colIndex = 0;
-        for (String col : htblColNameType.keySet()) {
-            if (col.equals(targetCol)) {
-                break;
-            }
-            colIndex++;
-        }
-
-        return colIndex;
-    }
 }
@@ -1,100 +1,196 @@
 package Table;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.io.UncheckedIOException;
 
 import Engine.Metadata;
-import Engine.Utils;
-import Exceptions.DBAppException;
 import Table.BTree.BTree;
 
-public class BPlusTreeIndex extends FileHandler {
-    public BTree tree;
-    public String tableName;
-    public String colName;
+/**
+ * B+ tree index on a column, for equality and range lookups.
+ * <p>
+ * The nodes of the tree are kept in their own file, next to the index file,
+ * and read as lookups reach them. Saving the index writes back only the nodes
+ * changed since it was last saved; the index file itself is written once, when
+ * the index is created. Changed indices are saved at checkpoints, with the
+ * pages and table headers, and rebuilt when the engine starts after a run that
+ * did not reach one.
+ * <p>
+ * An index saved in an older layout is rebuilt from its table when it is
+ * loaded, see {@link Table#loadIndex(String)}.
+ *
+ * @param <TKey> the type of the keys, that of the indexed column
+ */
+public class BPlusTreeIndex<TKey extends Comparable<TKey>> extends ColumnIndex {
+    private static final long serialVersionUID = 1L;
+
+    public static final String TYPE = "B+tree";
+
+    // Version of the layout of the index and node files, raised whenever it
+    // changes
+    static final int FORMAT_VERSION = 1;
+
+    public BTree<TKey, RowIdList> tree;
+
+    // Layout version the index was saved with, 0 if saved before versions
+    private int formatVersion = FORMAT_VERSION;
 
-    public BPlusTreeIndex(String tableName, String colName, String colType)
-            throws IOException, DBAppException, ClassNotFoundException {
-        this.tableName = tableName;
+    /**
+     * For subclasses, which create and fill the tree themselves.
+     */
+    protected BPlusTreeIndex() {
+    }
+
+    public BPlusTreeIndex(Table table, String colName, String colType)
+            throws IOException, ClassNotFoundException {
+        this(table, colName, colType, BTree.defaultOrder);
+    }
+
+    /**
+     * Creates an index on a column and fills it with the rows of the table.
+     *
+     * @param table   the table to index
+     * @param colName the name of the indexed column
+     * @param colType the type of the indexed column
+     * @param order   the maximum number of keys in a node of the tree
+     */
+    public BPlusTreeIndex(Table table, String colName, String colType, int order)
+            throws IOException, ClassNotFoundException {
+        this.tableName = table.name;
         this.colName = colName;
-        this.tree = new BTree();
-        fillTree();
-        saveTree();
+        this.tree = new BTree<>(order, Class.forName(colType), getNodePath(), new IndexEntryCodec<TKey>(colType));
+        fillTree(table, colType);
+        saveNewIndex();
     }
 
     /**
      * Fills the B+ tree index with data from the table.
-     * This method retrieves the table data, iterates through each page, and inserts
-     * the values into the B+ tree index.
+     * This method reads each page of the table once, collecting a (key, row id)
+     * pair per row, sorts the pairs (spilling sorted runs to disk when they do
+     * not fit in the buffer pool budget) and builds the tree bottom up from the
+     * sorted keys.
      * The B+ tree index is used for efficient searching and retrieval of data based
      * on the specified column.
      *
-     * @throws IOException            if an I/O error occurs while loading the table
-     *                                or page data
+     * @param table   the table whose rows are indexed
+     * @param colType the type of the indexed column
+     * @throws IOException            if an I/O error occurs while loading the
+     *                                page data or sorting the pairs
      * @throws ClassNotFoundException if the class of a serialized object cannot be
      *                                found during loading
      */
-    private void fillTree() throws IOException, ClassNotFoundException {
-        String tableDirectory = "src\\main\\java\\Table\\" + tableName + "\\";
-        Table table = (Table) super.loadInstance(tableDirectory, tableName);
+    private void fillTree(Table table, String colType) throws IOException, ClassNotFoundException {
+        int colIdx = Metadata.getInstance().getSchema(tableName).getOrdinal(colName);
+
+        // about 64 bytes per pair in memory
+        int runSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1024, BufferPool.maximumBufferPoolSize / 64));
+        IndexEntrySorter<TKey> sorter = new IndexEntrySorter<>(colType, new File(getIndexPath()), runSize);
+        try {
+            for (int pageNum : table.pageNums) {
+                Page currPage = table.loadPage(pageNum);
+                for (int row = 0; row < currPage.size(); row++) {
+                    sorter.add(toKey(currPage.getField(row, colIdx)), RowIdList.rowId(pageNum, currPage.getSlot(row)));
+                }
+            }
 
-        if (table == null)
-            return;
+            tree.bulkLoad(sorter.sortedPostings());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            sorter.close();
+        }
+    }
 
-        Metadata metadata = Metadata.getInstance();
-        Hashtable<String, String> htblColNameType = metadata.loadColumnTypes(tableName);
-        int colIdx = Utils.getColIndex(htblColNameType, colName);
+    /**
+     * Saves the index file and every node of the tree, once the index is
+     * created and filled.
+     *
+     * @throws IOException if an I/O error occurs while saving the index
+     */
+    protected void saveNewIndex() throws IOException {
+        super.saveIndex();
+        tree.flush();
+    }
 
-        for (int pageNum : table.pageNums) {
-            Page currPage = table.loadPage(pageNum);
-            Vector<String> pageRefs = new Vector<>();
-            for (Tuple row : currPage.getTuples()) {
+    /**
+     * Writes back the nodes of the tree changed since the index was last
+     * saved.
+     *
+     * @throws IOException if an I/O error occurs while writing a node
+     */
+    @Override
+    public void saveIndex() throws IOException {
+        tree.flush();
+    }
 
-                if (row.getFields()[colIdx] instanceof Integer) {
-                    pageRefs = (Vector<String>) tree.search((Integer) row.getFields()[colIdx]);
-                    if (pageRefs == null) {
-                        pageRefs = new Vector<>();
-                    }
-                    pageRefs.add("page " + pageNum);
+    /**
+     * @return true if the index was saved in the current layout, otherwise it
+     *         must be rebuilt before it is used
+     */
+    boolean isCurrentFormat() {
+        return formatVersion == FORMAT_VERSION;
+    }
 
-                    tree.delete((Integer) row.getFields()[colIdx]);
-                    tree.insert((Integer) row.getFields()[colIdx], pageRefs);
+    /**
+     * @param value a value of the indexed column, or null
+     * @return the value as a key of the tree
+     */
+    @SuppressWarnings("unchecked")
+    TKey toKey(Object value) {
+        return (TKey) value;
+    }
 
-                } else if (row.getFields()[colIdx] instanceof Double) {
-                    pageRefs = (Vector<String>) tree.search((Double) row.getFields()[colIdx]);
+    /**
+     * @return the path of the file holding the nodes of the tree
+     */
+    String getNodePath() {
+        return getIndexPath() + colName + ".btree";
+    }
 
-                    if (pageRefs == null) {
-                        pageRefs = new Vector<>();
-                    }
-                    pageRefs.add("page " + pageNum);
+    @Override
+    public String getType() {
+        return TYPE;
+    }
 
-                    tree.delete((Double) row.getFields()[colIdx]);
-                    tree.insert((Double) row.getFields()[colIdx], pageRefs);
+    @Override
+    public boolean supportsRanges() {
+        return true;
+    }
 
-                } else if (row.getFields()[colIdx] instanceof String) {
-                    pageRefs = (Vector<String>) tree.search(row.getFields()[colIdx].toString());
+    @Override
+    public RowIdList search(Object key) {
+        return tree.search(toKey(key));
+    }
 
-                    if (pageRefs == null) {
-                        pageRefs = new Vector<>();
-                    }
-                    pageRefs.add("page " + pageNum);
+    /**
+     * Adds a row id to the posting list of a key, without saving the index.
+     * The posting list is updated in place, the tree only changes shape when
+     * the key is new.
+     *
+     * @param key   the value of the indexed column in the row
+     * @param rowId the row id of the row
+     */
+    @Override
+    public void addRowId(Object key, long rowId) {
+        RowIdList rowIds = tree.computeIfAbsent(toKey(key), k -> new RowIdList());
+        rowIds.add(rowId);
+    }
 
-                    tree.delete(row.getFields()[colIdx].toString());
-                    tree.insert(row.getFields()[colIdx].toString(), pageRefs);
-                }
+    @Override
+    public void removeRowId(Object key, long rowId) {
+        RowIdList rowIds = tree.searchForUpdate(toKey(key));
+        if (rowIds == null || !rowIds.remove(rowId)) {
+            return;
+        }
 
-            }
+        if (rowIds.isEmpty()) {
+            tree.delete(toKey(key));
         }
     }
 
-    /**
-     * Saves the B+ tree index to a file.
-     *
-     * @throws IOException if an I/O error occurs while saving the tree.
-     */
-    public void saveTree() throws IOException {
-        String indexPath = "src\\main\\java\\Table\\" + this.tableName + "\\Indicies\\";
-        super.saveInstance(indexPath, colName);
+    @Override
+    public void clear() {
+        tree.clear();
     }
 }
@@ -1,32 +1,162 @@
 package Table.BTree;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Vector;
-
-import Engine.Utils;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * A B+ tree Since the structures and behaviors between internal node and
  * external node are different, so there are two different classes for each kind
  * of node.
+ * <p>
+ * The nodes of a tree with a node file are kept in the file, one block or
+ * more per node, and only read when an operation reaches them, see
+ * {@link NodeStore}. Saving the tree writes back the nodes it changed. The tree
+ * object itself only holds its settings, so it is small to serialize.
  *
  * @param < TKey > the data type of the key
  * @param < TValue > the data type of the value
  */
 public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializable {
-    /**
-     * @uml.property name="root"
-     * @uml.associationEnd multiplicity="(1 1)"
-     */
-    private BTreeNode<TKey> root;
+    private static final long serialVersionUID = 1L;
+
     /**
      * @uml.property name="tableName"
      */
     private String tableName;
 
+    /**
+     * Order used by trees that do not specify one, set from DBApp.config.
+     */
+    public static int defaultOrder = 256;
+
+    /**
+     * Number of nodes of each node file kept in memory between operations, set
+     * from DBApp.config.
+     */
+    public static int maximumCachedNodes = 1024;
+
+    /**
+     * The maximum number of keys in a node.
+     */
+    private int order;
+
+    /**
+     * The class of the keys, Integer and Double keys are stored in primitive
+     * arrays.
+     */
+    private Class<?> keyClass;
+
+    /**
+     * The file holding the nodes, null for a tree kept in memory.
+     */
+    private String path;
+
+    /**
+     * Writes the keys and values to the node file.
+     */
+    private NodeCodec<TKey, TValue> codec;
+
+    /**
+     * The nodes, opened on first use after the tree is read.
+     */
+    private transient NodeStore store;
+
     public BTree() {
-        this.root = new BTreeLeafNode<TKey, TValue>();
+        this(defaultOrder, Object.class);
+    }
+
+    /**
+     * Creates an empty tree kept in memory.
+     *
+     * @param order    the maximum number of keys in a node, at least 4
+     * @param keyClass the class of the keys
+     */
+    public BTree(int order, Class<?> keyClass) {
+        checkOrder(order);
+        this.order = order;
+        this.keyClass = keyClass;
+        this.store = NodeStore.inMemory(order, keyClass);
+        this.clear();
+    }
+
+    /**
+     * Creates an empty tree in a new node file, replacing any file at the
+     * path. Nothing is written until the tree is flushed.
+     *
+     * @param order    the maximum number of keys in a node, at least 4
+     * @param keyClass the class of the keys
+     * @param path     the path of the node file
+     * @param codec    writes the keys and values to the node file
+     * @throws IOException if the node file cannot be created
+     */
+    public BTree(int order, Class<?> keyClass, String path, NodeCodec<TKey, TValue> codec) throws IOException {
+        checkOrder(order);
+        this.order = order;
+        this.keyClass = keyClass;
+        this.path = path;
+        this.codec = codec;
+        this.store = NodeStore.create(path, order, keyClass, codec);
+        this.clear();
+    }
+
+    private static void checkOrder(int order) {
+        if (order < 4)
+            throw new IllegalArgumentException("B+ tree order must be at least 4");
+    }
+
+    public int getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Remove all keys from the tree, keeping its order and key class.
+     */
+    public void clear() {
+        NodeStore nodes = this.nodes();
+        nodes.clear();
+        nodes.setRoot(nodes.newLeaf());
+    }
+
+    /**
+     * Writes the nodes changed since the last flush to the node file.
+     *
+     * @throws IOException if an I/O error occurs while writing a node
+     */
+    public void flush() throws IOException {
+        this.nodes().flush();
+    }
+
+    /**
+     * Closes the node file of the tree. Changes not flushed are lost; the tree
+     * opens the file again when next used.
+     *
+     * @throws IOException if an I/O error occurs while closing the file
+     */
+    public void close() throws IOException {
+        if (this.store != null)
+            this.store.close();
+    }
+
+    /**
+     * Closes the node files of all trees, see {@link #close()}.
+     *
+     * @throws IOException if an I/O error occurs while closing a file
+     */
+    public static void closeAll() throws IOException {
+        NodeStore.closeAll();
+    }
+
+    /**
+     * @return false if the tree keeps its nodes in a file that no longer exists
+     */
+    public boolean hasNodeFile() {
+        return this.path == null || new File(this.path).exists();
     }
 
     /**
@@ -39,7 +169,7 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
         if (leaf.isOverflow()) {
             BTreeNode<TKey> n = leaf.dealOverflow();
             if (n != null)
-                this.root = n;
+                this.store.setRoot(n);
         }
     }
 
@@ -53,50 +183,147 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
         return (index == -1) ? null : leaf.getValue(index);
     }
 
-    public Vector<TValue> searchGreater(TKey key, String type) {
-        Vector<TValue> res = new Vector<>();
+    /**
+     * Return the value associated with a key, inserting the value computed by
+     * the mapping function first if the key is not in the tree. The tree is
+     * only restructured when a new key is inserted, so a mutable value (such as
+     * a posting list) can be updated in place through the returned reference;
+     * the leaf holding it is written back at the next flush.
+     */
+    public TValue computeIfAbsent(TKey key, Function<TKey, TValue> mapping) {
         BTreeLeafNode<TKey, TValue> leaf = this.findLeafNodeShouldContainKey(key);
 
-        while (leaf != null) {
-            // System.out.println(leaf.rightSibling.getKey(0));
-            for (int i = 0; i < leaf.keyCount; i++) {
-                if (leaf.getKey(i).compareTo(key) > 0)
-                    res.add(leaf.getValue(i));
-            }
-            leaf = (BTreeLeafNode) leaf.rightSibling;
+        int index = leaf.search(key);
+        if (index != -1) {
+            leaf.markDirty();
+            return leaf.getValue(index);
         }
 
-        // while (smallest != null) {
-
-        // System.out.println(smallest.getKey(0));
-        // for (int i = 0; i < smallest.keyCount; i++) {
-        // if (Utils.compareKeys(smallest.getKey(i).toString(), key.toString(), type) >
-        // 0) {
-        // res.add(((BTreeLeafNode<TKey, TValue>) smallest).getValue(i));
-        // }
-        // }
-        // smallest = smallest.getRightSibling();
-        // }
-        // System.out.println(res.size());
-        // System.out.println(res);
+        TValue value = mapping.apply(key);
+        leaf.insertKey(key, value);
 
-        return res;
+        if (leaf.isOverflow()) {
+            BTreeNode<TKey> n = leaf.dealOverflow();
+            if (n != null)
+                this.store.setRoot(n);
+        }
+        return value;
     }
 
-    public Vector<TValue> searchLower(TKey key, String type) {
-        Vector<TValue> res = new Vector<>();
+    /**
+     * Search a key on the tree and return its associated value, to be updated
+     * in place. The leaf holding it is written back at the next flush.
+     */
+    public TValue searchForUpdate(TKey key) {
         BTreeLeafNode<TKey, TValue> leaf = this.findLeafNodeShouldContainKey(key);
 
-        while (leaf != null) {
-            // System.out.println(leaf.rightSibling.getKey(0));
-            for (int i = 0; i < leaf.keyCount; i++) {
-                if (leaf.getKey(i).compareTo(key) < 0)
-                    res.add(leaf.getValue(i));
+        int index = leaf.search(key);
+        if (index == -1)
+            return null;
+
+        leaf.markDirty();
+        return leaf.getValue(index);
+    }
+
+    /**
+     * Replace the contents of the tree with the given entries. Leaves are filled
+     * up to the order of the tree and the inner levels are built bottom up from
+     * them, so nothing is split or rebalanced while loading.
+     *
+     * @param entries the entries to load, with distinct keys in ascending order
+     */
+    @SuppressWarnings("unchecked")
+    public void bulkLoad(Iterator<Map.Entry<TKey, TValue>> entries) {
+        NodeStore nodes = this.nodes();
+        nodes.clear();
+
+        ArrayList<BTreeNode<TKey>> level = new ArrayList<>();
+        // the smallest key under each node of the level
+        ArrayList<TKey> lowKeys = new ArrayList<>();
+
+        BTreeLeafNode<TKey, TValue> leaf = null;
+        while (entries.hasNext()) {
+            Map.Entry<TKey, TValue> entry = entries.next();
+            if (leaf == null || leaf.getKeyCount() == this.order) {
+                BTreeLeafNode<TKey, TValue> next = nodes.newLeaf();
+                if (leaf != null)
+                    leaf.setRightSibling(next.id);
+                leaf = next;
+                level.add(leaf);
+                lowKeys.add(entry.getKey());
             }
-            leaf = (BTreeLeafNode) leaf.leftSibling;
+            leaf.setKey(leaf.keyCount, entry.getKey());
+            leaf.setValue(leaf.keyCount, entry.getValue());
+            leaf.keyCount++;
         }
 
-        return res;
+        if (level.isEmpty()) {
+            nodes.setRoot(nodes.newLeaf());
+            return;
+        }
+
+        // the last leaf borrows from the one before it if it is under half full
+        if (level.size() > 1 && leaf.isUnderflow()) {
+            BTreeLeafNode<TKey, TValue> prev = (BTreeLeafNode<TKey, TValue>) level.get(level.size() - 2);
+            while (leaf.isUnderflow())
+                leaf.transferFromSibling(null, prev, prev.getKeyCount() - 1);
+            lowKeys.set(lowKeys.size() - 1, leaf.getKey(0));
+        }
+
+        while (level.size() > 1) {
+            int nodeCount = (level.size() + order) / (order + 1);
+            ArrayList<BTreeNode<TKey>> parents = new ArrayList<>(nodeCount);
+            ArrayList<TKey> parentLowKeys = new ArrayList<>(nodeCount);
+
+            BTreeInnerNode<TKey> prev = null;
+            int first = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                // spread the children evenly so no node is under half full
+                int childCount = (level.size() - first) / (nodeCount - i);
+                BTreeInnerNode<TKey> node = nodes.newInnerNode();
+                for (int c = 0; c < childCount; c++) {
+                    node.setChild(c, level.get(first + c));
+                    if (c > 0)
+                        node.setKey(c - 1, lowKeys.get(first + c));
+                }
+                node.keyCount = childCount - 1;
+
+                if (prev != null)
+                    prev.setRightSibling(node.id);
+                prev = node;
+                parents.add(node);
+                parentLowKeys.add(lowKeys.get(first));
+                first += childCount;
+            }
+
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+
+        nodes.setRoot(level.get(0));
+    }
+
+    /**
+     * Returns a cursor over the values of the keys in a range, in key order.
+     * Only the descent to the first key of the range is done here; the cursor
+     * then follows the leaf chain as it is advanced, so reading K values costs
+     * O(log N + K) and no result is held in memory.
+     *
+     * @param lowKey        the low end of the range, or null for no low end
+     * @param lowInclusive  whether a key equal to the low key is in the range
+     * @param highKey       the high end of the range, or null for no high end
+     * @param highInclusive whether a key equal to the high key is in the range
+     * @return the cursor, positioned before the first value of the range
+     */
+    @SuppressWarnings("unchecked")
+    public RangeCursor<TKey, TValue> range(TKey lowKey, boolean lowInclusive, TKey highKey, boolean highInclusive) {
+        if (lowKey == null)
+            return new RangeCursor<>(getSmallest(), 0, highKey, highInclusive);
+
+        BTreeLeafNode<TKey, TValue> leaf = this.findLeafNodeShouldContainKey(lowKey);
+        int index = lowInclusive ? leaf.keys.lowerBound(leaf.getKeyCount(), lowKey)
+                : leaf.keys.upperBound(leaf.getKeyCount(), lowKey);
+        return new RangeCursor<>(leaf, index, highKey, highInclusive);
     }
 
     /**
@@ -108,7 +335,7 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
         if (leaf.delete(key) && leaf.isUnderflow()) {
             BTreeNode<TKey> n = leaf.dealUnderflow();
             if (n != null)
-                this.root = n;
+                this.store.setRoot(n);
         }
     }
 
@@ -117,8 +344,8 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
      */
     @SuppressWarnings("unchecked")
     private BTreeLeafNode<TKey, TValue> findLeafNodeShouldContainKey(TKey key) {
-        BTreeNode<TKey> node = this.root;
-        while (node.getNodeType() == TreeNodeType.InnerNode) {
+        BTreeNode<TKey> node = this.root();
+        while (node instanceof BTreeInnerNode) {
             node = ((BTreeInnerNode<TKey>) node).getChild(node.search(key));
         }
 
@@ -126,16 +353,16 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
     }
 
     public void print() {
-        ArrayList<BTreeNode> upper = new ArrayList<>();
-        ArrayList<BTreeNode> lower = new ArrayList<>();
+        ArrayList<BTreeNode<TKey>> upper = new ArrayList<>();
+        ArrayList<BTreeNode<TKey>> lower = new ArrayList<>();
 
-        upper.add(root);
+        upper.add(this.root());
         while (!upper.isEmpty()) {
-            BTreeNode cur = upper.get(0);
+            BTreeNode<TKey> cur = upper.get(0);
             if (cur instanceof BTreeInnerNode) {
-                ArrayList<BTreeNode> children = ((BTreeInnerNode) cur).getChildren();
+                ArrayList<BTreeNode<TKey>> children = ((BTreeInnerNode<TKey>) cur).getChildren();
                 for (int i = 0; i < children.size(); i++) {
-                    BTreeNode child = children.get(i);
+                    BTreeNode<TKey> child = children.get(i);
                     if (child != null)
                         lower.add(child);
                 }
@@ -150,11 +377,37 @@ public class BTree<TKey extends Comparable<TKey>, TValue> implements Serializabl
         }
     }
 
-    public BTreeLeafNode getSmallest() {
-        return this.root.getSmallest();
+    @SuppressWarnings("unchecked")
+    public BTreeLeafNode<TKey, TValue> getSmallest() {
+        return (BTreeLeafNode<TKey, TValue>) this.root().getSmallest();
     }
 
     public String commit() {
-        return this.root.commit();
+        return this.root().commit();
+    }
+
+    /**
+     * @return the root node, whose keys are of the tree's key type
+     */
+    @SuppressWarnings("unchecked")
+    private BTreeNode<TKey> root() {
+        return this.nodes().getRoot();
+    }
+
+    /**
+     * Returns the store of the nodes, opening the node file after the tree is
+     * read. Nodes cached past the cache size are dropped here, before an
+     * operation starts using nodes.
+     */
+    private NodeStore nodes() {
+        if (this.store == null || this.store.isClosed()) {
+            try {
+                this.store = NodeStore.open(path, order, keyClass, codec);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.store.trim();
+        return this.store;
     }
 }
\ No newline at end of file
@@ -1,42 +1,60 @@
 package Table.BTree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
  * @author mohamed
  */
 class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
-	protected final static int INNERORDER = 4;
 	/**
+	 * The ids of the children, read from the store when they are used.
+	 *
 	 * @uml.property name="children"
 	 */
-	protected Object[] children;
+	protected int[] children;
 
-	public BTreeInnerNode() {
-		this.keys = new Object[INNERORDER + 1];
-		this.children = new Object[INNERORDER + 2];
+	/**
+	 * @param store the store holding the node
+	 * @param keys  the empty key array of the node, its capacity is the order
+	 *              of the tree plus one
+	 */
+	public BTreeInnerNode(NodeStore store, KeyArray keys) {
+		super(store, keys);
+		this.children = new int[keys.length() + 1];
 	}
 
 	@SuppressWarnings("unchecked")
 	public BTreeNode<TKey> getChild(int index) {
-		return (BTreeNode<TKey>) this.children[index];
+		BTreeNode<TKey> child = (BTreeNode<TKey>) this.store.get(this.children[index]);
+		child.setParent(this);
+		return child;
 	}
 
-	public ArrayList<BTreeNode> getChildren() {
-		ArrayList<BTreeNode> nodes = new ArrayList<>();
-		for (int i = 0; i < children.length; i++) {
-			if (children[i] == null)
-				break;
-			else if (children[i] instanceof BTreeNode)
-				nodes.add((BTreeNode<TKey>) children[i]);
+	public ArrayList<BTreeNode<TKey>> getChildren() {
+		ArrayList<BTreeNode<TKey>> nodes = new ArrayList<>();
+		for (int i = 0; i <= this.getKeyCount(); i++) {
+			nodes.add(this.getChild(i));
 		}
 		return nodes;
 	}
 
 	public void setChild(int index, BTreeNode<TKey> child) {
-		this.children[index] = child;
-		if (child != null)
-			child.setParent(this);
+		this.markDirty();
+		this.children[index] = child.id;
+		child.setParent(this);
+	}
+
+	/**
+	 * @return the position of a child of the node
+	 */
+	int indexOf(BTreeNode<TKey> child) {
+		int index = 0;
+		while (index < this.getKeyCount() && this.children[index] != child.id)
+			++index;
+		return index;
 	}
 
 	@Override
@@ -55,57 +73,63 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 
 	@Override
 	public int search(TKey key) {
-		int index = 0;
-		for (index = 0; index < this.getKeyCount(); ++index) {
-			int cmp = this.getKey(index).compareTo(key);
-			if (cmp == 0) {
-				return index + 1;
-			} else if (cmp > 0) {
-				return index;
-			}
+		return this.keys.upperBound(this.getKeyCount(), key);
+	}
+
+	/* The codes below are used to store the node */
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	void writeTo(DataOutput out, NodeCodec codec) throws IOException {
+		super.writeTo(out, codec);
+		for (int i = 0; i <= this.getKeyCount(); ++i) {
+			out.writeInt(this.children[i]);
 		}
+	}
 
-		return index;
+	@Override
+	@SuppressWarnings("rawtypes")
+	void readFrom(DataInput in, NodeCodec codec) throws IOException {
+		super.readFrom(in, codec);
+		for (int i = 0; i <= this.getKeyCount(); ++i) {
+			this.children[i] = in.readInt();
+		}
 	}
 
 	/* The codes below are used to support insertion operation */
 
-	private void insertAt(int index, TKey key, BTreeNode<TKey> leftChild, BTreeNode<TKey> rightChild) {
+	private void insertAt(int index, TKey key, int leftChild, int rightChild) {
 		// move space for the new key
-		for (int i = this.getKeyCount() + 1; i > index; --i) {
-			this.setChild(i, this.getChild(i - 1));
-		}
-		for (int i = this.getKeyCount(); i > index; --i) {
-			this.setKey(i, this.getKey(i - 1));
-		}
+		this.markDirty();
+		System.arraycopy(this.children, index, this.children, index + 1, this.getKeyCount() + 1 - index);
+		this.keys.copy(index, this.keys, index + 1, this.getKeyCount() - index);
 
 		// insert the new key
 		this.setKey(index, key);
-		this.setChild(index, leftChild);
-		this.setChild(index + 1, rightChild);
+		this.children[index] = leftChild;
+		this.children[index + 1] = rightChild;
 		this.keyCount += 1;
 	}
 
 	/**
 	 * When splits a internal node, the middle key is kicked out and be pushed
-	 * to parent node.
+	 * to parent node. The children moved to the new node are not read, their
+	 * parent is set when they are next reached from it.
 	 */
 	@Override
 	protected BTreeNode<TKey> split() {
 		int midIndex = this.getKeyCount() / 2;
 
-		BTreeInnerNode<TKey> newRNode = new BTreeInnerNode<TKey>();
-		for (int i = midIndex + 1; i < this.getKeyCount(); ++i) {
-			newRNode.setKey(i - midIndex - 1, this.getKey(i));
+		BTreeInnerNode<TKey> newRNode = this.store.newInnerNode();
+		this.markDirty();
+		int moved = this.getKeyCount() - midIndex - 1;
+		this.keys.copy(midIndex + 1, newRNode.keys, 0, moved);
+		System.arraycopy(this.children, midIndex + 1, newRNode.children, 0, moved + 1);
+		for (int i = midIndex; i < this.getKeyCount(); ++i) {
 			this.setKey(i, null);
+			this.children[i + 1] = NodeStore.NO_NODE;
 		}
-		for (int i = midIndex + 1; i <= this.getKeyCount(); ++i) {
-			newRNode.setChild(i - midIndex - 1, this.getChild(i));
-			newRNode.getChild(i - midIndex - 1).setParent(newRNode);
-			this.setChild(i, null);
-		}
-		this.setKey(midIndex, null);
-		newRNode.keyCount = this.getKeyCount() - midIndex - 1;
+		newRNode.keyCount = moved;
 		this.keyCount = midIndex;
 
 		return newRNode;
@@ -117,7 +141,7 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 		int index = this.search(key);
 
 		// insert the new key
-		this.insertAt(index, key, leftChild, rightNode);
+		this.insertAt(index, key, leftChild.id, rightNode.id);
 
 		// check whether current node need to be split
 		if (this.isOverflow()) {
@@ -130,21 +154,32 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 	/* The codes below are used to support delete operation */
 
 	private void deleteAt(int index) {
-		int i = 0;
-		for (i = index; i < this.getKeyCount() - 1; ++i) {
-			this.setKey(i, this.getKey(i + 1));
-			this.setChild(i + 1, this.getChild(i + 2));
-		}
+		this.markDirty();
+		int i = this.getKeyCount() - 1;
+		this.keys.copy(index + 1, this.keys, index, i - index);
+		System.arraycopy(this.children, index + 2, this.children, index + 1, i - index);
+		this.setKey(i, null);
+		this.children[i + 1] = NodeStore.NO_NODE;
+		--this.keyCount;
+	}
+
+	/**
+	 * Removes the first key together with the first child, the child has been
+	 * lent to the left sibling.
+	 */
+	private void deleteFirst() {
+		this.markDirty();
+		int i = this.getKeyCount() - 1;
+		this.keys.copy(1, this.keys, 0, i);
+		System.arraycopy(this.children, 1, this.children, 0, i + 1);
 		this.setKey(i, null);
-		this.setChild(i + 1, null);
+		this.children[i + 1] = NodeStore.NO_NODE;
 		--this.keyCount;
 	}
 
 	@Override
 	protected void processChildrenTransfer(BTreeNode<TKey> borrower, BTreeNode<TKey> lender, int borrowIndex) {
-		int borrowerChildIndex = 0;
-		while (borrowerChildIndex < this.getKeyCount() + 1 && this.getChild(borrowerChildIndex) != borrower)
-			++borrowerChildIndex;
+		int borrowerChildIndex = this.indexOf(borrower);
 
 		if (borrowIndex == 0) {
 			// borrow a key from right sibling
@@ -159,9 +194,7 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 
 	@Override
 	protected BTreeNode<TKey> processChildrenFusion(BTreeNode<TKey> leftChild, BTreeNode<TKey> rightChild) {
-		int index = 0;
-		while (index < this.getKeyCount() && this.getChild(index) != leftChild)
-			++index;
+		int index = this.indexOf(leftChild);
 		TKey sinkKey = this.getKey(index);
 
 		// merge two children and the sink key into the left child node
@@ -169,6 +202,7 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 
 		// remove the sink key, keep the left child and abandon the right child
 		this.deleteAt(index);
+		this.store.free(rightChild);
 
 		// check whether need to propagate borrow or fusion to parent
 		if (this.isUnderflow()) {
@@ -176,6 +210,7 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 				// current node is root, only remove keys or delete the whole
 				// root node
 				if (this.getKeyCount() == 0) {
+					this.store.free(this);
 					leftChild.setParent(null);
 					return leftChild;
 				} else {
@@ -199,14 +234,10 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 		for (int i = 0; i < rightSiblingNode.getKeyCount(); ++i) {
 			this.setKey(j + i, rightSiblingNode.getKey(i));
 		}
-		for (int i = 0; i < rightSiblingNode.getKeyCount() + 1; ++i) {
-			this.setChild(j + i, rightSiblingNode.getChild(i));
-		}
+		System.arraycopy(rightSiblingNode.children, 0, this.children, j, rightSiblingNode.getKeyCount() + 1);
 		this.keyCount += 1 + rightSiblingNode.getKeyCount();
 
 		this.setRightSibling(rightSiblingNode.rightSibling);
-		if (rightSiblingNode.rightSibling != null)
-			rightSiblingNode.rightSibling.setLeftSibling(this);
 	}
 
 	@Override
@@ -218,14 +249,14 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 			// borrow the first key from right sibling, append it to tail
 			int index = this.getKeyCount();
 			this.setKey(index, sinkKey);
-			this.setChild(index + 1, siblingNode.getChild(borrowIndex));
+			this.children[index + 1] = siblingNode.children[borrowIndex];
 			this.keyCount += 1;
 
 			upKey = siblingNode.getKey(0);
-			siblingNode.deleteAt(borrowIndex);
+			siblingNode.deleteFirst();
 		} else {
 			// borrow the last key from left sibling, insert it to head
-			this.insertAt(0, sinkKey, siblingNode.getChild(borrowIndex + 1), this.getChild(0));
+			this.insertAt(0, sinkKey, siblingNode.children[borrowIndex + 1], this.children[0]);
 			upKey = siblingNode.getKey(borrowIndex);
 			siblingNode.deleteAt(borrowIndex);
 		}
@@ -236,14 +267,14 @@ class BTreeInnerNode<TKey extends Comparable<TKey>> extends BTreeNode<TKey> {
 	@Override
 	public String commit() {
 		String result = null;
-		for (int i = 0; i < children.length; i++) {
-			result += ((BTreeNode<TKey>) children[0]).commit() + "\r\n";
+		for (int i = 0; i <= this.getKeyCount(); i++) {
+			result += this.getChild(0).commit() + "\r\n";
 		}
 		return result;
 	}
 
 	@Override
-	public BTreeLeafNode getSmallest() {
+	public BTreeLeafNode<TKey, ?> getSmallest() {
 		return this.getChild(0).getSmallest();
 	}
 }
\ No newline at end of file
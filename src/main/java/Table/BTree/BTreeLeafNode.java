@@ -1,12 +1,14 @@
 package Table.BTree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
  * @author mohamed
  */
 class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKey> {
-	protected final static int LEAFORDER = 4;
 	/**
 	 * @uml.property name="values"
 	 */
@@ -17,15 +19,15 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	 */
 	private ArrayList<Boolean> filters;
 
-	public BTreeLeafNode() {
+	/**
+	 * @param store the store holding the node
+	 * @param keys  the empty key array of the node, its capacity is the order
+	 *              of the tree plus one
+	 */
+	public BTreeLeafNode(NodeStore store, KeyArray keys) {
+		super(store, keys);
 		this.filters = new ArrayList<>();
-		this.keys = new Object[LEAFORDER + 1];
-		this.values = new Object[LEAFORDER + 1];
-	}
-
-	public BTreeLeafNode(BTreeLeafNode smallest) {
-		this.keys = smallest.keys;
-		this.values = smallest.values;
+		this.values = new Object[keys.length()];
 	}
 
 	@SuppressWarnings("unchecked")
@@ -34,9 +36,20 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	}
 
 	public void setValue(int index, TValue value) {
+		this.markDirty();
 		this.values[index] = value;
 	}
 
+	/**
+	 * @return the next leaf in key order, or null for the last leaf
+	 */
+	@SuppressWarnings("unchecked")
+	public BTreeLeafNode<TKey, TValue> nextLeaf() {
+		if (this.rightSibling == NodeStore.NO_NODE)
+			return null;
+		return (BTreeLeafNode<TKey, TValue>) this.store.get(this.rightSibling);
+	}
+
 	@Override
 	public TreeNodeType getNodeType() {
 		return TreeNodeType.LeafNode;
@@ -44,14 +57,9 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 
 	@Override
 	public int search(TKey key) {
-		for (int i = 0; i < this.getKeyCount(); ++i) {
-			int cmp = this.getKey(i).compareTo(key);
-			if (cmp == 0) {
-				return i;
-			} else if (cmp > 0) {
-				return -1;
-			}
-		}
+		int index = this.keys.lowerBound(this.getKeyCount(), key);
+		if (index < this.getKeyCount() && this.keys.compare(index, key) == 0)
+			return index;
 
 		return -1;
 	}
@@ -65,21 +73,39 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 		return out;
 	}
 
+	/* The codes below are used to store the node */
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	void writeTo(DataOutput out, NodeCodec codec) throws IOException {
+		super.writeTo(out, codec);
+		for (int i = 0; i < this.getKeyCount(); ++i) {
+			codec.writeValue(out, this.values[i]);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	void readFrom(DataInput in, NodeCodec codec) throws IOException {
+		super.readFrom(in, codec);
+		for (int i = 0; i < this.getKeyCount(); ++i) {
+			this.values[i] = codec.readValue(in);
+		}
+	}
+
 	/* The codes below are used to support insertion operation */
 
 	public void insertKey(TKey key, TValue value) {
-		int index = 0;
-		while (index < this.getKeyCount() && this.getKey(index).compareTo(key) < 0)
-			++index;
+		int index = this.keys.lowerBound(this.getKeyCount(), key);
 		this.insertAt(index, key, value);
 	}
 
 	private void insertAt(int index, TKey key, TValue value) {
 		// move space for the new key
-		for (int i = this.getKeyCount() - 1; i >= index; --i) {
-			this.setKey(i + 1, this.getKey(i));
-			this.setValue(i + 1, this.getValue(i));
-		}
+		this.markDirty();
+		int moved = this.getKeyCount() - index;
+		this.keys.copy(index, this.keys, index + 1, moved);
+		System.arraycopy(this.values, index, this.values, index + 1, moved);
 
 		// insert new key and value
 		this.setKey(index, key);
@@ -95,10 +121,12 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	protected BTreeNode<TKey> split() {
 		int midIndex = this.getKeyCount() / 2;
 
-		BTreeLeafNode<TKey, TValue> newRNode = new BTreeLeafNode<TKey, TValue>();
+		BTreeLeafNode<TKey, TValue> newRNode = this.store.newLeaf();
+		this.markDirty();
+		int moved = this.getKeyCount() - midIndex;
+		this.keys.copy(midIndex, newRNode.keys, 0, moved);
+		System.arraycopy(this.values, midIndex, newRNode.values, 0, moved);
 		for (int i = midIndex; i < this.getKeyCount(); ++i) {
-			newRNode.setKey(i - midIndex, this.getKey(i));
-			newRNode.setValue(i - midIndex, this.getValue(i));
 			this.setKey(i, null);
 			this.setValue(i, null);
 		}
@@ -125,11 +153,10 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	}
 
 	private void deleteAt(int index) {
-		int i = index;
-		for (i = index; i < this.getKeyCount() - 1; ++i) {
-			this.setKey(i, this.getKey(i + 1));
-			this.setValue(i, this.getValue(i + 1));
-		}
+		this.markDirty();
+		int i = this.getKeyCount() - 1;
+		this.keys.copy(index + 1, this.keys, index, i - index);
+		System.arraycopy(this.values, index + 1, this.values, index, i - index);
 		this.setKey(i, null);
 		this.setValue(i, null);
 		--this.keyCount;
@@ -153,16 +180,13 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	protected void fusionWithSibling(TKey sinkKey, BTreeNode<TKey> rightSibling) {
 		BTreeLeafNode<TKey, TValue> siblingLeaf = (BTreeLeafNode<TKey, TValue>) rightSibling;
 
+		this.markDirty();
 		int j = this.getKeyCount();
-		for (int i = 0; i < siblingLeaf.getKeyCount(); ++i) {
-			this.setKey(j + i, siblingLeaf.getKey(i));
-			this.setValue(j + i, siblingLeaf.getValue(i));
-		}
+		siblingLeaf.keys.copy(0, this.keys, j, siblingLeaf.getKeyCount());
+		System.arraycopy(siblingLeaf.values, 0, this.values, j, siblingLeaf.getKeyCount());
 		this.keyCount += siblingLeaf.getKeyCount();
 
 		this.setRightSibling(siblingLeaf.rightSibling);
-		if (siblingLeaf.rightSibling != null)
-			siblingLeaf.rightSibling.setLeftSibling(this);
 	}
 
 	@Override
@@ -189,7 +213,7 @@ class BTreeLeafNode<TKey extends Comparable<TKey>, TValue> extends BTreeNode<TKe
 	}
 
 	@Override
-	public BTreeLeafNode getSmallest() {
+	public BTreeLeafNode<TKey, TValue> getSmallest() {
 		return this;
 	}
 
@@ -1,6 +1,8 @@
 package Table.BTree;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 enum TreeNodeType {
 	InnerNode, LeafNode
@@ -9,38 +11,50 @@ enum TreeNodeType {
 /**
  * @author mohamed
  */
-abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable {
+abstract class BTreeNode<TKey extends Comparable<TKey>> {
+	/**
+	 * The store holding the node, and the id of the node in it.
+	 */
+	protected final NodeStore store;
+	protected int id;
 	/**
 	 * @uml.property name="keys"
 	 */
-	protected Object[] keys;
+	protected KeyArray keys;
 	/**
 	 * @uml.property name="keyCount"
 	 */
 	protected int keyCount;
 	/**
+	 * The parent is not stored, it is set when the node is reached from its
+	 * parent, so it is only valid on the path of the current operation.
+	 *
 	 * @uml.property name="parentNode"
 	 * @uml.associationEnd inverse=
 	 *                     "leftSibling:data_structures.BPlusTree.BTreeNode"
 	 */
-	protected BTreeNode<TKey> parentNode;
-	/**
-	 * @uml.property name="leftSibling"
-	 * @uml.associationEnd inverse=
-	 *                     "parentNode:data_structures.BPlusTree.BTreeNode"
-	 */
-	protected BTreeNode<TKey> leftSibling;
+	protected BTreeInnerNode<TKey> parentNode;
 	/**
+	 * The id of the next node on the same level, only followed along the
+	 * leaves.
+	 *
 	 * @uml.property name="rightSibling"
 	 * @uml.associationEnd
 	 */
-	protected BTreeNode<TKey> rightSibling;
+	protected int rightSibling;
+
+	// whether the node changed since it was written to the store, and the
+	// overflow blocks holding the part of the node past its first block
+	boolean dirty;
+	int[] overflowBlocks;
 
-	protected BTreeNode() {
+	protected BTreeNode(NodeStore store, KeyArray keys) {
+		this.store = store;
+		this.keys = keys;
 		this.keyCount = 0;
 		this.parentNode = null;
-		this.leftSibling = null;
-		this.rightSibling = null;
+		this.rightSibling = NodeStore.NO_NODE;
+		this.overflowBlocks = new int[0];
 	}
 
 	/**
@@ -53,21 +67,29 @@ abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable
 
 	@SuppressWarnings("unchecked")
 	public TKey getKey(int index) {
-		return (TKey) this.keys[index];
+		return (TKey) this.keys.get(index);
 	}
 
 	public void setKey(int index, TKey key) {
-		this.keys[index] = key;
+		this.markDirty();
+		this.keys.set(index, key);
 	}
 
-	public BTreeNode<TKey> getParent() {
+	public BTreeInnerNode<TKey> getParent() {
 		return this.parentNode;
 	}
 
-	public void setParent(BTreeNode<TKey> parent) {
+	public void setParent(BTreeInnerNode<TKey> parent) {
 		this.parentNode = parent;
 	}
 
+	/**
+	 * Marks the node as modified, it is written back when the tree is saved.
+	 */
+	protected void markDirty() {
+		this.store.markDirty(this);
+	}
+
 	/**
 	 * @uml.property name="nodeType"
 	 * @uml.associationEnd readOnly="true"
@@ -81,10 +103,34 @@ abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable
 	 */
 	public abstract int search(TKey key);
 
+	/* The codes below are used to store the node */
+
+	/**
+	 * Writes the keys and links of the node, subclasses then write their
+	 * values or children.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	void writeTo(DataOutput out, NodeCodec codec) throws IOException {
+		out.writeInt(this.keyCount);
+		out.writeInt(this.rightSibling);
+		for (int i = 0; i < this.keyCount; ++i) {
+			codec.writeKey(out, this.getKey(i));
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	void readFrom(DataInput in, NodeCodec codec) throws IOException {
+		this.keyCount = in.readInt();
+		this.rightSibling = in.readInt();
+		for (int i = 0; i < this.keyCount; ++i) {
+			this.keys.set(i, codec.readKey(in));
+		}
+	}
+
 	/* The codes below are used to support insertion operation */
 
 	public boolean isOverflow() {
-		return this.getKeyCount() == this.keys.length;
+		return this.getKeyCount() == this.keys.length();
 	}
 
 	public BTreeNode<TKey> dealOverflow() {
@@ -94,16 +140,13 @@ abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable
 		BTreeNode<TKey> newRNode = this.split();
 
 		if (this.getParent() == null) {
-			this.setParent(new BTreeInnerNode<TKey>());
+			this.setParent(this.store.<TKey>newInnerNode());
 		}
 		newRNode.setParent(this.getParent());
 
 		// maintain links of sibling nodes
-		newRNode.setLeftSibling(this);
 		newRNode.setRightSibling(this.rightSibling);
-		if (this.getRightSibling() != null)
-			this.getRightSibling().setLeftSibling(newRNode);
-		this.setRightSibling(newRNode);
+		this.setRightSibling(newRNode.id);
 
 		// push up a key to parent internal node
 		return this.getParent().pushUpKey(upKey, this, newRNode);
@@ -115,31 +158,43 @@ abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable
 
 	/* The codes below are used to support deletion operation */
 
+	/*
+	 * A node holds at most order = keys.length() - 1 keys. Using half the order
+	 * as the minimum keeps a fusion (two nodes plus the sink key) within the
+	 * order for odd orders too.
+	 */
 	public boolean isUnderflow() {
-		return this.getKeyCount() < (this.keys.length / 2);
+		return this.getKeyCount() < ((this.keys.length() - 1) / 2);
 	}
 
 	public boolean canLendAKey() {
-		return this.getKeyCount() > (this.keys.length / 2);
+		return this.getKeyCount() > ((this.keys.length() - 1) / 2);
 	}
 
+	/**
+	 * @return the child of the same parent left of this node, or null
+	 */
 	public BTreeNode<TKey> getLeftSibling() {
-		if (this.leftSibling != null && this.leftSibling.getParent() == this.getParent())
-			return this.leftSibling;
-		return null;
-	}
+		if (this.getParent() == null)
+			return null;
 
-	public void setLeftSibling(BTreeNode<TKey> sibling) {
-		this.leftSibling = sibling;
+		int index = this.getParent().indexOf(this);
+		return index > 0 ? this.getParent().getChild(index - 1) : null;
 	}
 
+	/**
+	 * @return the child of the same parent right of this node, or null
+	 */
 	public BTreeNode<TKey> getRightSibling() {
-		if (this.rightSibling != null && this.rightSibling.getParent() == this.getParent())
-			return this.rightSibling;
-		return null;
+		if (this.getParent() == null)
+			return null;
+
+		int index = this.getParent().indexOf(this);
+		return index < this.getParent().getKeyCount() ? this.getParent().getChild(index + 1) : null;
 	}
 
-	public void setRightSibling(BTreeNode<TKey> silbling) {
+	public void setRightSibling(int silbling) {
+		this.markDirty();
 		this.rightSibling = silbling;
 	}
 
@@ -182,7 +237,7 @@ abstract class BTreeNode<TKey extends Comparable<TKey>> implements Serializable
 	 * @uml.property name="smallest"
 	 * @uml.associationEnd readOnly="true"
 	 */
-	public abstract BTreeLeafNode getSmallest();
+	public abstract BTreeLeafNode<TKey, ?> getSmallest();
 
 	// public abstract String project(SelectColumns columns);
 
@@ -48,6 +48,10 @@ public class BTreeTest {
 }
 
 class IntegerBTree extends BTree<Integer, Integer> {
+	public IntegerBTree() {
+		super(4, Integer.class);
+	}
+
 	public void insert(int key) {
 		this.insert(key, key);
 	}
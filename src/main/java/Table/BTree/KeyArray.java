@@ -0,0 +1,176 @@
+package Table.BTree;
+
+/**
+ * Fixed capacity key storage of a B+ tree node. Integer and Double keys are
+ * kept in primitive arrays so a node's keys are contiguous in memory and are
+ * compared without following a pointer per key; other key types are kept in an
+ * Object array.
+ */
+abstract class KeyArray {
+
+	/**
+	 * Creates an empty key array for the given key class.
+	 */
+	static KeyArray create(Class<?> keyClass, int capacity) {
+		if (keyClass == Integer.class)
+			return new IntKeyArray(capacity);
+		if (keyClass == Double.class)
+			return new DoubleKeyArray(capacity);
+		return new ObjectKeyArray(capacity);
+	}
+
+	abstract int length();
+
+	abstract Object get(int index);
+
+	/**
+	 * Stores a key, null clears the position.
+	 */
+	abstract void set(int index, Object key);
+
+	/**
+	 * Compares the key at a position to the given key, like
+	 * {@link Comparable#compareTo(Object)}.
+	 */
+	abstract int compare(int index, Object key);
+
+	/**
+	 * Copies a range of keys to an array of the same kind, the ranges may
+	 * overlap.
+	 */
+	abstract void copy(int from, KeyArray dest, int to, int count);
+
+	/**
+	 * @return the index of the first of the first count keys that is not less
+	 *         than the given key, or count if there is none
+	 */
+	int lowerBound(int count, Object key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, key) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first of the first count keys that is greater
+	 *         than the given key, or count if there is none
+	 */
+	int upperBound(int count, Object key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, key) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	static class IntKeyArray extends KeyArray {
+		private final int[] keys;
+
+		IntKeyArray(int capacity) {
+			this.keys = new int[capacity];
+		}
+
+		@Override
+		int length() {
+			return keys.length;
+		}
+
+		@Override
+		Object get(int index) {
+			return keys[index];
+		}
+
+		@Override
+		void set(int index, Object key) {
+			keys[index] = key == null ? 0 : (Integer) key;
+		}
+
+		@Override
+		int compare(int index, Object key) {
+			return Integer.compare(keys[index], (Integer) key);
+		}
+
+		@Override
+		void copy(int from, KeyArray dest, int to, int count) {
+			System.arraycopy(keys, from, ((IntKeyArray) dest).keys, to, count);
+		}
+	}
+
+	static class DoubleKeyArray extends KeyArray {
+		private final double[] keys;
+
+		DoubleKeyArray(int capacity) {
+			this.keys = new double[capacity];
+		}
+
+		@Override
+		int length() {
+			return keys.length;
+		}
+
+		@Override
+		Object get(int index) {
+			return keys[index];
+		}
+
+		@Override
+		void set(int index, Object key) {
+			keys[index] = key == null ? 0 : (Double) key;
+		}
+
+		@Override
+		int compare(int index, Object key) {
+			return Double.compare(keys[index], (Double) key);
+		}
+
+		@Override
+		void copy(int from, KeyArray dest, int to, int count) {
+			System.arraycopy(keys, from, ((DoubleKeyArray) dest).keys, to, count);
+		}
+	}
+
+	static class ObjectKeyArray extends KeyArray {
+		private final Object[] keys;
+
+		ObjectKeyArray(int capacity) {
+			this.keys = new Object[capacity];
+		}
+
+		@Override
+		int length() {
+			return keys.length;
+		}
+
+		@Override
+		Object get(int index) {
+			return keys[index];
+		}
+
+		@Override
+		void set(int index, Object key) {
+			keys[index] = key;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		int compare(int index, Object key) {
+			return ((Comparable<Object>) keys[index]).compareTo(key);
+		}
+
+		@Override
+		void copy(int from, KeyArray dest, int to, int count) {
+			System.arraycopy(keys, from, ((ObjectKeyArray) dest).keys, to, count);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package Table.BTree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Writes the keys and values of a {@link BTree} to the blocks of its node file
+ * and reads them back. It is saved with the tree, so it only holds the types it
+ * encodes.
+ *
+ * @param <TKey>   the data type of the key
+ * @param <TValue> the data type of the value
+ */
+public interface NodeCodec<TKey, TValue> extends Serializable {
+    void writeKey(DataOutput out, TKey key) throws IOException;
+
+    TKey readKey(DataInput in) throws IOException;
+
+    void writeValue(DataOutput out, TValue value) throws IOException;
+
+    TValue readValue(DataInput in) throws IOException;
+}
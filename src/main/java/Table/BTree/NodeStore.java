@@ -0,0 +1,443 @@
+package Table.BTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The nodes of a B+ tree, kept in a file of fixed size blocks. Block 0 is the
+ * header, holding the root, the number of blocks and the first free block. A
+ * node is stored from the block numbered by its id, and the rest of a node
+ * larger than a block goes to overflow blocks chained from it. The blocks of
+ * removed nodes are chained in a free list and reused before the file grows.
+ * A block freed since the last flush still holds a node of the tree last
+ * written, so it is only linked into the free list on disk by the next flush,
+ * once the nodes replacing it are written.
+ * <p>
+ * Nodes are read when first used and cached; when more than
+ * {@link BTree#maximumCachedNodes} are cached, the least recently used clean
+ * nodes are dropped. A modified node stays cached until {@link #flush()} writes
+ * it back, so saving the tree writes only the nodes changed since it was last
+ * saved, about one per level for an insert or a delete. Every loaded copy of a
+ * tree shares the store of its file, until the store is closed; a tree whose
+ * store was closed opens its file again when next used.
+ * <p>
+ * A store without a file keeps all its nodes in memory.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+class NodeStore {
+    static final int BLOCK_SIZE = 4096;
+
+    static final int NO_NODE = -1;
+
+    private static final int MAGIC = 0x42547265;
+
+    // each block starts with the number of the next block of its chain
+    private static final int PAYLOAD_SIZE = BLOCK_SIZE - 4;
+
+    private static final byte LEAF_NODE = 0;
+    private static final byte INNER_NODE = 1;
+
+    // stores of the open node files, by path
+    private static final HashMap<String, NodeStore> openStores = new HashMap<>();
+
+    // null for a store kept in memory
+    private final RandomAccessFile file;
+    private final int order;
+    private final Class<?> keyClass;
+    private final NodeCodec codec;
+
+    private int rootId;
+    private int blockCount;
+    private int freeHead;
+    private boolean headerDirty;
+    private boolean closed;
+
+    // blocks freed since the last flush, reused first and linked into the
+    // free list on disk by the next flush
+    private final ArrayList<Integer> pendingFree;
+
+    // cached nodes by id, least recently used first
+    private final LinkedHashMap<Integer, BTreeNode> cache;
+    private final LinkedHashMap<Integer, BTreeNode> dirtyNodes;
+
+    private final byte[] block;
+    private final byte[] word;
+
+    private NodeStore(RandomAccessFile file, int order, Class<?> keyClass, NodeCodec codec) {
+        this.file = file;
+        this.order = order;
+        this.keyClass = keyClass;
+        this.codec = codec;
+        this.rootId = NO_NODE;
+        this.blockCount = 1;
+        this.freeHead = NO_NODE;
+        this.headerDirty = true;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.dirtyNodes = new LinkedHashMap<>();
+        this.pendingFree = new ArrayList<>();
+        this.block = new byte[BLOCK_SIZE];
+        this.word = new byte[4];
+    }
+
+    /**
+     * @return an empty store keeping its nodes in memory
+     */
+    static NodeStore inMemory(int order, Class<?> keyClass) {
+        return new NodeStore(null, order, keyClass, null);
+    }
+
+    /**
+     * Creates an empty node file, replacing any file at the path.
+     *
+     * @param path     the path of the file
+     * @param order    the maximum number of keys in a node
+     * @param keyClass the class of the keys
+     * @param codec    the codec of the keys and values
+     * @return the store of the file
+     */
+    static synchronized NodeStore create(String path, int order, Class<?> keyClass, NodeCodec codec)
+            throws IOException {
+        NodeStore previous = openStores.get(path);
+        if (previous != null)
+            previous.close();
+
+        File nodeFile = new File(path);
+        File directory = nodeFile.getParentFile();
+        if (directory != null && !directory.exists())
+            directory.mkdirs();
+
+        RandomAccessFile file = new RandomAccessFile(nodeFile, "rw");
+        file.setLength(0);
+        NodeStore store = new NodeStore(file, order, keyClass, codec);
+        openStores.put(path, store);
+        return store;
+    }
+
+    /**
+     * Returns the store of a node file, opening the file if no copy of its tree
+     * has used it yet.
+     *
+     * @param path     the path of the file
+     * @param order    the maximum number of keys in a node
+     * @param keyClass the class of the keys
+     * @param codec    the codec of the keys and values
+     * @return the store of the file
+     */
+    static synchronized NodeStore open(String path, int order, Class<?> keyClass, NodeCodec codec)
+            throws IOException {
+        NodeStore store = openStores.get(path);
+        if (store != null)
+            return store;
+
+        File nodeFile = new File(path);
+        if (!nodeFile.exists())
+            throw new FileNotFoundException("B+ tree node file " + path + " does not exist");
+
+        store = new NodeStore(new RandomAccessFile(nodeFile, "rw"), order, keyClass, codec);
+        store.readHeader();
+        openStores.put(path, store);
+        return store;
+    }
+
+    /**
+     * Closes the node file. Nodes not yet flushed are lost; a tree using the
+     * store opens the file again when next used. A store kept in memory stays
+     * open.
+     *
+     * @throws IOException if an I/O error occurs while closing the file
+     */
+    void close() throws IOException {
+        synchronized (NodeStore.class) {
+            if (file == null || closed)
+                return;
+
+            closed = true;
+            cache.clear();
+            dirtyNodes.clear();
+            pendingFree.clear();
+            openStores.values().remove(this);
+            file.close();
+        }
+    }
+
+    /**
+     * Closes every open node file, see {@link #close()}.
+     *
+     * @throws IOException if an I/O error occurs while closing a file
+     */
+    static synchronized void closeAll() throws IOException {
+        for (NodeStore store : new ArrayList<>(openStores.values())) {
+            store.close();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    BTreeNode getRoot() {
+        BTreeNode root = get(rootId);
+        root.setParent(null);
+        return root;
+    }
+
+    void setRoot(BTreeNode root) {
+        rootId = root.id;
+        headerDirty = true;
+    }
+
+    <TKey extends Comparable<TKey>, TValue> BTreeLeafNode<TKey, TValue> newLeaf() {
+        return add(new BTreeLeafNode<TKey, TValue>(this, KeyArray.create(keyClass, order + 1)));
+    }
+
+    <TKey extends Comparable<TKey>> BTreeInnerNode<TKey> newInnerNode() {
+        return add(new BTreeInnerNode<TKey>(this, KeyArray.create(keyClass, order + 1)));
+    }
+
+    private <T extends BTreeNode> T add(T node) {
+        node.id = allocate();
+        cache.put(node.id, node);
+        markDirty(node);
+        return node;
+    }
+
+    /**
+     * @param id the id of a node
+     * @return the node, read from the file if it is not cached
+     */
+    BTreeNode get(int id) {
+        BTreeNode node = cache.get(id);
+        if (node != null)
+            return node;
+
+        try {
+            node = read(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cache.put(id, node);
+        return node;
+    }
+
+    /**
+     * Keeps a node cached until it is written back by the next flush.
+     */
+    void markDirty(BTreeNode node) {
+        if (file == null || node.dirty)
+            return;
+
+        node.dirty = true;
+        dirtyNodes.put(node.id, node);
+    }
+
+    /**
+     * Removes a node, its blocks are reused by the next nodes.
+     */
+    void free(BTreeNode node) {
+        cache.remove(node.id);
+        if (file == null)
+            return;
+
+        dirtyNodes.remove(node.id);
+        node.dirty = false;
+        freeBlock(node.id);
+        for (int overflowBlock : node.overflowBlocks)
+            freeBlock(overflowBlock);
+    }
+
+    /**
+     * Removes every node, the root must be set again before the tree is used.
+     */
+    void clear() {
+        cache.clear();
+        dirtyNodes.clear();
+        pendingFree.clear();
+        rootId = NO_NODE;
+        blockCount = 1;
+        freeHead = NO_NODE;
+        headerDirty = true;
+        if (file == null)
+            return;
+
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the modified nodes, then links the blocks freed since the last
+     * flush into the free list and writes the header, then drops the least
+     * recently used nodes past the cache size.
+     *
+     * @throws IOException if an I/O error occurs while writing a block
+     */
+    void flush() throws IOException {
+        if (file == null)
+            return;
+
+        for (BTreeNode node : dirtyNodes.values()) {
+            write(node);
+            node.dirty = false;
+        }
+        dirtyNodes.clear();
+
+        for (int blockNum : pendingFree) {
+            putInt(word, 0, freeHead);
+            file.seek((long) blockNum * BLOCK_SIZE);
+            file.write(word);
+            freeHead = blockNum;
+        }
+        pendingFree.clear();
+
+        if (headerDirty) {
+            file.seek(0);
+            file.write(toBytes(MAGIC, rootId, blockCount, freeHead));
+            headerDirty = false;
+        }
+        trim();
+    }
+
+    /**
+     * Drops the least recently used clean nodes past the cache size. Only
+     * called between operations on the tree, so no node in use is dropped.
+     */
+    void trim() {
+        if (file == null || cache.size() <= BTree.maximumCachedNodes)
+            return;
+
+        Iterator<BTreeNode> nodes = cache.values().iterator();
+        while (cache.size() > BTree.maximumCachedNodes && nodes.hasNext()) {
+            if (!nodes.next().dirty)
+                nodes.remove();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        file.seek(0);
+        if (file.length() < 16 || file.readInt() != MAGIC)
+            throw new IOException("Not a B+ tree node file");
+
+        rootId = file.readInt();
+        blockCount = file.readInt();
+        freeHead = file.readInt();
+        headerDirty = false;
+    }
+
+    private int allocate() {
+        headerDirty = true;
+        if (!pendingFree.isEmpty())
+            return pendingFree.remove(pendingFree.size() - 1);
+        if (file == null || freeHead == NO_NODE)
+            return blockCount++;
+
+        int id = freeHead;
+        try {
+            file.seek((long) id * BLOCK_SIZE);
+            file.readFully(word);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        freeHead = getInt(word, 0);
+        return id;
+    }
+
+    private void freeBlock(int blockNum) {
+        pendingFree.add(blockNum);
+        headerDirty = true;
+    }
+
+    private void write(BTreeNode node) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        // the length of the node, set below
+        out.writeInt(0);
+        out.writeByte(node instanceof BTreeLeafNode ? LEAF_NODE : INNER_NODE);
+        node.writeTo(out, codec);
+        byte[] data = bytes.toByteArray();
+        putInt(data, 0, data.length - 4);
+
+        // reuse the overflow blocks the node already has
+        int overflowCount = (data.length - 1) / PAYLOAD_SIZE;
+        int[] overflowBlocks = Arrays.copyOf(node.overflowBlocks, overflowCount);
+        for (int i = node.overflowBlocks.length; i < overflowCount; i++)
+            overflowBlocks[i] = allocate();
+        for (int i = overflowCount; i < node.overflowBlocks.length; i++)
+            freeBlock(node.overflowBlocks[i]);
+        node.overflowBlocks = overflowBlocks;
+
+        int blockNum = node.id;
+        for (int i = 0; i <= overflowCount; i++) {
+            int next = i < overflowCount ? overflowBlocks[i] : NO_NODE;
+            int from = i * PAYLOAD_SIZE;
+            putInt(block, 0, next);
+            System.arraycopy(data, from, block, 4, Math.min(PAYLOAD_SIZE, data.length - from));
+            file.seek((long) blockNum * BLOCK_SIZE);
+            file.write(block);
+            blockNum = next;
+        }
+    }
+
+    private BTreeNode read(int id) throws IOException {
+        readBlock(id);
+        int next = getInt(block, 0);
+        byte[] data = new byte[getInt(block, 4)];
+        int count = Math.min(data.length, PAYLOAD_SIZE - 4);
+        System.arraycopy(block, 8, data, 0, count);
+
+        int[] overflowBlocks = new int[(data.length + 3) / PAYLOAD_SIZE];
+        for (int i = 0; i < overflowBlocks.length; i++) {
+            overflowBlocks[i] = next;
+            readBlock(next);
+            next = getInt(block, 0);
+            int length = Math.min(data.length - count, PAYLOAD_SIZE);
+            System.arraycopy(block, 4, data, count, length);
+            count += length;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        KeyArray keys = KeyArray.create(keyClass, order + 1);
+        BTreeNode node = in.readByte() == LEAF_NODE ? new BTreeLeafNode(this, keys) : new BTreeInnerNode(this, keys);
+        node.id = id;
+        node.overflowBlocks = overflowBlocks;
+        node.readFrom(in, codec);
+        return node;
+    }
+
+    private void readBlock(int blockNum) throws IOException {
+        file.seek((long) blockNum * BLOCK_SIZE);
+        file.readFully(block);
+    }
+
+    private static byte[] toBytes(int... values) {
+        byte[] bytes = new byte[4 * values.length];
+        for (int i = 0; i < values.length; i++)
+            putInt(bytes, 4 * i, values[i]);
+        return bytes;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
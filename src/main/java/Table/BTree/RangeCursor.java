@@ -0,0 +1,73 @@
+package Table.BTree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over the values of a range of keys of a {@link BTree}, in key order.
+ * The cursor only holds its position in the leaf chain: each step moves to the
+ * next key of the leaf, or to the first key of the right sibling, and the walk
+ * ends at the first key past the range. Reading K values therefore costs the
+ * descent to the first key plus K steps, and the caller may stop at any time.
+ * The tree must not change while the cursor is in use.
+ */
+public class RangeCursor<TKey extends Comparable<TKey>, TValue> implements Iterator<TValue> {
+	private final TKey highKey;
+	private final boolean highInclusive;
+
+	// null once the walk is past the range
+	private BTreeLeafNode<TKey, TValue> leaf;
+	private int index;
+
+	// key of the value last returned by next
+	private TKey key;
+
+	/**
+	 * @param leaf          the leaf holding the first key of the range
+	 * @param index         the position of the first key of the range in the
+	 *                      leaf, possibly its key count
+	 * @param highKey       the high end of the range, or null for no high end
+	 * @param highInclusive whether a key equal to the high key is in the range
+	 */
+	RangeCursor(BTreeLeafNode<TKey, TValue> leaf, int index, TKey highKey, boolean highInclusive) {
+		this.leaf = leaf;
+		this.index = index;
+		this.highKey = highKey;
+		this.highInclusive = highInclusive;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (leaf != null && index >= leaf.getKeyCount()) {
+			leaf = leaf.nextLeaf();
+			index = 0;
+		}
+		if (leaf == null)
+			return false;
+
+		if (highKey != null) {
+			int comparison = leaf.keys.compare(index, highKey);
+			if (comparison > 0 || (comparison == 0 && !highInclusive)) {
+				leaf = null;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public TValue next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		key = leaf.getKey(index);
+		return leaf.getValue(index++);
+	}
+
+	/**
+	 * @return the key of the value last returned by {@link #next()}
+	 */
+	public TKey getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,173 @@
+package Table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bloom filter over the values of one column of a page. It answers whether a
+ * value may be in the column with no false negatives, so an equality lookup
+ * skips every page whose filter rules the value out without reading the page.
+ * <p>
+ * The filters of a page are kept in a file next to the page file:
+ *
+ * <pre>
+ * fieldCount (int) | fieldCount x ( present (byte) | [hashCount (int) | wordCount (int) | wordCount x word (long)] )
+ * </pre>
+ */
+public class BloomFilter {
+    static final String EXTENSION = ".bloom";
+
+    private final long[] words;
+    private final int hashCount;
+
+    private BloomFilter(long[] words, int hashCount) {
+        this.words = words;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Creates an empty filter sized for the given number of values.
+     *
+     * @param expectedValues    the number of values the filter is sized for
+     * @param falsePositiveRate the probability that a value not added is
+     *                          reported as present, between 0 and 1 exclusive
+     * @return the filter
+     */
+    static BloomFilter create(int expectedValues, double falsePositiveRate) {
+        int values = Math.max(1, expectedValues);
+        long bits = (long) Math.ceil(-values * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, (bits + 63) / 64);
+        int hashCount = (int) Math.max(1, Math.round((double) wordCount * 64 / values * Math.log(2)));
+        return new BloomFilter(new long[wordCount], hashCount);
+    }
+
+    /**
+     * Builds the filter of a column of a page.
+     *
+     * @param page              a page
+     * @param col               the ordinal of the column
+     * @param falsePositiveRate see {@link #create(int, double)}
+     * @return the filter of the column's non null values
+     */
+    static BloomFilter of(Page page, int col, double falsePositiveRate) {
+        BloomFilter filter = create(Page.maximumRowsCountInPage, falsePositiveRate);
+        ColumnVector column = page.getColumn(col);
+        if (column == null)
+            return filter;
+
+        for (int row = 0; row < page.size(); row++) {
+            if (!column.isNull(row))
+                filter.addHash(column.hashRow(row));
+        }
+        return filter;
+    }
+
+    /**
+     * @param value a non null value
+     * @return false if the value was never added to the filter
+     */
+    public boolean mightContain(Object value) {
+        return mightContainHash(value.hashCode());
+    }
+
+    /**
+     * @param valueHash the hash code of a value, as returned by
+     *                  {@link Object#hashCode()}
+     * @return false if the value was never added to the filter
+     */
+    boolean mightContainHash(int valueHash) {
+        long hash = mix(valueHash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = bitIndex(hash, i);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param valueHash the hash code of a value, as returned by
+     *                  {@link Object#hashCode()}
+     */
+    private void addHash(int valueHash) {
+        long hash = mix(valueHash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = bitIndex(hash, i);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // the i-th bit of a value, by double hashing on the two halves of its hash
+    private long bitIndex(long hash, int i) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        return ((hash1 + i * hash2) & Integer.MAX_VALUE) % ((long) words.length * 64);
+    }
+
+    // spreads the bits of a hash code, Integer hash codes are the values themselves
+    private static long mix(int valueHash) {
+        long hash = valueHash * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Writes the filters of a page.
+     *
+     * @param path    the file to write the filters to
+     * @param filters the filter of each column, null for a column without one
+     * @throws IOException if the write fails
+     */
+    static void writeAll(Path path, BloomFilter[] filters) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(filters.length);
+            for (BloomFilter filter : filters) {
+                out.writeByte(filter == null ? 0 : 1);
+                if (filter == null)
+                    continue;
+
+                out.writeInt(filter.hashCount);
+                out.writeInt(filter.words.length);
+                for (long word : filter.words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the filters of a page.
+     *
+     * @param path the file holding the filters
+     * @return the filter of each column, null for a column without one, or null
+     *         if the file does not exist
+     * @throws IOException if the read fails
+     */
+    static BloomFilter[] readAll(Path path) throws IOException {
+        if (!Files.exists(path))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            BloomFilter[] filters = new BloomFilter[in.readInt()];
+            for (int col = 0; col < filters.length; col++) {
+                if (in.readByte() == 0)
+                    continue;
+
+                int hashCount = in.readInt();
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                filters[col] = new BloomFilter(words, hashCount);
+            }
+            return filters;
+        }
+    }
+}
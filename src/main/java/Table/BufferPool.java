@@ -0,0 +1,223 @@
+package Table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The BufferPool caches decoded pages of all tables up to a memory budget.
+ * Pages are evicted with the clock algorithm; pinned pages are never evicted.
+ * Each frame keeps its position on the clock, and the positions of removed
+ * frames are reused by the next pages, so adding or removing a page takes
+ * constant time.
+ * Saving a page only marks it dirty, dirty pages are written back to disk when
+ * they are evicted or when the pool is flushed.
+ */
+public class BufferPool {
+    public static long maximumBufferPoolSize = 64L * 1024 * 1024;
+    private static BufferPool bufferPoolInstance;
+
+    private final HashMap<String, Frame> frames;
+    // frames in clock order, null at the positions of removed frames
+    private final ArrayList<Frame> clock;
+    private final ArrayList<Integer> freePositions;
+    private int clockHand;
+    private long usedSize;
+
+    /**
+     * A slot of the buffer pool holding one page.
+     */
+    private static class Frame {
+        String tableName;
+        Page page;
+        long size;
+        int pinCount;
+        boolean dirty;
+        boolean referenced;
+        int clockPosition;
+
+        Frame(String tableName, Page page) {
+            this.tableName = tableName;
+            this.page = page;
+        }
+    }
+
+    private BufferPool() {
+        this.frames = new HashMap<>();
+        this.clock = new ArrayList<>();
+        this.freePositions = new ArrayList<>();
+        this.clockHand = 0;
+        this.usedSize = 0;
+    }
+
+    public static synchronized BufferPool getInstance() {
+        // dirty pages are written by DBApp.checkpoint, which also runs at
+        // shutdown
+        if (bufferPoolInstance == null)
+            bufferPoolInstance = new BufferPool();
+
+        return bufferPoolInstance;
+    }
+
+    /**
+     * Returns a page of a table, reading it from disk only if it is not cached.
+     *
+     * @param tableName the name of the table the page belongs to
+     * @param pageNum   the page number
+     * @return the page, or null if it does not exist
+     * @throws IOException            if an I/O error occurs while reading the page
+     * @throws ClassNotFoundException if a legacy page cannot be deserialized
+     */
+    public synchronized Page fetchPage(String tableName, int pageNum) throws IOException, ClassNotFoundException {
+        Frame frame = frames.get(getKey(tableName, "page " + pageNum));
+        if (frame != null) {
+            frame.referenced = true;
+            return frame.page;
+        }
+
+        Page page = Page.loadPage(tableName, pageNum);
+        if (page == null)
+            return null;
+
+        addFrame(new Frame(tableName, page));
+        return page;
+    }
+
+    /**
+     * Marks a page as modified. The page replaces any cached copy and is written
+     * to disk when it is evicted or flushed.
+     *
+     * @param tableName the name of the table the page belongs to
+     * @param page      the modified page
+     * @throws IOException if an I/O error occurs while evicting other pages
+     */
+    public synchronized void markDirty(String tableName, Page page) throws IOException {
+        Frame frame = frames.get(getKey(tableName, page.name));
+        if (frame == null) {
+            frame = new Frame(tableName, page);
+            frame.dirty = true;
+            addFrame(frame);
+            return;
+        }
+
+        frame.page = page;
+        frame.dirty = true;
+        frame.referenced = true;
+        usedSize -= frame.size;
+        frame.size = page.estimateSize();
+        usedSize += frame.size;
+        evict();
+    }
+
+    /**
+     * Pins a cached page so it is not evicted until it is unpinned.
+     */
+    public synchronized void pinPage(String tableName, Page page) {
+        Frame frame = frames.get(getKey(tableName, page.name));
+        if (frame != null)
+            frame.pinCount++;
+    }
+
+    /**
+     * Releases a pin taken by {@link #pinPage(String, Page)}.
+     */
+    public synchronized void unpinPage(String tableName, Page page) throws IOException {
+        Frame frame = frames.get(getKey(tableName, page.name));
+        if (frame != null && frame.pinCount > 0) {
+            frame.pinCount--;
+            evict();
+        }
+    }
+
+    /**
+     * Drops a page from the pool without writing it back, used when a page is
+     * removed from its table.
+     */
+    public synchronized void discardPage(String tableName, int pageNum) {
+        Frame frame = frames.remove(getKey(tableName, "page " + pageNum));
+        if (frame != null)
+            removeFromClock(frame);
+    }
+
+    /**
+     * Writes all dirty pages of a table back to disk.
+     *
+     * @param tableName the name of the table
+     * @throws IOException if an I/O error occurs while writing a page
+     */
+    public synchronized void flush(String tableName) throws IOException {
+        for (Frame frame : frames.values()) {
+            if (frame.tableName.equals(tableName))
+                writeBack(frame);
+        }
+    }
+
+    /**
+     * Writes all dirty pages in the pool back to disk.
+     *
+     * @throws IOException if an I/O error occurs while writing a page
+     */
+    public synchronized void flushAll() throws IOException {
+        for (Frame frame : frames.values()) {
+            writeBack(frame);
+        }
+    }
+
+    private void addFrame(Frame frame) throws IOException {
+        frame.size = frame.page.estimateSize();
+        frame.referenced = true;
+        frames.put(getKey(frame.tableName, frame.page.name), frame);
+        if (freePositions.isEmpty()) {
+            frame.clockPosition = clock.size();
+            clock.add(frame);
+        } else {
+            frame.clockPosition = freePositions.remove(freePositions.size() - 1);
+            clock.set(frame.clockPosition, frame);
+        }
+        usedSize += frame.size;
+        evict();
+    }
+
+    /**
+     * Evicts unpinned pages using the clock algorithm until the pool fits in its
+     * budget. Gives up after two full sweeps if every page is pinned.
+     */
+    private void evict() throws IOException {
+        int steps = 0;
+        while (usedSize > maximumBufferPoolSize && !frames.isEmpty() && steps < 2 * clock.size()) {
+            if (clockHand >= clock.size())
+                clockHand = 0;
+
+            Frame frame = clock.get(clockHand++);
+            steps++;
+            if (frame == null || frame.pinCount > 0) {
+                continue;
+            } else if (frame.referenced) {
+                frame.referenced = false;
+            } else {
+                writeBack(frame);
+                frames.remove(getKey(frame.tableName, frame.page.name));
+                removeFromClock(frame);
+                steps = 0;
+            }
+        }
+    }
+
+    private void writeBack(Frame frame) throws IOException {
+        if (!frame.dirty)
+            return;
+
+        frame.page.writePage(frame.tableName);
+        frame.dirty = false;
+    }
+
+    private void removeFromClock(Frame frame) {
+        clock.set(frame.clockPosition, null);
+        freePositions.add(frame.clockPosition);
+        usedSize -= frame.size;
+    }
+
+    private static String getKey(String tableName, String pageName) {
+        return tableName + "\\" + pageName;
+    }
+}
@@ -0,0 +1,97 @@
+package Table;
+
+/**
+ * The rows that may match the conditions of a select query, as found by the
+ * indices. A condition no index answers may match any row. The rows are exact
+ * when they are precisely the rows matching the conditions; otherwise they may
+ * also hold rows that do not match, which the scan of their pages filters out.
+ * <p>
+ * Exactness matters for XOR: a row the index of one side keeps but the
+ * condition rejects could cancel out a matching row of the other side, so the
+ * rows of two sides are only XORed when both are exact and are ORed otherwise.
+ */
+class CandidateRows {
+    // null if any row may match
+    private final RowIdBitmap rows;
+    private final boolean exact;
+
+    private CandidateRows(RowIdBitmap rows, boolean exact) {
+        this.rows = rows;
+        this.exact = exact;
+    }
+
+    /**
+     * @return the candidates of a condition no index answers
+     */
+    static CandidateRows all() {
+        return new CandidateRows(null, false);
+    }
+
+    /**
+     * @param rows the row ids of the rows matching a condition
+     * @return the candidates of the condition
+     */
+    static CandidateRows exact(RowIdBitmap rows) {
+        return new CandidateRows(rows, true);
+    }
+
+    /**
+     * Combines the candidates of each condition, binding AND tighter than OR
+     * and OR tighter than XOR as {@link RowPredicate#compile} does.
+     *
+     * @param terms           the candidates of each condition
+     * @param strarrOperators the logical operators between the conditions
+     * @return the candidates of the query
+     */
+    static CandidateRows combine(CandidateRows[] terms, String[] strarrOperators) {
+        CandidateRows xorRows = null;
+        CandidateRows orRows = null;
+        CandidateRows andRows = null;
+        for (int i = 0; i < terms.length; i++) {
+            andRows = andRows == null ? terms[i] : andRows.and(terms[i]);
+
+            String operator = i < strarrOperators.length ? strarrOperators[i] : "XOR";
+            if (operator.equals("AND"))
+                continue;
+
+            orRows = orRows == null ? andRows : orRows.or(andRows);
+            andRows = null;
+            if (operator.equals("XOR")) {
+                xorRows = xorRows == null ? orRows : xorRows.xor(orRows);
+                orRows = null;
+            }
+        }
+        return xorRows;
+    }
+
+    /**
+     * @return the row ids of the candidates, or null if any row may match
+     */
+    RowIdBitmap getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the candidates of both conditions ANDed together
+     */
+    CandidateRows and(CandidateRows other) {
+        if (rows == null)
+            return new CandidateRows(other.rows, false);
+        if (other.rows == null)
+            return new CandidateRows(rows, false);
+        return new CandidateRows(rows.and(other.rows), exact && other.exact);
+    }
+
+    private CandidateRows or(CandidateRows other) {
+        if (rows == null || other.rows == null)
+            return all();
+        return new CandidateRows(rows.or(other.rows), exact && other.exact);
+    }
+
+    private CandidateRows xor(CandidateRows other) {
+        if (exact && other.exact)
+            return exact(rows.xor(other.rows));
+        CandidateRows union = or(other);
+        return new CandidateRows(union.rows, false);
+    }
+}
@@ -0,0 +1,80 @@
+package Table;
+
+import java.io.IOException;
+
+import Engine.Schema;
+
+/**
+ * An index on one column of a table, mapping each value of the column to the
+ * row ids of the rows holding it. Every index type answers equality lookups;
+ * see {@link #supportsRanges()} for range lookups.
+ */
+public abstract class ColumnIndex extends FileHandler {
+    private static final long serialVersionUID = 1L;
+
+    public String tableName;
+    public String colName;
+
+    /**
+     * @return the type of the index, as stored in the metadata
+     */
+    public abstract String getType();
+
+    /**
+     * @return true if the index can answer range lookups, otherwise a range
+     *         condition on the column is answered by scanning the table
+     */
+    public abstract boolean supportsRanges();
+
+    /**
+     * @param fields the fields of a row
+     * @param schema the schema of the table
+     * @return the key of the row in the index
+     */
+    public Object keyOf(Object[] fields, Schema schema) {
+        return fields[schema.getOrdinal(colName)];
+    }
+
+    /**
+     * Returns the row ids stored for a key.
+     *
+     * @param key the key to search for
+     * @return the row ids of the rows having this key, or null if none
+     */
+    public abstract RowIdList search(Object key);
+
+    /**
+     * Adds a row id to the posting list of a key, without saving the index.
+     *
+     * @param key   the value of the indexed column in the row
+     * @param rowId the row id of the row
+     */
+    public abstract void addRowId(Object key, long rowId);
+
+    /**
+     * Removes a row id from the posting list of a key, without saving the index.
+     * The key is removed from the index when its last row id is removed.
+     *
+     * @param key   the value of the indexed column in the row
+     * @param rowId the row id of the row
+     */
+    public abstract void removeRowId(Object key, long rowId);
+
+    /**
+     * Removes every key from the index, without saving the index.
+     */
+    public abstract void clear();
+
+    /**
+     * Saves the index to a file.
+     *
+     * @throws IOException if an I/O error occurs while saving the index.
+     */
+    public void saveIndex() throws IOException {
+        super.saveInstance(getIndexPath(), colName);
+    }
+
+    String getIndexPath() {
+        return "src\\main\\java\\Table\\" + this.tableName + "\\Indicies\\";
+    }
+}
@@ -0,0 +1,434 @@
+package Table;
+
+import java.util.Arrays;
+
+/**
+ * The values of one column of a page, in row order. Integer and Double columns
+ * are kept in primitive arrays, so a cell costs 4 or 8 bytes instead of a boxed
+ * object; other columns are kept in an Object array. Nulls are tracked in a
+ * separate array that is only allocated once a null is stored.
+ * The number of rows in use is tracked by the page.
+ */
+abstract class ColumnVector {
+    private boolean[] nulls;
+
+    /**
+     * Creates an empty column for values of the same type as the given value.
+     */
+    static ColumnVector forValue(Object value, int capacity) {
+        if (value instanceof Integer)
+            return new IntColumn(capacity);
+        if (value instanceof Double)
+            return new DoubleColumn(capacity);
+        return new ObjectColumn(capacity);
+    }
+
+    /**
+     * @return true if the value can be stored in this column without converting
+     *         the column
+     */
+    abstract boolean accepts(Object value);
+
+    abstract int capacity();
+
+    /**
+     * Grows the column so it can hold at least the given number of rows.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Copies a range of rows within the column, the ranges may overlap.
+     */
+    abstract void move(int from, int to, int count);
+
+    abstract Object getValue(int row);
+
+    abstract void setValue(int row, Object value);
+
+    /**
+     * Compares the value of a row to the given non null value, like
+     * {@link Comparable#compareTo(Object)}.
+     */
+    abstract int compare(int row, Object value);
+
+    /**
+     * Compares the non null values of two rows.
+     */
+    abstract int compareRows(int a, int b);
+
+    /**
+     * @return the hash code of the non null value of a row, equal to the
+     *         {@link Object#hashCode()} of the value
+     */
+    abstract int hashRow(int row);
+
+    /**
+     * @return true if the value of a row equals the given non null value, like
+     *         {@link Object#equals(Object)}
+     */
+    abstract boolean equalsValue(int row, Object value);
+
+    /**
+     * Drops the reference held by an unused row, if any.
+     */
+    void release(int row) {
+    }
+
+    /**
+     * @return the estimated heap size of the first count values in bytes
+     */
+    abstract long estimateSize(int count);
+
+    final boolean isNull(int row) {
+        return nulls != null && nulls[row];
+    }
+
+    final Object get(int row) {
+        return isNull(row) ? null : getValue(row);
+    }
+
+    final void set(int row, Object value) {
+        if (value == null) {
+            if (nulls == null)
+                nulls = new boolean[capacity()];
+            nulls[row] = true;
+        } else {
+            if (nulls != null)
+                nulls[row] = false;
+            setValue(row, value);
+        }
+    }
+
+    /**
+     * Inserts a value at a row, shifting the following rows of the first count
+     * rows down by one.
+     */
+    final void insert(int row, int count, Object value) {
+        ensureCapacity(count + 1);
+        moveRows(row, row + 1, count - row);
+        set(row, value);
+    }
+
+    /**
+     * Removes a row, shifting the following rows of the first count rows up by
+     * one.
+     */
+    final void remove(int row, int count) {
+        moveRows(row + 1, row, count - row - 1);
+        release(count - 1);
+        if (nulls != null)
+            nulls[count - 1] = false;
+    }
+
+    /**
+     * @return true if the value of a row equals the given value
+     */
+    final boolean matches(int row, Object value) {
+        if (isNull(row) || value == null)
+            return isNull(row) && value == null;
+        return equalsValue(row, value);
+    }
+
+    /**
+     * @return the row holding the smallest non null value of the first count
+     *         rows, or -1 if they are all null
+     */
+    final int minRow(int count) {
+        int minRow = -1;
+        for (int row = 0; row < count; row++) {
+            if (!isNull(row) && (minRow < 0 || compareRows(row, minRow) < 0))
+                minRow = row;
+        }
+        return minRow;
+    }
+
+    /**
+     * @return the row holding the largest non null value of the first count
+     *         rows, or -1 if they are all null
+     */
+    final int maxRow(int count) {
+        int maxRow = -1;
+        for (int row = 0; row < count; row++) {
+            if (!isNull(row) && (maxRow < 0 || compareRows(row, maxRow) > 0))
+                maxRow = row;
+        }
+        return maxRow;
+    }
+
+    /**
+     * @return the number of nulls among the first count rows
+     */
+    final int nullCount(int count) {
+        if (nulls == null)
+            return 0;
+
+        int nullCount = 0;
+        for (int row = 0; row < count; row++) {
+            if (nulls[row])
+                nullCount++;
+        }
+        return nullCount;
+    }
+
+    private void moveRows(int from, int to, int count) {
+        if (count <= 0)
+            return;
+        move(from, to, count);
+        if (nulls != null)
+            System.arraycopy(nulls, from, nulls, to, count);
+    }
+
+    /**
+     * Grows the null flags with the column. Called by the subclasses when their
+     * storage grows.
+     */
+    final void growNulls(int capacity) {
+        if (nulls != null)
+            nulls = Arrays.copyOf(nulls, capacity);
+    }
+
+    /**
+     * @return a column holding the first count values of this column in an
+     *         Object array
+     */
+    final ColumnVector toObjectColumn(int count) {
+        ObjectColumn column = new ObjectColumn(capacity());
+        for (int row = 0; row < count; row++) {
+            column.set(row, get(row));
+        }
+        return column;
+    }
+
+    static int grownCapacity(int capacity, int required) {
+        return Math.max(required, Math.max(8, capacity + (capacity >> 1)));
+    }
+
+    static final class IntColumn extends ColumnVector {
+        private int[] values;
+
+        IntColumn(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        int getInt(int row) {
+            return values[row];
+        }
+
+        void setInt(int row, int value) {
+            values[row] = value;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value == null || value instanceof Integer;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+                growNulls(values.length);
+            }
+        }
+
+        @Override
+        void move(int from, int to, int count) {
+            System.arraycopy(values, from, values, to, count);
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = (Integer) value;
+        }
+
+        @Override
+        int compare(int row, Object value) {
+            return Integer.compare(values[row], (Integer) value);
+        }
+
+        @Override
+        int compareRows(int a, int b) {
+            return Integer.compare(values[a], values[b]);
+        }
+
+        @Override
+        int hashRow(int row) {
+            return Integer.hashCode(values[row]);
+        }
+
+        @Override
+        boolean equalsValue(int row, Object value) {
+            return value instanceof Integer && values[row] == (Integer) value;
+        }
+
+        @Override
+        long estimateSize(int count) {
+            return 16 + 4L * values.length;
+        }
+    }
+
+    static final class DoubleColumn extends ColumnVector {
+        private double[] values;
+
+        DoubleColumn(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        void setDouble(int row, double value) {
+            values[row] = value;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value == null || value instanceof Double;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+                growNulls(values.length);
+            }
+        }
+
+        @Override
+        void move(int from, int to, int count) {
+            System.arraycopy(values, from, values, to, count);
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = (Double) value;
+        }
+
+        @Override
+        int compare(int row, Object value) {
+            return Double.compare(values[row], (Double) value);
+        }
+
+        @Override
+        int compareRows(int a, int b) {
+            return Double.compare(values[a], values[b]);
+        }
+
+        @Override
+        int hashRow(int row) {
+            return Double.hashCode(values[row]);
+        }
+
+        @Override
+        boolean equalsValue(int row, Object value) {
+            return value instanceof Double && Double.compare(values[row], (Double) value) == 0;
+        }
+
+        @Override
+        long estimateSize(int count) {
+            return 16 + 8L * values.length;
+        }
+    }
+
+    static final class ObjectColumn extends ColumnVector {
+        private Object[] values;
+
+        ObjectColumn(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return true;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+                growNulls(values.length);
+            }
+        }
+
+        @Override
+        void move(int from, int to, int count) {
+            System.arraycopy(values, from, values, to, count);
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        int compare(int row, Object value) {
+            return ((Comparable) values[row]).compareTo(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        int compareRows(int a, int b) {
+            return ((Comparable) values[a]).compareTo(values[b]);
+        }
+
+        @Override
+        int hashRow(int row) {
+            return values[row].hashCode();
+        }
+
+        @Override
+        boolean equalsValue(int row, Object value) {
+            return values[row].equals(value);
+        }
+
+        @Override
+        void release(int row) {
+            values[row] = null;
+        }
+
+        @Override
+        long estimateSize(int count) {
+            long size = 16 + 8L * values.length;
+            for (int row = 0; row < count; row++) {
+                Object value = values[row];
+                if (value instanceof String)
+                    size += 40 + 2L * ((String) value).length();
+                else if (value != null)
+                    size += 16;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package Table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Column-major on-disk layout of a page, used by tables created with the
+ * columnar page layout.
+ *
+ * <pre>
+ * header    : magic (int) | version (short) | reserved (short) | tupleCount (int) | fieldCount (int)
+ *             | nextSlot (int)
+ * slot dir  : tupleCount x slot (int), in clustering key order
+ * column dir: fieldCount x column offset (int), relative to the start of the file
+ * columns   : type tag (byte) | hasNulls (byte) | [tupleCount x isNull (byte)]
+ *             | [min | max] | tupleCount x value
+ * </pre>
+ *
+ * The header and the slot directory are the same as in {@link SlottedPage}.
+ * Values are 4 bytes for Integer, 8 bytes for Double, and a length-prefixed
+ * UTF-8 byte sequence for String; a null value is written as 0, or as length -1
+ * for a String. A column whose values are all null only has its type tag.
+ * <p>
+ * Reading a page decodes the header only. Each column is decoded the first
+ * time it is used, so a scan that tests one column of a wide table never
+ * decodes the others, and the stored min and max of each column give the
+ * page's {@link ZoneMap} without decoding any column.
+ */
+public class ColumnarPage {
+    static final short VERSION = 3;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+
+    // the page file, kept until every column has been decoded
+    private final ByteBuffer buffer;
+    private final int rowCount;
+    private final int[] columnOffsets;
+
+    private ColumnarPage(ByteBuffer buffer, int rowCount, int[] columnOffsets) {
+        this.buffer = buffer;
+        this.rowCount = rowCount;
+        this.columnOffsets = columnOffsets;
+    }
+
+    /**
+     * @param page a page
+     * @return true if every column of the page holds values of a single type
+     *         supported by the columnar layout
+     */
+    public static boolean canWrite(Page page) {
+        for (int col = 0; col < page.getFieldCount(); col++) {
+            if (typeOf(page, col) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the rows of a page column by column and writes them to the given
+     * file.
+     *
+     * @param path the file to write the page to
+     * @param page the page to write, see {@link #canWrite(Page)}
+     * @throws IOException if a column cannot be encoded or the write fails
+     */
+    public static void write(Path path, Page page) throws IOException {
+        int tupleCount = page.size();
+        int fieldCount = page.getFieldCount();
+
+        byte[] types = new byte[fieldCount];
+        boolean[] hasNulls = new boolean[fieldCount];
+        int[] minRows = new int[fieldCount];
+        int[] maxRows = new int[fieldCount];
+        byte[][][] encodedStrings = new byte[fieldCount][][];
+
+        int size = SlottedPage.HEADER_SIZE + 4 * tupleCount + 4 * fieldCount;
+        for (int col = 0; col < fieldCount; col++) {
+            types[col] = typeOf(page, col);
+            if (types[col] < 0)
+                throw new IOException("Column " + col + " of " + page.name + " has values of several types");
+
+            size += 2;
+            if (types[col] == TYPE_NULL)
+                continue;
+
+            ColumnVector column = page.getColumn(col);
+            minRows[col] = column.minRow(tupleCount);
+            if (minRows[col] < 0) {
+                // every value is null
+                types[col] = TYPE_NULL;
+                continue;
+            }
+            maxRows[col] = column.maxRow(tupleCount);
+            hasNulls[col] = column.nullCount(tupleCount) > 0;
+            if (hasNulls[col])
+                size += tupleCount;
+
+            if (types[col] == TYPE_STRING) {
+                encodedStrings[col] = new byte[tupleCount][];
+                for (int row = 0; row < tupleCount; row++) {
+                    if (!column.isNull(row))
+                        encodedStrings[col][row] = ((String) column.get(row)).getBytes(StandardCharsets.UTF_8);
+                    size += 4 + (column.isNull(row) ? 0 : encodedStrings[col][row].length);
+                }
+                size += 8 + encodedStrings[col][minRows[col]].length + encodedStrings[col][maxRows[col]].length;
+            } else {
+                int width = types[col] == TYPE_INTEGER ? 4 : 8;
+                size += width * (tupleCount + 2);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(SlottedPage.MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(tupleCount);
+        buffer.putInt(fieldCount);
+        buffer.putInt(page.getNextSlot());
+
+        for (int row = 0; row < tupleCount; row++) {
+            buffer.putInt(page.getSlot(row));
+        }
+        int columnDirectory = buffer.position();
+        buffer.position(columnDirectory + 4 * fieldCount);
+
+        for (int col = 0; col < fieldCount; col++) {
+            buffer.putInt(columnDirectory + 4 * col, buffer.position());
+            buffer.put(types[col]);
+            buffer.put((byte) (hasNulls[col] ? 1 : 0));
+            if (types[col] == TYPE_NULL)
+                continue;
+
+            ColumnVector column = page.getColumn(col);
+            if (hasNulls[col]) {
+                for (int row = 0; row < tupleCount; row++) {
+                    buffer.put((byte) (column.isNull(row) ? 1 : 0));
+                }
+            }
+
+            switch (types[col]) {
+                case TYPE_INTEGER:
+                    ColumnVector.IntColumn ints = (ColumnVector.IntColumn) column;
+                    buffer.putInt(ints.getInt(minRows[col]));
+                    buffer.putInt(ints.getInt(maxRows[col]));
+                    for (int row = 0; row < tupleCount; row++) {
+                        buffer.putInt(ints.isNull(row) ? 0 : ints.getInt(row));
+                    }
+                    break;
+                case TYPE_DOUBLE:
+                    ColumnVector.DoubleColumn doubles = (ColumnVector.DoubleColumn) column;
+                    buffer.putDouble(doubles.getDouble(minRows[col]));
+                    buffer.putDouble(doubles.getDouble(maxRows[col]));
+                    for (int row = 0; row < tupleCount; row++) {
+                        buffer.putDouble(doubles.isNull(row) ? 0 : doubles.getDouble(row));
+                    }
+                    break;
+                default:
+                    byte[][] strings = encodedStrings[col];
+                    putString(buffer, strings[minRows[col]]);
+                    putString(buffer, strings[maxRows[col]]);
+                    for (int row = 0; row < tupleCount; row++) {
+                        putString(buffer, strings[row]);
+                    }
+            }
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a columnar page file. The columns are decoded later,
+     * when the page first uses them.
+     *
+     * @param buffer the page file, positioned after the version
+     * @param name   the name of the page
+     * @return the page stored in the file
+     * @throws IOException if the file is not a valid columnar page file
+     */
+    static Page read(ByteBuffer buffer, String name) throws IOException {
+        buffer.getShort();
+        int tupleCount = buffer.getInt();
+        int fieldCount = buffer.getInt();
+        int nextSlot = buffer.getInt();
+
+        int[] slots = new int[tupleCount];
+        for (int row = 0; row < tupleCount; row++) {
+            slots[row] = buffer.getInt();
+        }
+
+        int[] columnOffsets = new int[fieldCount];
+        Object[] minValues = new Object[fieldCount];
+        Object[] maxValues = new Object[fieldCount];
+        int[] nullCounts = new int[fieldCount];
+        for (int col = 0; col < fieldCount; col++) {
+            columnOffsets[col] = buffer.getInt();
+        }
+        for (int col = 0; col < fieldCount; col++) {
+            ByteBuffer column = buffer.duplicate();
+            column.position(columnOffsets[col]);
+            byte type = column.get();
+            if (type == TYPE_NULL) {
+                nullCounts[col] = tupleCount;
+                continue;
+            }
+            if (column.get() == 1) {
+                for (int row = 0; row < tupleCount; row++) {
+                    if (column.get() == 1)
+                        nullCounts[col]++;
+                }
+            }
+            minValues[col] = readValue(column, type);
+            maxValues[col] = readValue(column, type);
+        }
+
+        Page page = new Page(name);
+        page.setNextSlot(nextSlot);
+        page.setColumnar(true);
+        page.load(new ColumnarPage(buffer, tupleCount, columnOffsets), slots, fieldCount,
+                new ZoneMap(tupleCount, minValues, maxValues, nullCounts));
+        return page;
+    }
+
+    /**
+     * @return the size of the page file in bytes
+     */
+    int size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Decodes a column of the page file.
+     *
+     * @param col      the ordinal of the column
+     * @param capacity the number of rows the column must be able to hold
+     * @return the values of the column, or null if they are all null
+     */
+    ColumnVector decodeColumn(int col, int capacity) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        in.position(columnOffsets[col]);
+        byte type = in.get();
+        if (type == TYPE_NULL)
+            return null;
+
+        boolean[] nulls = null;
+        if (in.get() == 1) {
+            nulls = new boolean[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                nulls[row] = in.get() == 1;
+            }
+        }
+        readValue(in, type);
+        readValue(in, type);
+
+        ColumnVector column;
+        switch (type) {
+            case TYPE_INTEGER:
+                ColumnVector.IntColumn ints = new ColumnVector.IntColumn(capacity);
+                for (int row = 0; row < rowCount; row++) {
+                    ints.setInt(row, in.getInt());
+                }
+                column = ints;
+                break;
+            case TYPE_DOUBLE:
+                ColumnVector.DoubleColumn doubles = new ColumnVector.DoubleColumn(capacity);
+                for (int row = 0; row < rowCount; row++) {
+                    doubles.setDouble(row, in.getDouble());
+                }
+                column = doubles;
+                break;
+            case TYPE_STRING:
+                column = new ColumnVector.ObjectColumn(capacity);
+                for (int row = 0; row < rowCount; row++) {
+                    column.set(row, readValue(in, type));
+                }
+                break;
+            default:
+                throw new IOException("Unknown column type tag " + type);
+        }
+
+        if (nulls != null) {
+            for (int row = 0; row < rowCount; row++) {
+                if (nulls[row])
+                    column.set(row, null);
+            }
+        }
+        return column;
+    }
+
+    /**
+     * @return the type tag of a column of the page, or -1 if its values have
+     *         several types
+     */
+    private static byte typeOf(Page page, int col) {
+        ColumnVector column = page.getColumn(col);
+        if (column == null)
+            return TYPE_NULL;
+        if (column instanceof ColumnVector.IntColumn)
+            return TYPE_INTEGER;
+        if (column instanceof ColumnVector.DoubleColumn)
+            return TYPE_DOUBLE;
+
+        for (int row = 0; row < page.size(); row++) {
+            if (!column.isNull(row) && !(column.get(row) instanceof String))
+                return -1;
+        }
+        return TYPE_STRING;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] encodedString) {
+        if (encodedString == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(encodedString.length);
+            buffer.put(encodedString);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer, byte type) {
+        switch (type) {
+            case TYPE_INTEGER:
+                return buffer.getInt();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            default:
+                int length = buffer.getInt();
+                if (length < 0)
+                    return null;
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
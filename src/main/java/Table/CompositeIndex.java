@@ -0,0 +1,247 @@
+package Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import Engine.SQLTerm;
+import Engine.Schema;
+import Table.BTree.BTree;
+import Table.BTree.RangeCursor;
+
+/**
+ * B+ tree index on an ordered list of columns. Its keys are the
+ * {@link CompositeKey}s of the rows, so the rows with equal values in the first
+ * columns, and a range of values in the next one, are one run of the leaves.
+ * <p>
+ * An index may also include payload columns, stored after the key columns in
+ * each key but never searched on. A query reading only columns of an index is
+ * answered from its leaves without loading any page, see
+ * {@link IndexOnlyIterator}.
+ * <p>
+ * The index is saved under the names of its columns joined by commas, which
+ * no column name contains, and is kept in the indices of the table under that
+ * name.
+ */
+public class CompositeIndex extends BPlusTreeIndex<CompositeKey> {
+    private static final long serialVersionUID = 1L;
+
+    // the indexed columns, in key order, followed by the included columns
+    public String[] colNames;
+
+    // number of included columns at the end of colNames
+    public int includedCount;
+
+    // the name the index was created with
+    public String indexName;
+
+    /**
+     * Creates a composite index and fills it with the rows of the table.
+     *
+     * @param table            the table to index
+     * @param schema           the schema of the table
+     * @param keyColNames      the indexed columns, in key order
+     * @param includedColNames the columns carried by the index for index-only
+     *                         scans
+     * @param indexName        the name of the index
+     */
+    public CompositeIndex(Table table, Schema schema, String[] keyColNames, String[] includedColNames,
+            String indexName) throws IOException, ClassNotFoundException {
+        this.colNames = Arrays.copyOf(keyColNames, keyColNames.length + includedColNames.length);
+        System.arraycopy(includedColNames, 0, this.colNames, keyColNames.length, includedColNames.length);
+        this.tableName = table.name;
+        this.colName = keyName(colNames);
+        this.includedCount = includedColNames.length;
+        this.indexName = indexName;
+
+        int[] colIdx = new int[colNames.length];
+        String[] colTypes = new String[colNames.length];
+        for (int i = 0; i < colNames.length; i++) {
+            colIdx[i] = schema.getOrdinal(colNames[i]);
+            colTypes[i] = schema.getColType(colIdx[i]);
+        }
+        this.tree = new BTree<>(BTree.defaultOrder, CompositeKey.class, getNodePath(),
+                new IndexEntryCodec<CompositeKey>(colTypes));
+        fillTree(table, colIdx, colTypes);
+        saveNewIndex();
+    }
+
+    /**
+     * @param colNames the indexed columns, in key order, followed by the
+     *                 included columns
+     * @return the name the index is saved and kept under
+     */
+    public static String keyName(String[] colNames) {
+        return String.join(",", colNames);
+    }
+
+    private void fillTree(Table table, int[] colIdx, String[] colTypes) throws IOException, ClassNotFoundException {
+        // a little more per pair than a single column index
+        int runSize = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(1024, BufferPool.maximumBufferPoolSize / (64 + 32 * colNames.length)));
+        IndexEntrySorter<CompositeKey> sorter = new IndexEntrySorter<>(colTypes, new File(getIndexPath()), runSize);
+        try {
+            for (int pageNum : table.pageNums) {
+                Page currPage = table.loadPage(pageNum);
+                for (int row = 0; row < currPage.size(); row++) {
+                    Object[] values = new Object[colNames.length];
+                    for (int i = 0; i < colNames.length; i++) {
+                        values[i] = currPage.getField(row, colIdx[i]);
+                    }
+                    sorter.add(CompositeKey.of(values), RowIdList.rowId(pageNum, currPage.getSlot(row)));
+                }
+            }
+
+            tree.bulkLoad(sorter.sortedPostings());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            sorter.close();
+        }
+    }
+
+    @Override
+    public Object keyOf(Object[] fields, Schema schema) {
+        Object[] values = new Object[colNames.length];
+        for (int i = 0; i < colNames.length; i++) {
+            values[i] = fields[schema.getOrdinal(colNames[i])];
+        }
+        return CompositeKey.of(values);
+    }
+
+    /**
+     * Returns a cursor over the posting lists of the index in key order, whose
+     * keys are read with {@link RangeCursor#getKey()} and {@link #fieldsOf}.
+     *
+     * @param match the range of keys to read, or null to read all keys
+     * @return the cursor
+     */
+    RangeCursor<CompositeKey, RowIdList> scan(Match match) {
+        if (match == null)
+            return tree.range(null, false, null, false);
+        return tree.range(match.low, false, match.high, false);
+    }
+
+    /**
+     * @param key    a key of the index
+     * @param schema the schema of the table
+     * @return the fields the rows of the key share: those of the indexed and
+     *         included columns, the others are null
+     */
+    Object[] fieldsOf(CompositeKey key, Schema schema) {
+        Object[] fields = new Object[schema.getColumnCount()];
+        for (int i = 0; i < colNames.length; i++) {
+            fields[schema.getOrdinal(colNames[i])] = key.get(i);
+        }
+        return fields;
+    }
+
+    /**
+     * Matches conditions ANDed together with the columns of the index:
+     * equalities on the leading columns, then comparisons of the next column.
+     * The conditions must already be validated, see {@link RowPredicate#compile}.
+     *
+     * @param arrSQLTerms the conditions of a query
+     * @return the match, or null if no condition constrains the first column
+     */
+    Match match(SQLTerm[] arrSQLTerms) {
+        boolean[] usedTerms = new boolean[arrSQLTerms.length];
+        Object[] prefix = new Object[colNames.length];
+        int equalities = 0;
+        int keyColCount = colNames.length - includedCount;
+        while (equalities < keyColCount) {
+            int term = findTerm(arrSQLTerms, colNames[equalities], "=");
+            if (term < 0)
+                break;
+            prefix[equalities++] = arrSQLTerms[term]._objValue;
+            usedTerms[term] = true;
+        }
+
+        CompositeKey low = CompositeKey.lowerBound(Arrays.copyOf(prefix, equalities));
+        CompositeKey high = CompositeKey.upperBound(Arrays.copyOf(prefix, equalities));
+        boolean ranged = false;
+        for (int term = 0; equalities < keyColCount && term < arrSQLTerms.length; term++) {
+            if (!arrSQLTerms[term]._strColumnName.equals(colNames[equalities]))
+                continue;
+
+            Object[] bound = Arrays.copyOf(prefix, equalities + 1);
+            bound[equalities] = arrSQLTerms[term]._objValue;
+            CompositeKey key;
+            switch (arrSQLTerms[term]._strOperator) {
+                case ">":
+                    key = CompositeKey.upperBound(bound);
+                    break;
+                case ">=":
+                case "<":
+                    key = CompositeKey.lowerBound(bound);
+                    break;
+                case "<=":
+                    key = CompositeKey.upperBound(bound);
+                    break;
+                default:
+                    continue;
+            }
+
+            if (arrSQLTerms[term]._strOperator.startsWith(">")) {
+                if (key.compareTo(low) > 0)
+                    low = key;
+            } else if (key.compareTo(high) < 0) {
+                high = key;
+            }
+            usedTerms[term] = true;
+            ranged = true;
+        }
+
+        if (equalities == 0 && !ranged)
+            return null;
+        return new Match(this, usedTerms, 2 * equalities + (ranged ? 1 : 0), low, high);
+    }
+
+    private static int findTerm(SQLTerm[] arrSQLTerms, String colName, String operator) {
+        for (int term = 0; term < arrSQLTerms.length; term++) {
+            if (arrSQLTerms[term]._strColumnName.equals(colName) && arrSQLTerms[term]._strOperator.equals(operator))
+                return term;
+        }
+        return -1;
+    }
+
+    /**
+     * The conditions of a query a composite index answers, and the range of
+     * keys of the rows satisfying them.
+     */
+    static final class Match {
+        final CompositeIndex index;
+
+        // whether each condition of the query is answered by the index
+        final boolean[] usedTerms;
+
+        // how much of the key the conditions fix, two points per equality and
+        // one for a range
+        final int score;
+
+        // bounds, never equal to the key of a row
+        private final CompositeKey low;
+        private final CompositeKey high;
+
+        private Match(CompositeIndex index, boolean[] usedTerms, int score, CompositeKey low, CompositeKey high) {
+            this.index = index;
+            this.usedTerms = usedTerms;
+            this.score = score;
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * @return the row ids of the rows satisfying the matched conditions
+         */
+        RowIdBitmap search() {
+            RowIdBitmap rowIds = new RowIdBitmap();
+            RangeCursor<CompositeKey, RowIdList> postings = index.scan(this);
+            while (postings.hasNext()) {
+                rowIds.addAll(postings.next());
+            }
+            return rowIds;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package Table;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The key of a composite index: the values of the indexed columns of a row, in
+ * the order of the columns. Keys compare lexicographically, on the first column,
+ * then on the second among equal first values, and so on.
+ * <p>
+ * A key may also be a bound holding the values of only the first columns. A
+ * lower bound sorts before, and an upper bound after, every key starting with
+ * these values, so the keys starting with a prefix, or with a prefix followed
+ * by a range of the next column, lie between two bounds.
+ * <p>
+ * Integer, Double and String values are written as primitives when the key is
+ * serialized, which keeps the index files small and quick to read.
+ */
+public final class CompositeKey implements Comparable<CompositeKey>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte VALUE_INTEGER = 0;
+    private static final byte VALUE_DOUBLE = 1;
+    private static final byte VALUE_STRING = 2;
+    private static final byte VALUE_OBJECT = 3;
+
+    // written by writeObject
+    private transient Object[] values;
+
+    // -1 for a lower bound, 1 for an upper bound, 0 for the key of a row
+    private transient int bound;
+
+    private CompositeKey(Object[] values, int bound) {
+        this.values = values;
+        this.bound = bound;
+    }
+
+    /**
+     * @param values the values of the indexed columns of a row
+     * @return the key of the row
+     */
+    public static CompositeKey of(Object... values) {
+        return new CompositeKey(values, 0);
+    }
+
+    /**
+     * @param prefix the values of the first indexed columns
+     * @return a key below every key starting with the prefix
+     */
+    public static CompositeKey lowerBound(Object... prefix) {
+        return new CompositeKey(prefix, -1);
+    }
+
+    /**
+     * @param prefix the values of the first indexed columns
+     * @return a key above every key starting with the prefix
+     */
+    public static CompositeKey upperBound(Object... prefix) {
+        return new CompositeKey(prefix, 1);
+    }
+
+    /**
+     * @return the number of values in the key
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param i the position of a column in the index
+     * @return the value of the column
+     */
+    public Object get(int i) {
+        return values[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(CompositeKey other) {
+        int common = Math.min(values.length, other.values.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = ((Comparable) values[i]).compareTo(other.values[i]);
+            if (comparison != 0)
+                return comparison;
+        }
+
+        // a bound on a shorter prefix sorts around all keys extending it
+        if (values.length < other.values.length)
+            return bound == 0 ? -1 : bound;
+        if (values.length > other.values.length)
+            return other.bound == 0 ? 1 : -other.bound;
+        return Integer.compare(bound, other.bound);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CompositeKey))
+            return false;
+        CompositeKey other = (CompositeKey) obj;
+        return bound == other.bound && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(values) + bound;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeByte(bound);
+        out.writeByte(values.length);
+        for (Object value : values) {
+            if (value instanceof Integer) {
+                out.writeByte(VALUE_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Double) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                out.writeByte(VALUE_STRING);
+                out.writeUTF((String) value);
+            } else {
+                out.writeByte(VALUE_OBJECT);
+                out.writeObject(value);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        bound = in.readByte();
+        values = new Object[in.readUnsignedByte()];
+        for (int i = 0; i < values.length; i++) {
+            switch (in.readByte()) {
+                case VALUE_INTEGER:
+                    values[i] = in.readInt();
+                    break;
+                case VALUE_DOUBLE:
+                    values[i] = in.readDouble();
+                    break;
+                case VALUE_STRING:
+                    values[i] = in.readUTF();
+                    break;
+                default:
+                    values[i] = in.readObject();
+                    break;
+            }
+        }
+    }
+}
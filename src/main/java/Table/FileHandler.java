@@ -7,6 +7,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 public class FileHandler implements Serializable {
     public void saveInstance(String path, String fileName) throws IOException {
@@ -18,13 +23,22 @@ public class FileHandler implements Serializable {
         }
 
         path += fileName + ".class";
+        Path target = Paths.get(path);
+        Path tmp = Paths.get(path + ".tmp");
 
-        // Open streams for writing
-        try (FileOutputStream fileOut = new FileOutputStream(path);
+        // Write to a temporary file first, so a crash never leaves the saved
+        // object half written
+        try (FileOutputStream fileOut = new FileOutputStream(tmp.toFile());
                 ObjectOutputStream out = new ObjectOutputStream(fileOut)) {
             // Write object and close streams
             out.writeObject(this);
         }
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     public Object loadInstance(String path, String fileName) throws IOException, ClassNotFoundException {
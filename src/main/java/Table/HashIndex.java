@@ -0,0 +1,278 @@
+package Table;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import Engine.Metadata;
+
+/**
+ * Hash index on a column, for equality lookups in constant time.
+ * Keys are spread over buckets by linear hashing: when the average number of
+ * keys per bucket passes a bound, the bucket at the split pointer is split in
+ * two and the pointer moves on, so the table grows one bucket at a time and
+ * never rehashes all keys at once. A lookup hashes the key and scans one
+ * bucket. Range conditions on the column are not answered by the index.
+ * <p>
+ * Only the entries are saved, each as its key followed by its row ids, with
+ * Integer and Double keys written as primitives; the buckets are rebuilt when
+ * the index is read.
+ */
+public class HashIndex extends ColumnIndex {
+    private static final long serialVersionUID = 1L;
+
+    public static final String TYPE = "Hash";
+
+    private static final int INITIAL_BUCKET_COUNT = 16;
+
+    // average number of keys per bucket above which a bucket is split
+    private static final int MAX_LOAD = 4;
+
+    private static final byte KEY_INTEGER = 0;
+    private static final byte KEY_DOUBLE = 1;
+    private static final byte KEY_STRING = 2;
+    private static final byte KEY_OBJECT = 3;
+
+    // rebuilt from the entries when the index is read, see writeObject
+    private transient ArrayList<Bucket> buckets;
+
+    // number of times the bucket count doubled since the index was created
+    private int level;
+
+    // next bucket to split in this round
+    private int splitPointer;
+
+    private int keyCount;
+
+    /**
+     * Creates a hash index on a column and fills it with the rows of the table.
+     *
+     * @param table   the table to index
+     * @param colName the name of the indexed column
+     */
+    public HashIndex(Table table, String colName) throws IOException, ClassNotFoundException {
+        this.tableName = table.name;
+        this.colName = colName;
+        clear();
+        fillIndex(table);
+        saveIndex();
+    }
+
+    private void fillIndex(Table table) throws IOException, ClassNotFoundException {
+        int colIdx = Metadata.getInstance().getSchema(tableName).getOrdinal(colName);
+        for (int pageNum : table.pageNums) {
+            Page currPage = table.loadPage(pageNum);
+            for (int row = 0; row < currPage.size(); row++) {
+                addRowId(currPage.getField(row, colIdx), RowIdList.rowId(pageNum, currPage.getSlot(row)));
+            }
+        }
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public boolean supportsRanges() {
+        return false;
+    }
+
+    @Override
+    public RowIdList search(Object key) {
+        Bucket bucket = buckets.get(bucketOf(key));
+        int entry = bucket.find(key);
+        return entry < 0 ? null : bucket.rowIds[entry];
+    }
+
+    @Override
+    public void addRowId(Object key, long rowId) {
+        Bucket bucket = buckets.get(bucketOf(key));
+        int entry = bucket.find(key);
+        if (entry < 0) {
+            entry = bucket.add(key, new RowIdList());
+            keyCount++;
+        }
+        bucket.rowIds[entry].add(rowId);
+
+        if (keyCount > MAX_LOAD * buckets.size())
+            splitBucket();
+    }
+
+    @Override
+    public void removeRowId(Object key, long rowId) {
+        Bucket bucket = buckets.get(bucketOf(key));
+        int entry = bucket.find(key);
+        if (entry < 0 || !bucket.rowIds[entry].remove(rowId))
+            return;
+
+        if (bucket.rowIds[entry].isEmpty()) {
+            bucket.remove(entry);
+            keyCount--;
+        }
+    }
+
+    @Override
+    public void clear() {
+        buckets = new ArrayList<>();
+        for (int i = 0; i < INITIAL_BUCKET_COUNT; i++) {
+            buckets.add(new Bucket());
+        }
+        level = 0;
+        splitPointer = 0;
+        keyCount = 0;
+    }
+
+    /**
+     * @return the number of distinct keys in the index
+     */
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * @return the number of buckets the keys are spread over
+     */
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & Integer.MAX_VALUE;
+    }
+
+    private int bucketOf(Object key) {
+        int hash = hash(key);
+        int roundSize = INITIAL_BUCKET_COUNT << level;
+        int bucket = hash & (roundSize - 1);
+        // buckets before the split pointer were already split in this round
+        if (bucket < splitPointer)
+            bucket = hash & (2 * roundSize - 1);
+        return bucket;
+    }
+
+    /**
+     * Splits the bucket at the split pointer, moving the keys whose next hash
+     * bit is set to a new bucket at the end.
+     */
+    private void splitBucket() {
+        int roundSize = INITIAL_BUCKET_COUNT << level;
+        Bucket bucket = buckets.get(splitPointer);
+        Bucket newBucket = new Bucket();
+        buckets.add(newBucket);
+
+        int entry = 0;
+        while (entry < bucket.size) {
+            if ((hash(bucket.keys[entry]) & roundSize) != 0) {
+                newBucket.add(bucket.keys[entry], bucket.rowIds[entry]);
+                bucket.remove(entry);
+            } else {
+                entry++;
+            }
+        }
+
+        splitPointer++;
+        if (splitPointer == roundSize) {
+            level++;
+            splitPointer = 0;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (Bucket bucket : buckets) {
+            for (int entry = 0; entry < bucket.size; entry++) {
+                writeKey(out, bucket.keys[entry]);
+                RowIdList rowIds = bucket.rowIds[entry];
+                out.writeInt(rowIds.size());
+                for (int i = 0; i < rowIds.size(); i++) {
+                    out.writeLong(rowIds.get(i));
+                }
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int bucketCount = (INITIAL_BUCKET_COUNT << level) + splitPointer;
+        buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new Bucket());
+        }
+
+        for (int key = 0; key < keyCount; key++) {
+            Object value = readKey(in);
+            RowIdList rowIds = new RowIdList();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                rowIds.add(in.readLong());
+            }
+            buckets.get(bucketOf(value)).add(value, rowIds);
+        }
+    }
+
+    private static void writeKey(ObjectOutputStream out, Object key) throws IOException {
+        if (key instanceof Integer) {
+            out.writeByte(KEY_INTEGER);
+            out.writeInt((Integer) key);
+        } else if (key instanceof Double) {
+            out.writeByte(KEY_DOUBLE);
+            out.writeDouble((Double) key);
+        } else if (key instanceof String) {
+            out.writeByte(KEY_STRING);
+            out.writeUTF((String) key);
+        } else {
+            out.writeByte(KEY_OBJECT);
+            out.writeObject(key);
+        }
+    }
+
+    private static Object readKey(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        switch (in.readByte()) {
+            case KEY_INTEGER:
+                return in.readInt();
+            case KEY_DOUBLE:
+                return in.readDouble();
+            case KEY_STRING:
+                return in.readUTF();
+            default:
+                return in.readObject();
+        }
+    }
+
+    private static final class Bucket {
+        private Object[] keys = new Object[MAX_LOAD];
+        private RowIdList[] rowIds = new RowIdList[MAX_LOAD];
+        private int size;
+
+        int find(Object key) {
+            for (int entry = 0; entry < size; entry++) {
+                if (keys[entry].equals(key))
+                    return entry;
+            }
+            return -1;
+        }
+
+        int add(Object key, RowIdList keyRowIds) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                rowIds = Arrays.copyOf(rowIds, size * 2);
+            }
+            keys[size] = key;
+            rowIds[size] = keyRowIds;
+            return size++;
+        }
+
+        // moves the last entry into the removed one
+        void remove(int entry) {
+            size--;
+            keys[entry] = keys[size];
+            rowIds[entry] = rowIds[size];
+            keys[size] = null;
+            rowIds[size] = null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package Table;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import Table.BTree.NodeCodec;
+
+/**
+ * Writes the keys and posting lists of a B+ tree index to its node file, and
+ * the keys of the pairs an {@link IndexEntrySorter} spills to disk. Integer and
+ * Double values are written as primitives and strings as their UTF-8 bytes; a
+ * {@link CompositeKey} is written as the values of its columns in order.
+ *
+ * @param <TKey> the type of the keys, that of the column or CompositeKey
+ */
+public class IndexEntryCodec<TKey extends Comparable<TKey>> implements NodeCodec<TKey, RowIdList> {
+    private static final long serialVersionUID = 1L;
+
+    // type of each column of the keys
+    private final String[] colTypes;
+    private final boolean composite;
+
+    /**
+     * @param colType the type of the keys
+     */
+    public IndexEntryCodec(String colType) {
+        this.colTypes = new String[] { colType };
+        this.composite = false;
+    }
+
+    /**
+     * Creates a codec of the {@link CompositeKey}s of a composite index.
+     *
+     * @param colTypes the type of each indexed column, in index order
+     */
+    public IndexEntryCodec(String[] colTypes) {
+        this.colTypes = colTypes;
+        this.composite = true;
+    }
+
+    @Override
+    public void writeKey(DataOutput out, TKey key) throws IOException {
+        if (!composite) {
+            writeColumn(out, colTypes[0], key);
+            return;
+        }
+
+        CompositeKey compositeKey = (CompositeKey) key;
+        for (int i = 0; i < colTypes.length; i++) {
+            writeColumn(out, colTypes[i], compositeKey.get(i));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public TKey readKey(DataInput in) throws IOException {
+        if (!composite)
+            return (TKey) readColumn(in, colTypes[0]);
+
+        Object[] values = new Object[colTypes.length];
+        for (int i = 0; i < colTypes.length; i++) {
+            values[i] = readColumn(in, colTypes[i]);
+        }
+        return (TKey) CompositeKey.of(values);
+    }
+
+    @Override
+    public void writeValue(DataOutput out, RowIdList rowIds) throws IOException {
+        out.writeInt(rowIds.size());
+        for (int i = 0; i < rowIds.size(); i++) {
+            out.writeLong(rowIds.get(i));
+        }
+    }
+
+    @Override
+    public RowIdList readValue(DataInput in) throws IOException {
+        RowIdList rowIds = new RowIdList();
+        for (int size = in.readInt(); size > 0; size--) {
+            rowIds.add(in.readLong());
+        }
+        return rowIds;
+    }
+
+    private static void writeColumn(DataOutput out, String colType, Object value) throws IOException {
+        switch (colType) {
+            case "java.lang.Integer":
+                out.writeInt((Integer) value);
+                break;
+            case "java.lang.Double":
+                out.writeDouble((Double) value);
+                break;
+            case "java.lang.String":
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            default:
+                throw new IOException("Unsupported column type " + colType);
+        }
+    }
+
+    private static Object readColumn(DataInput in, String colType) throws IOException {
+        switch (colType) {
+            case "java.lang.Integer":
+                return in.readInt();
+            case "java.lang.Double":
+                return in.readDouble();
+            default:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package Table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the (key, row id) pairs of a column when an index is built.
+ * Pairs are sorted in memory in runs of a bounded size. When a run fills up it
+ * is sorted and spilled to a temporary file, and the runs are merged when the
+ * sorted pairs are read back. Pairs with equal keys keep the order they were
+ * added in. The keys of a composite index are sorted on all their columns.
+ *
+ * @param <TKey> the type of the keys
+ */
+public class IndexEntrySorter<TKey extends Comparable<TKey>> {
+    // writes the keys of the spilled pairs
+    private final IndexEntryCodec<TKey> codec;
+    private final File spillDirectory;
+    private final int runSize;
+
+    private Entry<TKey>[] run;
+    private int count;
+    private final ArrayList<File> runFiles;
+
+    private static class Entry<TKey extends Comparable<TKey>> implements Comparable<Entry<TKey>> {
+        final TKey key;
+        final long rowId;
+
+        Entry(TKey key, long rowId) {
+            this.key = key;
+            this.rowId = rowId;
+        }
+
+        @Override
+        public int compareTo(Entry<TKey> other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * @param colType        the type of the keys
+     * @param spillDirectory the directory for the temporary run files
+     * @param runSize        the maximum number of pairs sorted in memory at once
+     */
+    public IndexEntrySorter(String colType, File spillDirectory, int runSize) {
+        this(new IndexEntryCodec<TKey>(colType), spillDirectory, runSize);
+    }
+
+    /**
+     * Creates a sorter of the {@link CompositeKey}s of a composite index.
+     *
+     * @param colTypes       the type of each indexed column, in index order
+     * @param spillDirectory the directory for the temporary run files
+     * @param runSize        the maximum number of pairs sorted in memory at once
+     */
+    public IndexEntrySorter(String[] colTypes, File spillDirectory, int runSize) {
+        this(new IndexEntryCodec<TKey>(colTypes), spillDirectory, runSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private IndexEntrySorter(IndexEntryCodec<TKey> codec, File spillDirectory, int runSize) {
+        this.codec = codec;
+        this.spillDirectory = spillDirectory;
+        this.runSize = Math.max(2, runSize);
+        this.run = (Entry<TKey>[]) new Entry<?>[Math.min(this.runSize, 1024)];
+        this.count = 0;
+        this.runFiles = new ArrayList<>();
+    }
+
+    /**
+     * Adds a pair to be sorted.
+     *
+     * @param key   the value of the indexed column in the row
+     * @param rowId the row id of the row
+     * @throws IOException if a full run cannot be spilled
+     */
+    public void add(TKey key, long rowId) throws IOException {
+        if (count == runSize) {
+            spillRun();
+        } else if (count == run.length) {
+            run = Arrays.copyOf(run, (int) Math.min(runSize, 2L * run.length));
+        }
+        run[count++] = new Entry<>(key, rowId);
+    }
+
+    /**
+     * Returns the sorted pairs grouped by key, each key with the posting list of
+     * its row ids. The run files are read lazily, so an I/O error while
+     * iterating is thrown as an {@link UncheckedIOException}.
+     *
+     * @return the distinct keys in ascending order with their row ids
+     * @throws IOException if the last run cannot be spilled or the run files
+     *                     cannot be opened
+     */
+    public Iterator<Map.Entry<TKey, RowIdList>> sortedPostings() throws IOException {
+        PairSource<TKey> source;
+        if (runFiles.isEmpty()) {
+            Arrays.sort(run, 0, count);
+            source = new MemorySource<>(run, count);
+        } else {
+            if (count > 0)
+                spillRun();
+            source = new MergeSource();
+        }
+
+        return new PostingIterator<>(source);
+    }
+
+    /**
+     * Deletes the temporary run files.
+     */
+    public void close() {
+        for (File runFile : runFiles) {
+            runFile.delete();
+        }
+        runFiles.clear();
+        run = null;
+    }
+
+    private void spillRun() throws IOException {
+        Arrays.sort(run, 0, count);
+
+        if (!spillDirectory.exists())
+            spillDirectory.mkdirs();
+        File runFile = File.createTempFile("sort", ".run", spillDirectory);
+        runFile.deleteOnExit();
+        runFiles.add(runFile);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(runFile)))) {
+            for (int i = 0; i < count; i++) {
+                codec.writeKey(out, run[i].key);
+                out.writeLong(run[i].rowId);
+                run[i] = null;
+            }
+        }
+        count = 0;
+    }
+
+    /**
+     * A sorted stream of pairs.
+     */
+    private interface PairSource<TKey extends Comparable<TKey>> {
+        /**
+         * @return the next pair, or null at the end of the stream
+         */
+        Entry<TKey> next() throws IOException;
+    }
+
+    private static class MemorySource<TKey extends Comparable<TKey>> implements PairSource<TKey> {
+        private final Entry<TKey>[] entries;
+        private final int count;
+        private int pos;
+
+        MemorySource(Entry<TKey>[] entries, int count) {
+            this.entries = entries;
+            this.count = count;
+            this.pos = 0;
+        }
+
+        @Override
+        public Entry<TKey> next() {
+            return pos < count ? entries[pos++] : null;
+        }
+    }
+
+    /**
+     * Merges the spilled runs. Equal keys are taken from earlier runs first, so
+     * the merge keeps the order the pairs were added in.
+     */
+    private class MergeSource implements PairSource<TKey> {
+        private final PriorityQueue<RunReader> readers;
+
+        MergeSource() throws IOException {
+            readers = new PriorityQueue<>((a, b) -> {
+                int cmp = a.current.compareTo(b.current);
+                return cmp != 0 ? cmp : Integer.compare(a.runIndex, b.runIndex);
+            });
+            for (int i = 0; i < runFiles.size(); i++) {
+                RunReader reader = new RunReader(runFiles.get(i), i);
+                if (reader.advance())
+                    readers.add(reader);
+            }
+        }
+
+        @Override
+        public Entry<TKey> next() throws IOException {
+            RunReader reader = readers.poll();
+            if (reader == null)
+                return null;
+
+            Entry<TKey> entry = reader.current;
+            if (reader.advance())
+                readers.add(reader);
+            return entry;
+        }
+    }
+
+    private class RunReader {
+        private final DataInputStream in;
+        private final int runIndex;
+        private Entry<TKey> current;
+
+        RunReader(File runFile, int runIndex) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+            this.runIndex = runIndex;
+        }
+
+        /**
+         * Reads the next pair of the run, closing the run at its end.
+         */
+        boolean advance() throws IOException {
+            try {
+                TKey key = codec.readKey(in);
+                current = new Entry<>(key, in.readLong());
+                return true;
+            } catch (EOFException e) {
+                in.close();
+                current = null;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Groups consecutive pairs with equal keys into one posting list.
+     */
+    private static class PostingIterator<TKey extends Comparable<TKey>>
+            implements Iterator<Map.Entry<TKey, RowIdList>> {
+        private final PairSource<TKey> source;
+        private Entry<TKey> pending;
+
+        PostingIterator(PairSource<TKey> source) throws IOException {
+            this.source = source;
+            this.pending = source.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        @Override
+        public Map.Entry<TKey, RowIdList> next() {
+            if (pending == null)
+                throw new NoSuchElementException();
+
+            TKey key = pending.key;
+            RowIdList rowIds = new RowIdList();
+            try {
+                while (pending != null && pending.key.compareTo(key) == 0) {
+                    rowIds.add(pending.rowId);
+                    pending = source.next();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return new AbstractMap.SimpleEntry<>(key, rowIds);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Table;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import Engine.Schema;
+import Table.BTree.RangeCursor;
+
+/**
+ * Cursor over the result of a select query answered from a composite index
+ * alone. The leaves of the index are walked as the caller advances; each key
+ * is tested against the query's conditions and, if it matches, yields one
+ * tuple of the selected columns per row id in its posting list. No page of the
+ * table is read.
+ */
+public class IndexOnlyIterator implements Iterator<Tuple> {
+    private final CompositeIndex index;
+    private final RangeCursor<CompositeKey, RowIdList> postings;
+    private final Schema schema;
+    private final RowPredicate condition;
+    private final int[] colIdx;
+
+    // fields of the current matching key, and how many more rows it yields
+    private Object[] fields;
+    private int remaining;
+
+    /**
+     * @param index     the index holding every column the query reads
+     * @param match     the range of keys that may match, or null for all keys
+     * @param schema    the schema of the table
+     * @param condition the condition a row must satisfy to be returned
+     * @param colIdx    the ordinals of the selected columns, in output order
+     */
+    IndexOnlyIterator(CompositeIndex index, CompositeIndex.Match match, Schema schema, RowPredicate condition,
+            int[] colIdx) {
+        this.index = index;
+        this.postings = index.scan(match);
+        this.schema = schema;
+        this.condition = condition;
+        this.colIdx = colIdx;
+    }
+
+    /**
+     * Counts the rows matching the condition, reading the rest of the index
+     * range without building tuples.
+     *
+     * @return the number of matching rows
+     */
+    public int count() {
+        int count = remaining;
+        remaining = 0;
+        while (postings.hasNext()) {
+            RowIdList rowIds = postings.next();
+            if (condition.matches(index.fieldsOf(postings.getKey(), schema)))
+                count += rowIds.size();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (remaining == 0 && postings.hasNext()) {
+            RowIdList rowIds = postings.next();
+            Object[] keyFields = index.fieldsOf(postings.getKey(), schema);
+            if (condition.matches(keyFields)) {
+                fields = keyFields;
+                remaining = rowIds.size();
+            }
+        }
+        return remaining > 0;
+    }
+
+    @Override
+    public Tuple next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        remaining--;
+        Object[] projected = new Object[colIdx.length];
+        for (int i = 0; i < colIdx.length; i++) {
+            projected[i] = fields[colIdx[i]];
+        }
+        return new Tuple(projected);
+    }
+}
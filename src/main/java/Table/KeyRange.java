@@ -0,0 +1,170 @@
+package Table;
+
+import Engine.KeyComparator;
+import Engine.SQLTerm;
+import Engine.Schema;
+import Table.BTree.RangeCursor;
+
+/**
+ * The range of clustering keys a select query can return, taken from the
+ * comparisons of the clustering key that are ANDed with the rest of the
+ * query. Pages are sorted by clustering key, so the rows in the range form one
+ * contiguous run that is found by binary search on the page ranges, then on
+ * the rows of the first and last page of the run.
+ * <p>
+ * The range of another column is found the same way, and its rows are read
+ * from the B+ tree index of the column in one walk of the leaves.
+ */
+public class KeyRange {
+    private final KeyComparator comparator;
+
+    // a null bound is open
+    private Object low;
+    private boolean lowInclusive;
+    private Object high;
+    private boolean highInclusive;
+
+    private KeyRange(KeyComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Extracts the clustering key range of a select query. The conditions must
+     * already be validated, see {@link RowPredicate#compile}.
+     *
+     * @param arrSQLTerms     the conditions of the query
+     * @param strarrOperators the logical operators between the conditions
+     * @param schema          the schema of the table
+     * @return the range, or null if the query does not bound the clustering
+     *         key, or combines conditions with OR or XOR
+     */
+    public static KeyRange of(SQLTerm[] arrSQLTerms, String[] strarrOperators, Schema schema) {
+        return of(arrSQLTerms, strarrOperators, schema, schema.getClusteringKey());
+    }
+
+    /**
+     * Extracts the range of values of a column a select query can return.
+     *
+     * @param arrSQLTerms     the conditions of the query, already validated
+     * @param strarrOperators the logical operators between the conditions
+     * @param schema          the schema of the table
+     * @param colName         the name of the column
+     * @return the range, or null if the query does not bound the column, or
+     *         combines conditions with OR or XOR
+     */
+    public static KeyRange of(SQLTerm[] arrSQLTerms, String[] strarrOperators, Schema schema, String colName) {
+        for (String operator : strarrOperators) {
+            if (!operator.equals("AND"))
+                return null;
+        }
+
+        KeyRange range = new KeyRange(KeyComparator.forType(schema.getColType(colName)));
+        boolean bounded = false;
+        for (SQLTerm term : arrSQLTerms) {
+            if (!term._strColumnName.equals(colName))
+                continue;
+
+            switch (term._strOperator) {
+                case "=":
+                    range.restrictLow(term._objValue, true);
+                    range.restrictHigh(term._objValue, true);
+                    break;
+                case ">":
+                    range.restrictLow(term._objValue, false);
+                    break;
+                case ">=":
+                    range.restrictLow(term._objValue, true);
+                    break;
+                case "<":
+                    range.restrictHigh(term._objValue, false);
+                    break;
+                case "<=":
+                    range.restrictHigh(term._objValue, true);
+                    break;
+                default:
+                    continue;
+            }
+            bounded = true;
+        }
+        return bounded ? range : null;
+    }
+
+    private void restrictLow(Object key, boolean inclusive) {
+        int comparison = low == null ? 1 : comparator.compare(key, low);
+        if (comparison > 0) {
+            low = key;
+            lowInclusive = inclusive;
+        } else if (comparison == 0) {
+            lowInclusive &= inclusive;
+        }
+    }
+
+    private void restrictHigh(Object key, boolean inclusive) {
+        int comparison = high == null ? -1 : comparator.compare(key, high);
+        if (comparison < 0) {
+            high = key;
+            highInclusive = inclusive;
+        } else if (comparison == 0) {
+            highInclusive &= inclusive;
+        }
+    }
+
+    /**
+     * @return true if no key lies in the range
+     */
+    public boolean isEmpty() {
+        if (low == null || high == null)
+            return false;
+        int comparison = comparator.compare(low, high);
+        return comparison > 0 || (comparison == 0 && !(lowInclusive && highInclusive));
+    }
+
+    /**
+     * @param key a clustering key
+     * @return true if the key is not below the range
+     */
+    public boolean isAboveLow(Object key) {
+        if (low == null)
+            return true;
+        int comparison = comparator.compare(key, low);
+        return comparison > 0 || (comparison == 0 && lowInclusive);
+    }
+
+    /**
+     * @param key a clustering key
+     * @return true if the key is not above the range
+     */
+    public boolean isBelowHigh(Object key) {
+        if (high == null)
+            return true;
+        int comparison = comparator.compare(key, high);
+        return comparison < 0 || (comparison == 0 && highInclusive);
+    }
+
+    /**
+     * @param colIdx a B+ tree index on the column of the range
+     * @return a cursor over the posting lists of the keys in the range
+     */
+    <TKey extends Comparable<TKey>> RangeCursor<TKey, RowIdList> search(BPlusTreeIndex<TKey> colIdx) {
+        return colIdx.tree.range(colIdx.toKey(low), lowInclusive, colIdx.toKey(high), highInclusive);
+    }
+
+    /**
+     * @param page               a page
+     * @param clusteringKeyIndex the index of the clustering key's field
+     * @return the first row of the page whose key is not below the range
+     */
+    int firstRow(Page page, int clusteringKeyIndex) {
+        return low == null ? 0 : page.findFirstRowFrom(low, clusteringKeyIndex, lowInclusive);
+    }
+
+    /**
+     * @param page               a page
+     * @param clusteringKeyIndex the index of the clustering key's field
+     * @return the first row of the page whose key is above the range, or the
+     *         number of rows if there is none
+     */
+    int endRow(Page page, int clusteringKeyIndex) {
+        return high == null ? page.size() : page.findFirstRowFrom(high, clusteringKeyIndex, !highInclusive);
+    }
+}
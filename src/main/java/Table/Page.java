@@ -2,30 +2,72 @@ package Table;
 
 import Exceptions.DBAppException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
 
-import Engine.Utils;
-
 /**
  * The Page class represents a page in a database table.
- * It contains a vector of tuples, which represent the rows in the page.
+ * The rows of the page are stored column by column: the values of each column
+ * are kept in a {@link ColumnVector}, which holds Integer and Double values in
+ * primitive arrays. Rows are read through typed accessors, and a {@link Tuple}
+ * is only built when a caller asks for a whole row.
+ * A page of a columnar table is written with the {@link ColumnarPage} layout;
+ * when such a page is read its columns are decoded on first use.
  */
 public class Page extends FileHandler {
-    // Vector of tuples in the page
+    // Serialized pages were saved with this value, see loadPage
+    private static final long serialVersionUID = 1479755194461818266L;
+
+    // Rows of a legacy serialized page, only used while migrating it
     private Vector<Tuple> tuples;
     public String name;
     public static int maximumRowsCountInPage;
 
+    // Slot given to the next tuple added to the page
+    private int nextSlot;
+
+    // Number of rows in the page
+    private transient int rowCount;
+
+    // Slot of each row, in row order
+    private transient int[] slots;
+
+    // Values of each column, in row order; a column that only holds nulls so far
+    // has no vector yet
+    private transient ColumnVector[] columns;
+
+    // Whether the page is written column by column
+    private transient boolean columnar;
+
+    // Columnar page file whose columns are not all decoded yet, or null
+    private transient ColumnarPage source;
+    private transient boolean[] decoded;
+
+    // Zone map stored in the page file, or null once the page changes
+    private transient ZoneMap zoneMap;
+
+    // Bloom filter of each column, written next to the page file; null if the
+    // table keeps none
+    private transient BloomFilter[] bloomFilters;
+
     /**
      * Constructor for the Page class.
-     * Initializes the name of the page and empty tuple vector.
+     * Initializes the name of the page with no rows.
      *
      * @param name The name of the page
      */
     public Page(String name) {
         this.name = name;
-        this.tuples = new Vector<Tuple>();
+        this.rowCount = 0;
+        this.slots = new int[0];
+        this.columns = null;
     }
 
     /**
@@ -37,25 +79,230 @@ public class Page extends FileHandler {
      */
     public Page(String name, Tuple tuple) {
         this(name);
-        this.tuples.add(tuple);
+        assignSlot(tuple);
+        insertRow(0, tuple);
     }
 
     /**
-     * Returns the vector of tuples in the page.
+     * Returns the rows of the page as tuples.
+     * The tuples are built on each call, so changing them or the returned vector
+     * does not change the page.
      * 
      * @return Vector of tuples
      */
     public Vector<Tuple> getTuples() {
-        return tuples;
+        Vector<Tuple> rows = new Vector<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            rows.add(getTuple(row));
+        }
+        return rows;
     }
 
     /**
-     * Sets the vector of tuples in the page.
+     * Replaces the rows of the page. Each tuple keeps its slot.
      * 
-     * @param tuples Vector of tuples
+     * @param tuples the new rows of the page
+     */
+    public void setTuples(List<Tuple> tuples) {
+        this.source = null;
+        this.decoded = null;
+        this.zoneMap = null;
+        this.rowCount = 0;
+        this.slots = new int[tuples.size()];
+        this.columns = null;
+        for (Tuple t : tuples) {
+            insertRow(rowCount, t);
+        }
+    }
+
+    /**
+     * @return the number of rows in the page
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of fields of each row, 0 if the page has no rows yet
+     */
+    public int getFieldCount() {
+        return columns == null ? 0 : columns.length;
+    }
+
+    /**
+     * Builds the tuple of a row.
+     *
+     * @param row the position of the row in the page
+     * @return a new tuple holding the fields and the slot of the row
+     */
+    public Tuple getTuple(int row) {
+        Object[] fields = new Object[getFieldCount()];
+        for (int col = 0; col < fields.length; col++) {
+            fields[col] = getField(row, col);
+        }
+        Tuple t = new Tuple(fields);
+        t.setSlot(slots[row]);
+        return t;
+    }
+
+    /**
+     * @param row the position of the row in the page
+     * @param col the ordinal of the column
+     * @return the value of the column in the row
+     */
+    public Object getField(int row, int col) {
+        ColumnVector column = getColumn(col);
+        return column == null ? null : column.get(row);
+    }
+
+    /**
+     * Changes the value of a column in a row.
+     *
+     * @param row   the position of the row in the page
+     * @param col   the ordinal of the column
+     * @param value the new value
+     */
+    public void setField(int row, int col, Object value) {
+        beforeChange();
+        ColumnVector column = column(col, value);
+        if (column != null)
+            column.set(row, value);
+    }
+
+    /**
+     * @param row   the position of the row in the page
+     * @param col   the ordinal of the column
+     * @param value a value
+     * @return true if the value of the column in the row equals the value
+     */
+    public boolean fieldEquals(int row, int col, Object value) {
+        ColumnVector column = getColumn(col);
+        return column == null ? value == null : column.matches(row, value);
+    }
+
+    /**
+     * @param row the position of the row in the page
+     * @return the slot of the row
+     */
+    public int getSlot(int row) {
+        return slots[row];
+    }
+
+    /**
+     * @param col the ordinal of the column
+     * @return the values of the column, or null if the column only holds nulls
+     */
+    ColumnVector getColumn(int col) {
+        if (source != null && !decoded[col]) {
+            try {
+                columns[col] = source.decodeColumn(col, slots.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            decoded[col] = true;
+        }
+        return columns[col];
+    }
+
+    /**
+     * @return true if the page is written with the columnar layout
+     */
+    public boolean isColumnar() {
+        return columnar;
+    }
+
+    /**
+     * @param columnar whether the page is written with the columnar layout
+     */
+    public void setColumnar(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    /**
+     * @return the zone map stored in the page file, or null if the page was not
+     *         read from a columnar page file or changed since
+     */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
+    /**
+     * Sets the Bloom filters written with the page, built by the table from the
+     * page's current rows.
+     *
+     * @param bloomFilters the filter of each column, null for a column without
+     *                     one
+     */
+    public void setBloomFilters(BloomFilter[] bloomFilters) {
+        this.bloomFilters = bloomFilters;
+    }
+
+    /**
+     * Sets the rows of the page to those of a columnar page file, whose columns
+     * are decoded on first use.
+     */
+    void load(ColumnarPage source, int[] slots, int fieldCount, ZoneMap zoneMap) {
+        this.rowCount = slots.length;
+        this.slots = slots;
+        this.columns = new ColumnVector[fieldCount];
+        this.source = source;
+        this.decoded = new boolean[fieldCount];
+        this.zoneMap = zoneMap;
+    }
+
+    /**
+     * Decodes the remaining columns of the page file and forgets the stored
+     * zone map, before the rows change.
+     */
+    private void beforeChange() {
+        if (source != null) {
+            for (int col = 0; col < columns.length; col++) {
+                getColumn(col);
+            }
+            source = null;
+            decoded = null;
+        }
+        zoneMap = null;
+    }
+
+    /**
+     * @return the slot that will be given to the next tuple added to the page
+     */
+    public int getNextSlot() {
+        return nextSlot;
+    }
+
+    /**
+     * @param nextSlot the slot that will be given to the next tuple added to the
+     *                 page
+     */
+    public void setNextSlot(int nextSlot) {
+        this.nextSlot = nextSlot;
+    }
+
+    /**
+     * Gives a tuple entering the page a slot that is unique in the page.
+     * Must be called before the tuple is referenced by its row id.
+     *
+     * @param t The tuple entering the page
+     */
+    public void assignSlot(Tuple t) {
+        t.setSlot(nextSlot++);
+    }
+
+    /**
+     * Finds a row by its slot.
+     *
+     * @param slot the slot of the row
+     * @return the position of the row in the page, or -1 if no row in the page
+     *         has this slot
      */
-    public void setTuples(Vector<Tuple> tuples) {
-        this.tuples = tuples;
+    public int findSlot(int slot) {
+        for (int row = 0; row < rowCount; row++) {
+            if (slots[row] == slot)
+                return row;
+        }
+        return -1;
     }
 
     /**
@@ -67,8 +314,8 @@ public class Page extends FileHandler {
      */
     public String toString() {
         String res = "";
-        for (int i = 0; i < tuples.size(); i++) {
-            res += tuples.get(i).toString() + ",";
+        for (int i = 0; i < rowCount; i++) {
+            res += getTuple(i).toString() + ",";
         }
         return res.substring(0, res.length() - 1);
     }
@@ -80,7 +327,7 @@ public class Page extends FileHandler {
      * @return true if the page is full, false otherwise
      */
     public boolean isFull() {
-        return tuples.size() == maximumRowsCountInPage;
+        return rowCount == maximumRowsCountInPage;
     }
 
     /**
@@ -94,62 +341,259 @@ public class Page extends FileHandler {
         if (isFull()) {
             throw new DBAppException("Page is full");
         }
-        tuples.add(t);
+        assignSlot(t);
+        insertRow(rowCount, t);
+    }
+
+    /**
+     * Inserts a tuple at a position of the page.
+     * Throws a DBAppException if the page is full.
+     *
+     * @param index The position to insert the tuple at
+     * @param t     The tuple to be inserted
+     * @throws DBAppException If the page is full
+     */
+    public void insertTuple(int index, Tuple t) throws DBAppException {
+        if (isFull()) {
+            throw new DBAppException("Page is full");
+        }
+        assignSlot(t);
+        insertRow(index, t);
     }
 
     public boolean isEmpty() {
-        return tuples.size() == 0;
+        return rowCount == 0;
     }
 
     /**
-     * Removes a tuple from the page.
+     * Removes a row from the page.
      *
-     * @param t The tuple to be removed
+     * @param row The position of the row to be removed
      * @throws DBAppException
      */
-    public void removeTuple(Tuple t) throws DBAppException {
+    public void removeRow(int row) throws DBAppException {
         // if page is empty after removing, throw exception
         if (isEmpty()) {
             throw new DBAppException("Page is empty");
         }
 
-        tuples.remove(t);
+        beforeChange();
+        for (ColumnVector column : columns) {
+            if (column != null)
+                column.remove(row, rowCount);
+        }
+        System.arraycopy(slots, row + 1, slots, row, rowCount - row - 1);
+        rowCount--;
+    }
+
+    /**
+     * Stores the fields and the slot of a tuple as a new row at the given
+     * position.
+     */
+    private void insertRow(int index, Tuple t) {
+        insertRow(index, t.getFields(), t.getSlot());
+    }
+
+    /**
+     * Stores fields as a new row at the given position. The fields are copied,
+     * so the array may be reused by the caller.
+     */
+    void insertRow(int index, Object[] fields, int slot) {
+        beforeChange();
+        if (columns == null)
+            columns = new ColumnVector[fields.length];
+
+        for (int col = 0; col < fields.length; col++) {
+            ColumnVector column = column(col, fields[col]);
+            if (column != null)
+                column.insert(index, rowCount, fields[col]);
+        }
+
+        if (rowCount == slots.length)
+            slots = Arrays.copyOf(slots, ColumnVector.grownCapacity(slots.length, rowCount + 1));
+        System.arraycopy(slots, index, slots, index + 1, rowCount - index);
+        slots[index] = slot;
+        rowCount++;
     }
 
     /**
-     * Saves the page to disk.
+     * Returns the vector of a column that can store the given value, creating
+     * it for the first non null value or converting it to an Object column if
+     * the value has another type. A column that only holds nulls stays without
+     * a vector while the value is null.
+     */
+    private ColumnVector column(int col, Object value) {
+        ColumnVector column = columns[col];
+        if (column == null) {
+            if (value == null)
+                return null;
+
+            column = ColumnVector.forValue(value, Math.max(slots.length, rowCount + 1));
+            for (int row = 0; row < rowCount; row++) {
+                column.set(row, null);
+            }
+            columns[col] = column;
+        } else if (!column.accepts(value)) {
+            column = column.toObjectColumn(rowCount);
+            columns[col] = column;
+        }
+        return column;
+    }
+
+    /**
+     * Saves the page through the buffer pool.
+     * The page is written to disk when it is evicted or the pool is flushed.
      *
      * @param tableName use table name to create a new directory to store table
      *                  related pages in.
      * @throws IOException If an I/O error occurs.
      */
     public void savePage(String tableName) throws IOException {
+        BufferPool.getInstance().markDirty(tableName, this);
+    }
+
+    /**
+     * Writes the page to disk.
+     *
+     * @param tableName use table name to create a new directory to store table
+     *                  related pages in.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writePage(String tableName) throws IOException {
         // Create the directory path with the table name
-        String directoryPath = "src\\main\\java\\Table\\" + tableName + "\\Pages\\";
-        super.saveInstance(directoryPath, this.name);
+        String directoryPath = getDirectoryPath(tableName);
+        File directory = new File(directoryPath);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        // a column holding values of several types can only be stored row by row
+        Path pagePath = Paths.get(directoryPath + this.name + SlottedPage.EXTENSION);
+        if (columnar && ColumnarPage.canWrite(this))
+            ColumnarPage.write(pagePath, this);
+        else
+            SlottedPage.write(pagePath, this);
+
+        if (bloomFilters != null)
+            BloomFilter.writeAll(Paths.get(directoryPath + this.name + BloomFilter.EXTENSION), bloomFilters);
+    }
+
+    /**
+     * Reads the Bloom filters written with a page, without reading the page.
+     *
+     * @param tableName the name of the table the page belongs to
+     * @param pageNum   the page number
+     * @return the filter of each column, or null if the page has none
+     * @throws IOException If an I/O error occurs.
+     */
+    public static BloomFilter[] loadBloomFilters(String tableName, int pageNum) throws IOException {
+        return BloomFilter.readAll(Paths.get(getDirectoryPath(tableName) + "page " + pageNum + BloomFilter.EXTENSION));
+    }
+
+    /**
+     * Deletes the Bloom filters written with a page, if any.
+     *
+     * @param tableName the name of the table the page belongs to
+     * @param pageNum   the page number
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void deleteBloomFilters(String tableName, int pageNum) throws IOException {
+        Files.deleteIfExists(Paths.get(getDirectoryPath(tableName) + "page " + pageNum + BloomFilter.EXTENSION));
+    }
+
+    /**
+     * Deletes the file of a removed page and its Bloom filters, if any.
+     *
+     * @param tableName the name of the table the page belonged to
+     * @param pageNum   the page number
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void deletePage(String tableName, int pageNum) throws IOException {
+        String pagePath = getDirectoryPath(tableName) + "page " + pageNum;
+        Files.deleteIfExists(Paths.get(pagePath + SlottedPage.EXTENSION));
+        Files.deleteIfExists(Paths.get(pagePath + ".class"));
+        deleteBloomFilters(tableName, pageNum);
+    }
+
+    /**
+     * Estimates the heap size of the decoded page, used by the buffer pool to
+     * stay within its memory budget.
+     *
+     * @return the estimated size of the page in bytes
+     */
+    public long estimateSize() {
+        long size = 64 + 16 + 4L * slots.length;
+        if (source != null)
+            size += source.size();
+        for (int col = 0; col < getFieldCount(); col++) {
+            if (columns[col] != null)
+                size += columns[col].estimateSize(rowCount);
+        }
+        return size;
+    }
+
+    /**
+     * Loads a page from disk, bypassing the buffer pool.
+     * Pages still stored as serialized objects are migrated to the binary
+     * slotted-page format the first time they are loaded. Page and Tuple keep
+     * the serialVersionUIDs those pages were written with, so they can still be
+     * deserialized for the migration.
+     *
+     * @param tableName the name of the table the page belongs to
+     * @param pageNum   the page number to load
+     * @return the loaded page, or null if the page does not exist
+     * @throws IOException            If an I/O error occurs.
+     * @throws ClassNotFoundException If a legacy page cannot be deserialized.
+     */
+    public static Page loadPage(String tableName, int pageNum) throws IOException, ClassNotFoundException {
+        String directoryPath = getDirectoryPath(tableName);
+        String pageName = "page " + pageNum;
+
+        Path pagePath = Paths.get(directoryPath + pageName + SlottedPage.EXTENSION);
+        if (Files.exists(pagePath)) {
+            return SlottedPage.read(pagePath, pageName);
+        }
+
+        // one-time migration of a page saved by Java serialization
+        Page legacyPage = (Page) new FileHandler().loadInstance(directoryPath, pageName);
+        if (legacyPage == null)
+            return null;
+
+        Vector<Tuple> legacyTuples = legacyPage.tuples;
+        for (Tuple t : legacyTuples) {
+            legacyPage.assignSlot(t);
+        }
+        legacyPage.setTuples(legacyTuples);
+        legacyPage.tuples = null;
+
+        legacyPage.writePage(tableName);
+        Files.delete(Paths.get(directoryPath + pageName + ".class"));
+        return legacyPage;
+    }
+
+    private static String getDirectoryPath(String tableName) {
+        return "src\\main\\java\\Table\\" + tableName + "\\Pages\\";
     }
 
     /**
      * Finds the appropriate row index for inserting a target row into the page
      * based on the clustering key.
      *
-     * @param targetRowClusteringKey the target row value to be inserted
+     * @param targetRowClusteringKey the clustering key of the row to be inserted
      * @param clusteringKeyIndex     the index of the clustering key in the row
-     * @param clusteringKeyType      the data type of the clustering key
      * @return the index of the row where the target row should be inserted
      * @throws DBAppException if an error occurs during the insertion process
      */
-    public int findInsertionRow(String targetRowClusteringKey, int clusteringKeyIndex, String clusteringKeyType)
-            throws DBAppException {
+    public int findInsertionRow(Object targetRowClusteringKey, int clusteringKeyIndex) throws DBAppException {
         int start = 0;
-        int end = this.tuples.size() - 1;
+        int end = rowCount - 1;
         int row = 0;
+        ColumnVector keys = getColumn(clusteringKeyIndex);
 
         while (start <= end) {
             int mid = start + (end - start) / 2;
-            String currRow = this.tuples.get(mid).getFields()[clusteringKeyIndex] + "";
 
-            int comparison = Utils.compareKeys(targetRowClusteringKey, currRow, clusteringKeyType);
+            int comparison = -keys.compare(mid, targetRowClusteringKey);
             if (comparison < 0) {
                 end = mid - 1;
                 row = mid;
@@ -160,4 +604,33 @@ public class Page extends FileHandler {
 
         return row;
     }
+
+    /**
+     * Finds the first row whose clustering key is greater than, or equal to if
+     * inclusive, the given key, by binary search.
+     *
+     * @param key                a clustering key
+     * @param clusteringKeyIndex the index of the clustering key in the row
+     * @param inclusive          whether a row whose key equals the given key is
+     *                           found
+     * @return the index of the row, or the number of rows if there is none
+     */
+    public int findFirstRowFrom(Object key, int clusteringKeyIndex, boolean inclusive) {
+        int start = 0;
+        int end = rowCount;
+        ColumnVector keys = getColumn(clusteringKeyIndex);
+
+        while (start < end) {
+            int mid = start + (end - start) / 2;
+
+            int comparison = keys.compare(mid, key);
+            if (comparison > 0 || (comparison == 0 && inclusive)) {
+                end = mid;
+            } else {
+                start = mid + 1;
+            }
+        }
+
+        return start;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,439 @@
+package Table;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * Compressed set of row ids, used to combine the rows the indices return for
+ * the conditions of a query.
+ * As in a roaring bitmap, a row id is split into its upper 48 bits, which pick
+ * a container, and its lower 16 bits, which are stored in the container. A
+ * container keeps its values in a sorted array while it holds at most 4096 of
+ * them, and in a bitmap of 65536 bits once it holds more, so AND, OR and XOR
+ * are merges of sorted keys, then merges of sorted arrays or word by word
+ * operations on the bitmaps.
+ * <p>
+ * Row ids put the page number in their upper 32 bits, so the containers are
+ * ordered by page and the pages of a set are read off its keys.
+ */
+public class RowIdBitmap {
+    // largest number of values kept in an array container
+    private static final int ARRAY_MAX = 4096;
+
+    // number of 64-bit words in a bitmap container
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int XOR = 2;
+
+    // upper 48 bits of the row ids of each container, in ascending order
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * @param rowIds the row ids of a posting list, or null
+     * @return the set of these row ids
+     */
+    public static RowIdBitmap of(RowIdList rowIds) {
+        RowIdBitmap bitmap = new RowIdBitmap();
+        bitmap.addAll(rowIds);
+        return bitmap;
+    }
+
+    /**
+     * @param rowIds the row ids of a posting list, or null
+     */
+    public void addAll(RowIdList rowIds) {
+        if (rowIds == null)
+            return;
+        for (int i = 0; i < rowIds.size(); i++) {
+            add(rowIds.get(i));
+        }
+    }
+
+    /**
+     * @param rowId the row id to add
+     */
+    public void add(long rowId) {
+        long key = rowId >>> 16;
+        int idx;
+        if (size > 0 && keys[size - 1] == key) {
+            // rows of a posting list usually come in page order
+            idx = size - 1;
+        } else {
+            idx = size > 0 && key > keys[size - 1] ? -size - 1 : Arrays.binarySearch(keys, 0, size, key);
+            if (idx < 0) {
+                idx = -idx - 1;
+                insert(idx, key, new ArrayContainer());
+            }
+        }
+        containers[idx] = containers[idx].add((char) rowId);
+    }
+
+    /**
+     * @param rowId a row id
+     * @return true if the row id is in the set
+     */
+    public boolean contains(long rowId) {
+        int idx = Arrays.binarySearch(keys, 0, size, rowId >>> 16);
+        return idx >= 0 && containers[idx].contains((char) rowId);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of row ids in the set
+     */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return the row ids of the set, in ascending order
+     */
+    public long[] toArray() {
+        long[] rowIds = new long[(int) cardinality()];
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            pos = containers[i].copyTo(rowIds, pos, keys[i] << 16);
+        }
+        return rowIds;
+    }
+
+    /**
+     * @return the page numbers of the row ids of the set, in ascending order
+     */
+    public Vector<Integer> getPageNums() {
+        Vector<Integer> pageNums = new Vector<>();
+        for (int i = 0; i < size; i++) {
+            int pageNum = RowIdList.getPageNum(keys[i] << 16);
+            if (pageNums.isEmpty() || pageNums.lastElement() != pageNum)
+                pageNums.add(pageNum);
+        }
+        return pageNums;
+    }
+
+    /**
+     * @return a new set of the row ids in both sets
+     */
+    public RowIdBitmap and(RowIdBitmap other) {
+        return combine(other, AND);
+    }
+
+    /**
+     * @return a new set of the row ids in either set
+     */
+    public RowIdBitmap or(RowIdBitmap other) {
+        return combine(other, OR);
+    }
+
+    /**
+     * @return a new set of the row ids in exactly one of the sets
+     */
+    public RowIdBitmap xor(RowIdBitmap other) {
+        return combine(other, XOR);
+    }
+
+    private RowIdBitmap combine(RowIdBitmap other, int op) {
+        RowIdBitmap result = new RowIdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                if (op != AND)
+                    result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                if (op != AND)
+                    result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                Container container = Container.combine(containers[i], other.containers[j], op);
+                if (container != null)
+                    result.append(keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        if (op != AND) {
+            for (; i < size; i++) {
+                result.append(keys[i], containers[i].copy());
+            }
+            for (; j < other.size; j++) {
+                result.append(other.keys[j], other.containers[j].copy());
+            }
+        }
+        return result;
+    }
+
+    private void append(long key, Container container) {
+        insert(size, key, container);
+    }
+
+    private void insert(int idx, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+        System.arraycopy(containers, idx, containers, idx + 1, size - idx);
+        keys[idx] = key;
+        containers[idx] = container;
+        size++;
+    }
+
+    /**
+     * The lower 16 bits of the row ids sharing their upper 48 bits. A container
+     * is never empty.
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        /**
+         * @return this container, or the container replacing it if it changed
+         *         representation
+         */
+        abstract Container add(char value);
+
+        abstract Container copy();
+
+        abstract long[] toWords();
+
+        /**
+         * Writes the row ids of the container to an array.
+         *
+         * @param base the row id of value 0 of the container
+         * @return the position after the last row id written
+         */
+        abstract int copyTo(long[] rowIds, int pos, long base);
+
+        /**
+         * @return the result of the operation, or null if it is empty
+         */
+        static Container combine(Container a, Container b, int op) {
+            if (a instanceof ArrayContainer && b instanceof ArrayContainer)
+                return ((ArrayContainer) a).merge((ArrayContainer) b, op);
+            if (op == AND && a instanceof ArrayContainer)
+                return ((ArrayContainer) a).filter(b);
+            if (op == AND && b instanceof ArrayContainer)
+                return ((ArrayContainer) b).filter(a);
+            return BitmapContainer.of(a.toWords(), b.toWords(), op);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this.values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int idx = size > 0 && value > values[size - 1] ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+            if (idx >= 0)
+                return this;
+            if (size == ARRAY_MAX) {
+                BitmapContainer bitmap = new BitmapContainer(toWords(), size);
+                return bitmap.add(value);
+            }
+
+            idx = -idx - 1;
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(size * 2, ARRAY_MAX));
+            System.arraycopy(values, idx, values, idx + 1, size - idx);
+            values[idx] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, size), size);
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        int copyTo(long[] rowIds, int pos, long base) {
+            for (int i = 0; i < size; i++) {
+                rowIds[pos++] = base | values[i];
+            }
+            return pos;
+        }
+
+        // keeps the values also in the other container
+        Container filter(Container other) {
+            char[] result = new char[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i]))
+                    result[count++] = values[i];
+            }
+            return count == 0 ? null : new ArrayContainer(result, count);
+        }
+
+        Container merge(ArrayContainer other, int op) {
+            char[] result = new char[op == AND ? Math.min(size, other.size) : size + other.size];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (values[i] < other.values[j]) {
+                    if (op != AND)
+                        result[count++] = values[i];
+                    i++;
+                } else if (values[i] > other.values[j]) {
+                    if (op != AND)
+                        result[count++] = other.values[j];
+                    j++;
+                } else {
+                    if (op != XOR)
+                        result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            if (op != AND) {
+                while (i < size)
+                    result[count++] = values[i++];
+                while (j < other.size)
+                    result[count++] = other.values[j++];
+            }
+
+            if (count == 0)
+                return null;
+            ArrayContainer container = new ArrayContainer(result, count);
+            return count > ARRAY_MAX ? new BitmapContainer(container.toWords(), count) : container;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * @return the container of the words combined by the operation, or null
+         *         if it is empty
+         */
+        static Container of(long[] a, long[] b, int op) {
+            long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                switch (op) {
+                    case AND:
+                        words[i] = a[i] & b[i];
+                        break;
+                    case OR:
+                        words[i] = a[i] | b[i];
+                        break;
+                    default:
+                        words[i] = a[i] ^ b[i];
+                        break;
+                }
+                cardinality += Long.bitCount(words[i]);
+            }
+
+            if (cardinality == 0)
+                return null;
+            if (cardinality > ARRAY_MAX)
+                return new BitmapContainer(words, cardinality);
+
+            BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+            char[] values = new char[cardinality];
+            bitmap.copyTo(values);
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            if (!contains(value)) {
+                words[value >>> 6] |= 1L << value;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        long[] toWords() {
+            return words;
+        }
+
+        @Override
+        int copyTo(long[] rowIds, int pos, long base) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    rowIds[pos++] = base | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return pos;
+        }
+
+        private void copyTo(char[] values) {
+            int pos = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[pos++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+}
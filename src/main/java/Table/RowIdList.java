@@ -0,0 +1,119 @@
+package Table;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * The RowIdList is the posting list stored for a key in a B+ tree index.
+ * Each row id packs the page number in its upper 32 bits and the row's slot in
+ * that page in its lower 32 bits, so a lookup can go straight to the row.
+ */
+public class RowIdList implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private transient long[] rowIds;
+    private transient int size;
+
+    public RowIdList() {
+        this.rowIds = new long[2];
+        this.size = 0;
+    }
+
+    /**
+     * @param pageNum the page number of the row
+     * @param slot    the slot of the row in its page
+     * @return the row id of the row
+     */
+    public static long rowId(int pageNum, int slot) {
+        return ((long) pageNum << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param rowId a row id
+     * @return the page number stored in the row id
+     */
+    public static int getPageNum(long rowId) {
+        return (int) (rowId >>> 32);
+    }
+
+    /**
+     * @param rowId a row id
+     * @return the slot stored in the row id
+     */
+    public static int getSlot(long rowId) {
+        return (int) rowId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        return rowIds[index];
+    }
+
+    /**
+     * Appends a row id to the list.
+     *
+     * @param rowId the row id to add
+     */
+    public void add(long rowId) {
+        if (size == rowIds.length) {
+            long[] grown = new long[rowIds.length * 2];
+            System.arraycopy(rowIds, 0, grown, 0, size);
+            rowIds = grown;
+        }
+        rowIds[size++] = rowId;
+    }
+
+    /**
+     * Removes a row id from the list.
+     *
+     * @param rowId the row id to remove
+     * @return true if the row id was found and removed
+     */
+    public boolean remove(long rowId) {
+        for (int i = 0; i < size; i++) {
+            if (rowIds[i] == rowId) {
+                System.arraycopy(rowIds, i + 1, rowIds, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                res.append(", ");
+            res.append("page ").append(getPageNum(rowIds[i])).append(" slot ").append(getSlot(rowIds[i]));
+        }
+        return res.append("]").toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(rowIds[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        rowIds = new long[Math.max(2, size)];
+        for (int i = 0; i < size; i++) {
+            rowIds[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package Table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import Engine.SQLTerm;
+import Engine.Schema;
+import Exceptions.DBAppException;
+
+/**
+ * The conditions of a select query compiled into a predicate tree.
+ * Column names are resolved to field ordinals and each term compares its field
+ * with a value of the column's type once, when the query starts. Operators
+ * bind AND tighter than OR, and OR tighter than XOR, so the tree is an XOR of
+ * ORs of ANDs. AND and OR stop at the first term that decides the result.
+ * Testing a row allocates nothing. A row of a page can be tested in place,
+ * reading only the columns the conditions refer to.
+ */
+public abstract class RowPredicate implements Predicate<Tuple> {
+    static final int EQUAL = 0;
+    static final int NOT_EQUAL = 1;
+    static final int GREATER = 2;
+    static final int GREATER_OR_EQUAL = 3;
+    static final int LESS = 4;
+    static final int LESS_OR_EQUAL = 5;
+
+    /**
+     * @param fields the fields of a row
+     * @return true if the row satisfies the predicate
+     */
+    public abstract boolean matches(Object[] fields);
+
+    /**
+     * @param page a page
+     * @param row  the position of a row in the page
+     * @return true if the row satisfies the predicate
+     */
+    public abstract boolean matches(Page page, int row);
+
+    /**
+     * Tests whether any row of a page can satisfy the predicate, using only the
+     * page's zone map, so the page can be skipped without reading it.
+     *
+     * @param zoneMap the zone map of a page
+     * @return false if no row of the page satisfies the predicate
+     */
+    public abstract boolean mayMatch(ZoneMap zoneMap);
+
+    /**
+     * Tests whether any row of a page can satisfy the predicate, using only the
+     * page's Bloom filters, which rule out the values of equality terms.
+     *
+     * @param bloomFilters the filter of each column of a page, null for a column
+     *                     without one
+     * @return false if no row of the page satisfies the predicate
+     */
+    public abstract boolean mayContain(BloomFilter[] bloomFilters);
+
+    @Override
+    public boolean test(Tuple row) {
+        return matches(row.getFields());
+    }
+
+    /**
+     * Compiles the conditions of a select query.
+     *
+     * @param arrSQLTerms     the conditions of the query
+     * @param strarrOperators the logical operators between the conditions
+     * @param schema          the schema of the table
+     * @return the predicate of the query
+     * @throws DBAppException if an operator, a column or a value is invalid
+     */
+    public static RowPredicate compile(SQLTerm[] arrSQLTerms, String[] strarrOperators,
+            Schema schema) throws DBAppException {
+        if (arrSQLTerms.length == 0 || strarrOperators.length != arrSQLTerms.length - 1)
+            throw new DBAppException("Invalid number of operators");
+
+        // split on XOR, then on OR, then on AND
+        List<RowPredicate> xorTerms = new ArrayList<>();
+        List<RowPredicate> orTerms = new ArrayList<>();
+        List<RowPredicate> andTerms = new ArrayList<>();
+        for (int i = 0; i < arrSQLTerms.length; i++) {
+            andTerms.add(compileTerm(arrSQLTerms[i], schema));
+
+            String operator = i < strarrOperators.length ? strarrOperators[i] : "XOR";
+            switch (operator) {
+                case "AND":
+                    break;
+                case "OR":
+                    orTerms.add(And.of(andTerms));
+                    andTerms = new ArrayList<>();
+                    break;
+                case "XOR":
+                    orTerms.add(And.of(andTerms));
+                    andTerms = new ArrayList<>();
+                    xorTerms.add(Or.of(orTerms));
+                    orTerms = new ArrayList<>();
+                    break;
+                default:
+                    throw new DBAppException("Invalid operator");
+            }
+        }
+
+        return Xor.of(xorTerms);
+    }
+
+    private static RowPredicate compileTerm(SQLTerm term, Schema schema)
+            throws DBAppException {
+        int colIdx = schema.getOrdinal(term._strColumnName);
+        if (colIdx < 0)
+            throw new DBAppException("Column " + term._strColumnName + " does not exist in table");
+
+        String colType = schema.getColType(colIdx);
+        int operator = parseOperator(term._strOperator);
+        Object value = term._objValue;
+        if (value == null || !value.getClass().getName().equals(colType))
+            throw new DBAppException("Invalid value type for column " + term._strColumnName);
+
+        switch (colType) {
+            case "java.lang.Integer":
+                return new IntTerm(colIdx, operator, (Integer) value);
+            case "java.lang.Double":
+                return new DoubleTerm(colIdx, operator, (Double) value);
+            default:
+                return new ObjectTerm(colIdx, operator, comparable(value));
+        }
+    }
+
+    /**
+     * @param value the value of a term, checked to have the column's type
+     * @return the value, comparable with the values of the column
+     */
+    @SuppressWarnings("unchecked")
+    static Comparable<Object> comparable(Object value) {
+        return (Comparable<Object>) value;
+    }
+
+    static int parseOperator(String operator) throws DBAppException {
+        if (operator == null)
+            throw new DBAppException("Invalid operator");
+
+        switch (operator) {
+            case "=":
+                return EQUAL;
+            case "!=":
+                return NOT_EQUAL;
+            case ">":
+                return GREATER;
+            case ">=":
+                return GREATER_OR_EQUAL;
+            case "<":
+                return LESS;
+            case "<=":
+                return LESS_OR_EQUAL;
+            default:
+                throw new DBAppException("Invalid operator");
+        }
+    }
+
+    /**
+     * @param operator   an operator code
+     * @param comparison the result of comparing the field with the value
+     * @return true if the comparison satisfies the operator
+     */
+    static boolean satisfies(int operator, int comparison) {
+        switch (operator) {
+            case EQUAL:
+                return comparison == 0;
+            case NOT_EQUAL:
+                return comparison != 0;
+            case GREATER:
+                return comparison > 0;
+            case GREATER_OR_EQUAL:
+                return comparison >= 0;
+            case LESS:
+                return comparison < 0;
+            default:
+                return comparison <= 0;
+        }
+    }
+
+    /**
+     * Tests the value of a column in a row through the column's own comparison.
+     */
+    static boolean matchesColumn(ColumnVector column, int row, int operator, Object value) {
+        return column != null && !column.isNull(row) && satisfies(operator, column.compare(row, value));
+    }
+
+    /**
+     * Tests whether the Bloom filter of a column can hold a row satisfying a
+     * term, true if the column has no filter or the term is not an equality.
+     */
+    static boolean filterMayContain(BloomFilter[] bloomFilters, int colIdx, int operator, int valueHash) {
+        BloomFilter filter = colIdx < bloomFilters.length ? bloomFilters[colIdx] : null;
+        return operator != EQUAL || filter == null || filter.mightContainHash(valueHash);
+    }
+
+    /**
+     * Tests whether a value within [min, max] can satisfy a term, true if the
+     * range is unknown.
+     */
+    static boolean rangeMayMatch(int operator, Comparable<Object> value, Object min, Object max) {
+        if (min == null || max == null)
+            return true;
+
+        int minComparison = -Integer.signum(value.compareTo(min));
+        int maxComparison = -Integer.signum(value.compareTo(max));
+        switch (operator) {
+            case EQUAL:
+                return minComparison <= 0 && maxComparison >= 0;
+            case NOT_EQUAL:
+                return minComparison != 0 || maxComparison != 0;
+            case GREATER:
+                return maxComparison > 0;
+            case GREATER_OR_EQUAL:
+                return maxComparison >= 0;
+            case LESS:
+                return minComparison < 0;
+            default:
+                return minComparison <= 0;
+        }
+    }
+
+    static final class IntTerm extends RowPredicate {
+        private final int colIdx;
+        private final int operator;
+        private final int value;
+        private final Comparable<Object> boxedValue;
+
+        IntTerm(int colIdx, int operator, int value) {
+            this.colIdx = colIdx;
+            this.operator = operator;
+            this.value = value;
+            this.boxedValue = comparable(value);
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            Object field = fields[colIdx];
+            return field != null && satisfies(operator, Integer.compare((Integer) field, value));
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            ColumnVector column = page.getColumn(colIdx);
+            if (column instanceof ColumnVector.IntColumn)
+                return !column.isNull(row)
+                        && satisfies(operator, Integer.compare(((ColumnVector.IntColumn) column).getInt(row), value));
+            return matchesColumn(column, row, operator, value);
+        }
+
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            return zoneMap.mayMatch(colIdx, operator, boxedValue);
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            return filterMayContain(bloomFilters, colIdx, operator, Integer.hashCode(value));
+        }
+    }
+
+    static final class DoubleTerm extends RowPredicate {
+        private final int colIdx;
+        private final int operator;
+        private final double value;
+        private final Comparable<Object> boxedValue;
+
+        DoubleTerm(int colIdx, int operator, double value) {
+            this.colIdx = colIdx;
+            this.operator = operator;
+            this.value = value;
+            this.boxedValue = comparable(value);
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            Object field = fields[colIdx];
+            return field != null && satisfies(operator, Double.compare((Double) field, value));
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            ColumnVector column = page.getColumn(colIdx);
+            if (column instanceof ColumnVector.DoubleColumn)
+                return !column.isNull(row) && satisfies(operator,
+                        Double.compare(((ColumnVector.DoubleColumn) column).getDouble(row), value));
+            return matchesColumn(column, row, operator, value);
+        }
+
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            return zoneMap.mayMatch(colIdx, operator, boxedValue);
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            return filterMayContain(bloomFilters, colIdx, operator, Double.hashCode(value));
+        }
+    }
+
+    static final class ObjectTerm extends RowPredicate {
+        private final int colIdx;
+        private final int operator;
+        private final Comparable<Object> value;
+
+        ObjectTerm(int colIdx, int operator, Comparable<Object> value) {
+            this.colIdx = colIdx;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            Object field = fields[colIdx];
+            return field != null && satisfies(operator, -Integer.signum(value.compareTo(field)));
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            return matchesColumn(page.getColumn(colIdx), row, operator, value);
+        }
+
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            return zoneMap.mayMatch(colIdx, operator, value);
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            return filterMayContain(bloomFilters, colIdx, operator, value.hashCode());
+        }
+    }
+
+    static final class And extends RowPredicate {
+        private final RowPredicate[] terms;
+
+        private And(RowPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        static RowPredicate of(List<RowPredicate> terms) {
+            return terms.size() == 1 ? terms.get(0) : new And(terms.toArray(new RowPredicate[0]));
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            for (RowPredicate term : terms) {
+                if (!term.matches(fields))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            for (RowPredicate term : terms) {
+                if (!term.matches(page, row))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            for (RowPredicate term : terms) {
+                if (!term.mayMatch(zoneMap))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            for (RowPredicate term : terms) {
+                if (!term.mayContain(bloomFilters))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    static final class Or extends RowPredicate {
+        private final RowPredicate[] terms;
+
+        private Or(RowPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        static RowPredicate of(List<RowPredicate> terms) {
+            return terms.size() == 1 ? terms.get(0) : new Or(terms.toArray(new RowPredicate[0]));
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            for (RowPredicate term : terms) {
+                if (term.matches(fields))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            for (RowPredicate term : terms) {
+                if (term.matches(page, row))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            for (RowPredicate term : terms) {
+                if (term.mayMatch(zoneMap))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            for (RowPredicate term : terms) {
+                if (term.mayContain(bloomFilters))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    static final class Xor extends RowPredicate {
+        private final RowPredicate[] terms;
+
+        private Xor(RowPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        static RowPredicate of(List<RowPredicate> terms) {
+            return terms.size() == 1 ? terms.get(0) : new Xor(terms.toArray(new RowPredicate[0]));
+        }
+
+        @Override
+        public boolean matches(Object[] fields) {
+            boolean result = false;
+            for (RowPredicate term : terms) {
+                result ^= term.matches(fields);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean matches(Page page, int row) {
+            boolean result = false;
+            for (RowPredicate term : terms) {
+                result ^= term.matches(page, row);
+            }
+            return result;
+        }
+
+        // an odd number of terms must hold, so at least one must be able to
+        @Override
+        public boolean mayMatch(ZoneMap zoneMap) {
+            for (RowPredicate term : terms) {
+                if (term.mayMatch(zoneMap))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean mayContain(BloomFilter[] bloomFilters) {
+            for (RowPredicate term : terms) {
+                if (term.mayContain(bloomFilters))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
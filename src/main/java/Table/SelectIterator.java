@@ -0,0 +1,148 @@
+package Table;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor over the result of a select query.
+ * Candidate pages are loaded one at a time through the buffer pool as the
+ * caller advances, and each row is tested against the query's conditions only
+ * when it is reached, so the result is never held in memory as a whole. Rows
+ * are tested in place in the page's columns and a {@link Tuple} is only built
+ * for the rows that match.
+ * An I/O error while loading a page is thrown as an
+ * {@link UncheckedIOException}.
+ */
+public class SelectIterator implements Iterator<Tuple> {
+    private final Table table;
+    private final List<Integer> pages;
+    private final RowPredicate condition;
+    private final KeyRange keyRange;
+    private final int clusteringKeyIndex;
+
+    private int pageIdx;
+    private Page currPage;
+    private int rowIdx;
+    private int rowEnd;
+    private Tuple nextRow;
+
+    // the table's pages when removedPageCount was last read, rebuilt only when
+    // a page is removed while the query runs
+    private HashSet<Integer> tablePages;
+    private int removedPageCount;
+
+    /**
+     * @param table     the table being queried
+     * @param pages     the page numbers that may hold matching rows, in the order
+     *                  they are read
+     * @param condition the condition a row must satisfy to be returned
+     */
+    public SelectIterator(Table table, List<Integer> pages, RowPredicate condition) {
+        this(table, pages, condition, null, -1);
+    }
+
+    /**
+     * @param table              the table being queried
+     * @param pages              the page numbers that may hold matching rows, in
+     *                           clustering key order
+     * @param condition          the condition a row must satisfy to be returned
+     * @param keyRange           the clustering key range of the query, or null
+     * @param clusteringKeyIndex the index of the clustering key's field
+     */
+    public SelectIterator(Table table, List<Integer> pages, RowPredicate condition, KeyRange keyRange,
+            int clusteringKeyIndex) {
+        this.table = table;
+        this.pages = pages;
+        this.condition = condition;
+        this.keyRange = keyRange;
+        this.clusteringKeyIndex = clusteringKeyIndex;
+        this.pageIdx = 0;
+        this.currPage = null;
+        this.rowIdx = 0;
+        this.nextRow = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow != null)
+            return true;
+
+        try {
+            nextRow = advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Tuple next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        Tuple row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    /**
+     * @return the page numbers the table holds now
+     */
+    private HashSet<Integer> tablePages() {
+        if (tablePages == null || removedPageCount != table.getRemovedPageCount()) {
+            removedPageCount = table.getRemovedPageCount();
+            tablePages = new HashSet<>(table.pageNums);
+        }
+        return tablePages;
+    }
+
+    /**
+     * @return the next matching row, or null when all pages have been read
+     */
+    private Tuple advance() throws IOException, ClassNotFoundException {
+        while (true) {
+            if (currPage == null) {
+                if (pageIdx >= pages.size())
+                    return null;
+
+                // a page removed since the query started is skipped
+                int pageNum = pages.get(pageIdx++);
+                if (!tablePages().contains(pageNum))
+                    continue;
+                currPage = table.loadPage(pageNum);
+                if (currPage == null)
+                    continue;
+
+                // a columnar page stores its zone map
+                if (currPage.getZoneMap() != null && !condition.mayMatch(currPage.getZoneMap())) {
+                    currPage = null;
+                    continue;
+                }
+
+                rowIdx = 0;
+                rowEnd = currPage.size();
+                if (keyRange != null) {
+                    // only the rows within the key range are tested; once a page
+                    // has rows above the range, the following pages do too
+                    rowIdx = keyRange.firstRow(currPage, clusteringKeyIndex);
+                    rowEnd = keyRange.endRow(currPage, clusteringKeyIndex);
+                    if (rowEnd < currPage.size())
+                        pageIdx = pages.size();
+                }
+            }
+
+            while (rowIdx < rowEnd && rowIdx < currPage.size()) {
+                int row = rowIdx++;
+                if (condition.matches(currPage, row))
+                    return currPage.getTuple(row);
+            }
+            currPage = null;
+        }
+    }
+}
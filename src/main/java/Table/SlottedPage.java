@@ -0,0 +1,190 @@
+package Table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary on-disk layout of a page.
+ *
+ * <pre>
+ * header    : magic (int) | version (short) | reserved (short) | tupleCount (int) | fieldCount (int)
+ *             | nextSlot (int)
+ * slot dir  : tupleCount x (slot (int) | record offset (int)), in clustering key order;
+ *             offsets are relative to the start of the file
+ * records   : fieldCount x (type tag (byte) | payload)
+ * </pre>
+ *
+ * Payloads are 4 bytes for Integer, 8 bytes for Double, and a length-prefixed
+ * UTF-8 byte sequence for String. A page is read and written as a single buffer
+ * through a {@link FileChannel}. Version 1 files, which have no slots, are
+ * still readable; their tuples get slots in row order. Version 3 files are
+ * columnar pages, read by {@link ColumnarPage}.
+ */
+public class SlottedPage {
+    public static final String EXTENSION = ".page";
+
+    static final int MAGIC = 0x44425047; // "DBPG"
+    private static final short VERSION = 2;
+    static final int HEADER_SIZE = 20;
+    private static final int SLOT_ENTRY_SIZE = 8;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+
+    private SlottedPage() {
+    }
+
+    /**
+     * Encodes the rows of a page and writes them to the given file.
+     *
+     * @param path the file to write the page to
+     * @param page the page to write
+     * @throws IOException if a field has an unsupported type or the write fails
+     */
+    public static void write(Path path, Page page) throws IOException {
+        int tupleCount = page.size();
+        int fieldCount = page.getFieldCount();
+
+        // encode strings once, they are needed for sizing and writing
+        byte[][][] encodedStrings = new byte[tupleCount][][];
+        int size = HEADER_SIZE + SLOT_ENTRY_SIZE * tupleCount;
+        for (int row = 0; row < tupleCount; row++) {
+            encodedStrings[row] = new byte[fieldCount][];
+            for (int col = 0; col < fieldCount; col++) {
+                size += 1 + payloadSize(page.getField(row, col), encodedStrings[row], col);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(tupleCount);
+        buffer.putInt(fieldCount);
+        buffer.putInt(page.getNextSlot());
+
+        int slotDirectory = buffer.position();
+        buffer.position(slotDirectory + SLOT_ENTRY_SIZE * tupleCount);
+
+        for (int row = 0; row < tupleCount; row++) {
+            buffer.putInt(slotDirectory + SLOT_ENTRY_SIZE * row, page.getSlot(row));
+            buffer.putInt(slotDirectory + SLOT_ENTRY_SIZE * row + 4, buffer.position());
+            for (int col = 0; col < fieldCount; col++) {
+                writeField(buffer, page.getField(row, col), encodedStrings[row][col]);
+            }
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a page file.
+     *
+     * @param path the file to read the page from
+     * @param name the name of the page
+     * @return the page stored in the file
+     * @throws IOException if the file is not a valid page file or the read fails
+     */
+    public static Page read(Path path, String name) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC)
+            throw new IOException("Invalid page file " + path);
+        short version = buffer.getShort();
+        if (version == ColumnarPage.VERSION)
+            return ColumnarPage.read(buffer, name);
+        if (version != 1 && version != VERSION)
+            throw new IOException("Unsupported page file version " + path);
+        buffer.getShort();
+
+        int tupleCount = buffer.getInt();
+        int fieldCount = buffer.getInt();
+        int nextSlot = version == 1 ? tupleCount : buffer.getInt();
+        int slotEntrySize = version == 1 ? 4 : SLOT_ENTRY_SIZE;
+        int slotDirectory = buffer.position();
+
+        Page page = new Page(name);
+        Object[] fields = new Object[fieldCount];
+        for (int row = 0; row < tupleCount; row++) {
+            int entry = slotDirectory + slotEntrySize * row;
+            int slot = version == 1 ? row : buffer.getInt(entry);
+            buffer.position(buffer.getInt(version == 1 ? entry : entry + 4));
+
+            for (int col = 0; col < fieldCount; col++) {
+                fields[col] = readField(buffer);
+            }
+            page.insertRow(row, fields, slot);
+        }
+        page.setNextSlot(nextSlot);
+        return page;
+    }
+
+    private static int payloadSize(Object field, byte[][] encodedStrings, int col) throws IOException {
+        if (field == null)
+            return 0;
+        if (field instanceof Integer)
+            return 4;
+        if (field instanceof Double)
+            return 8;
+        if (field instanceof String) {
+            encodedStrings[col] = ((String) field).getBytes(StandardCharsets.UTF_8);
+            return 4 + encodedStrings[col].length;
+        }
+
+        throw new IOException("Unsupported column type " + field.getClass().getName());
+    }
+
+    private static void writeField(ByteBuffer buffer, Object field, byte[] encodedString) {
+        if (field == null) {
+            buffer.put(TYPE_NULL);
+        } else if (field instanceof Integer) {
+            buffer.put(TYPE_INTEGER);
+            buffer.putInt((Integer) field);
+        } else if (field instanceof Double) {
+            buffer.put(TYPE_DOUBLE);
+            buffer.putDouble((Double) field);
+        } else {
+            buffer.put(TYPE_STRING);
+            buffer.putInt(encodedString.length);
+            buffer.put(encodedString);
+        }
+    }
+
+    private static Object readField(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_INTEGER:
+                return buffer.getInt();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            case TYPE_STRING:
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            default:
+                throw new IOException("Unknown field type tag " + type);
+        }
+    }
+}
@@ -1,14 +1,29 @@
 package Table;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
 
+import Engine.KeyComparator;
+import Engine.Metadata;
 import Engine.SQLTerm;
+import Engine.Schema;
 import Engine.Utils;
 import Exceptions.DBAppException;
+import Table.BTree.BTree;
+import Table.BTree.RangeCursor;
 
 /**
  * The Table class represents a table in a database.
@@ -16,6 +31,10 @@ import Exceptions.DBAppException;
  * It also maintains a B+ tree index for each column in the table.
  */
 public class Table extends FileHandler {
+    // Kept identical to the layout tables were first saved with, so every saved
+    // table stays readable; readObject fills in what an older header lacks
+    private static final long serialVersionUID = -5816371502880648852L;
+
     // The name of the table
     public String name;
 
@@ -24,7 +43,44 @@ public class Table extends FileHandler {
 
     public Vector<Integer> pageNums;
 
-    public Hashtable<Integer, String[]> pageRanges;
+    // page number -> { smallest, largest } clustering key of the page
+    public Hashtable<Integer, Object[]> pageRanges;
+
+    // page number -> range and null count of every column of the page; a page
+    // without an entry, such as one saved before zone maps were kept, is read by
+    // every select
+    private Hashtable<Integer, ZoneMap> zoneMaps;
+
+    // Columns with a Bloom filter on every page, null if none
+    private Vector<String> bloomFilterColumns;
+
+    // False positive rate the Bloom filters of the table are sized for
+    private double bloomFilterFalsePositiveRate;
+
+    // page number -> Bloom filter of each column, read from the page's filter
+    // file on first use; NO_BLOOM_FILTERS if the page has none
+    private transient Hashtable<Integer, BloomFilter[]> bloomFilters;
+
+    private static final BloomFilter[] NO_BLOOM_FILTERS = new BloomFilter[0];
+
+    // Index key (columns joined by commas) of each composite index, null if none
+    private Vector<String> compositeIndices;
+
+    // Whether pages are stored column by column
+    private boolean columnar;
+
+    // Whether pageNums, pageRanges or zoneMaps changed since the table was last saved
+    private transient boolean dirty;
+
+    // Number of pages removed from pageNums since the table was loaded
+    private transient int removedPageCount;
+
+    // Indices read since the table was loaded, by column or composite index
+    // key; they stay open so a lookup or a change touches only what it needs
+    private transient Hashtable<String, ColumnIndex> openIndices;
+
+    // Keys of the open indices changed since they were last saved
+    private transient HashSet<String> changedIndices;
 
     /**
      * Constructs a new Table with the given name, clustering key, and column types.
@@ -32,10 +88,22 @@ public class Table extends FileHandler {
      * @throws IOException
      */
     public Table(String name, String clusteringKeyColumn) throws IOException {
+        this(name, clusteringKeyColumn, false);
+    }
+
+    /**
+     * Constructs a new Table with the given name, clustering key and page layout.
+     *
+     * @param columnar whether the pages of the table are stored column by column
+     * @throws IOException
+     */
+    public Table(String name, String clusteringKeyColumn, boolean columnar) throws IOException {
         this.name = name;
         this.clusteringKey = clusteringKeyColumn;
+        this.columnar = columnar;
         this.pageNums = new Vector<Integer>();
-        this.pageRanges = new Hashtable<Integer, String[]>();
+        this.pageRanges = new Hashtable<Integer, Object[]>();
+        this.zoneMaps = new Hashtable<Integer, ZoneMap>();
         this.saveTable();
     }
 
@@ -53,6 +121,13 @@ public class Table extends FileHandler {
         this.clusteringKey = clusteringKey;
     }
 
+    /**
+     * @return true if the pages of the table are stored column by column.
+     */
+    public boolean isColumnar() {
+        return columnar;
+    }
+
     public int getLastPageNum() {
         if (pageNums.size() == 0)
             return -1;
@@ -60,6 +135,21 @@ public class Table extends FileHandler {
         return pageNums.get(pageNums.size() - 1);
     }
 
+    /**
+     * Page numbers are not ordered like pageNums once pages are inserted between
+     * existing pages, so a new page takes the largest page number plus one.
+     *
+     * @return an unused page number
+     */
+    public int getNextPageNum() {
+        int maxPageNum = -1;
+        for (int pageNum : pageNums) {
+            maxPageNum = Math.max(maxPageNum, pageNum);
+        }
+
+        return maxPageNum + 1;
+    }
+
     /**
      * Adds a new page to the table with the given tuple as the first row.
      * The page is saved with a unique name based on the number of pages in the
@@ -68,44 +158,122 @@ public class Table extends FileHandler {
      * @param newRow the tuple to be added as the first row of the new page
      * @throws IOException if an I/O error occurs while saving the page
      */
-    public void addPage(Hashtable<String, String> htblColNameType, Tuple newRow) throws IOException {
-        int pageNum = getLastPageNum() + 1;
+    public void addPage(Schema schema, Tuple newRow) throws IOException {
+        int pageNum = getNextPageNum();
         pageNums.add(pageNum);
 
         Page page = new Page("page " + pageNum, newRow);
+        page.setColumnar(columnar);
         page.savePage(this.name);
-        updatePageRanges(htblColNameType, page);
+        updatePageRanges(schema, page);
     }
 
     /**
-     * Deserializes a specific page from the table.
+     * Loads a specific page of the table through the buffer pool.
      *
      * @param pageNum the page number to load
-     * @return the deserialized page
+     * @return the loaded page
      * @throws IOException            if an I/O error occurs while reading the page
      *                                file
      * @throws ClassNotFoundException if the class of a serialized object cannot be
      *                                found
      */
     public Page loadPage(int pageNum) throws IOException, ClassNotFoundException {
-        String relativePagePath = "src\\main\\java\\Table\\" + this.name + "\\Pages\\";
-        return (Page) super.loadInstance(relativePagePath, "page " + pageNum);
+        Page page = BufferPool.getInstance().fetchPage(this.name, pageNum);
+        if (page != null)
+            page.setColumnar(columnar);
+        return page;
     }
 
     /**
-     * Loads the BPlusTreeIndex for the specified column.
+     * @param pageNum the page number of the new page
+     * @return an empty page with the table's page layout
+     */
+    private Page newPage(int pageNum) {
+        Page page = new Page("page " + pageNum);
+        page.setColumnar(columnar);
+        return page;
+    }
+
+    /**
+     * Loads the index on the specified column. The index is read from its file
+     * the first time it is used and stays open on the table afterwards; changes
+     * to it are saved by {@link #saveIndices()}. An index file that cannot be
+     * read, because it was saved in an older layout or was left empty or cut
+     * short by a crash, is rebuilt from the rows of the table, and so is an
+     * index whose layout is not the current one.
      *
      * @param col the name of the column for which the index should be loaded
-     * @return the BPlusTreeIndex object representing the index for the specified
-     *         column
+     * @return the index on the specified column, a B+ tree or a hash index, or
+     *         null if the column is not indexed
      * @throws ClassNotFoundException if the class of the serialized object cannot
      *                                be found
      * @throws IOException            if an I/O error occurs while reading the
      *                                serialized object
      */
-    public BPlusTreeIndex loadIndex(String col) throws ClassNotFoundException, IOException {
+    public ColumnIndex loadIndex(String col) throws ClassNotFoundException, IOException {
+        if (openIndices == null)
+            openIndices = new Hashtable<>();
+        ColumnIndex colIdx = openIndices.get(col);
+        if (colIdx == null) {
+            colIdx = readIndex(col);
+            if (colIdx != null)
+                openIndices.put(col, colIdx);
+        }
+        return colIdx;
+    }
+
+    private ColumnIndex readIndex(String col) throws ClassNotFoundException, IOException {
         String relativeIndexPath = "src\\main\\java\\Table\\" + this.name + "\\Indicies\\";
-        return (BPlusTreeIndex) super.loadInstance(relativeIndexPath, col);
+        ColumnIndex colIdx;
+        try {
+            colIdx = (ColumnIndex) super.loadInstance(relativeIndexPath, col);
+        } catch (IOException e) {
+            return rebuildIndex(col);
+        }
+
+        // a B+ tree index needs its node file, saved next to it
+        if (colIdx instanceof BPlusTreeIndex && (!((BPlusTreeIndex<?>) colIdx).isCurrentFormat()
+                || !((BPlusTreeIndex<?>) colIdx).tree.hasNodeFile()))
+            return rebuildIndex(col);
+        return colIdx;
+    }
+
+    /**
+     * Creates every index of the table again from its rows, for indices that
+     * may not match the pages on disk.
+     */
+    public void rebuildIndices() throws ClassNotFoundException, IOException {
+        List<String> keys = Metadata.getInstance().getIndexedColumns(this.name);
+        if (compositeIndices != null)
+            keys.addAll(compositeIndices);
+
+        if (openIndices == null)
+            openIndices = new Hashtable<>();
+        for (String key : keys) {
+            openIndices.put(key, rebuildIndex(key));
+        }
+        if (changedIndices != null)
+            changedIndices.removeAll(keys);
+    }
+
+    /**
+     * Creates the index on a column again from the rows of the table, with the
+     * index type recorded in the metadata. A composite index is created again
+     * with all its columns as key columns, since which of them were included
+     * columns is only saved in the index.
+     *
+     * @param col the name of the column, or the key of a composite index
+     * @return the new index
+     */
+    private ColumnIndex rebuildIndex(String col) throws ClassNotFoundException, IOException {
+        Metadata metadata = Metadata.getInstance();
+        Schema schema = metadata.getSchema(this.name);
+        if (compositeIndices != null && compositeIndices.contains(col))
+            return new CompositeIndex(this, schema, col.split(","), new String[0], col);
+        if (HashIndex.TYPE.equals(metadata.getIndexType(this.name, col)))
+            return new HashIndex(this, col);
+        return new BPlusTreeIndex<>(this, col, schema.getColType(col));
     }
 
     /**
@@ -117,15 +285,60 @@ public class Table extends FileHandler {
         // Create the directory path with the table name
         String directoryPath = "src\\main\\java\\Table\\" + this.name + "\\";
         super.saveInstance(directoryPath, this.name);
+        this.dirty = false;
+    }
+
+    /**
+     * Marks the table header as modified, it is saved at the next checkpoint.
+     */
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    /**
+     * @return true if the table header changed since it was last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Reads a saved table header. A header read from disk matches its file, so
+     * the table starts clean. Page ranges saved as strings, before they were
+     * typed, are parsed to the type of the clustering key in the metadata and
+     * saved typed at the next checkpoint.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.dirty = false;
+
+        // Fields added after a header was saved are missing from it. Its pages
+        // have no zone maps until they next change; no Bloom filter columns or
+        // composite indices (null) and columnar false mean the table has none
+        // and stores its pages row by row, as it did.
+        if (zoneMaps == null)
+            zoneMaps = new Hashtable<Integer, ZoneMap>();
+
+        String keyType = Metadata.getInstance().loadColumnTypes(this.name).get(this.clusteringKey);
+        KeyComparator keyComparator = KeyComparator.forType(keyType == null ? "java.lang.String" : keyType);
+        for (Map.Entry<Integer, Object[]> entry : pageRanges.entrySet()) {
+            Object[] range = entry.getValue();
+            if (range instanceof String[]) {
+                entry.setValue(new Object[] { keyComparator.parse((String) range[0]),
+                        keyComparator.parse((String) range[1]) });
+                this.dirty = true;
+            }
+        }
     }
 
     /**
      * Inserts new row in correct position.
      * Handle different cases of inserting in new page, or in existing page.
+     * A full target page is split in two instead of shifting rows into the
+     * following pages.
      * Insert new row and its position for all available BPlusTree indicies.
      * 
-     * @param htblColNameType  a Hashtable representing the column names and their
-     *                         corresponding data types.
+     * @param schema           the schema of the table
      * @param htblColNameValue a Hashtable representing the column names and their
      *                         corresponding values for the new row.
      * @throws DBAppException         if an error occurs while performing the
@@ -135,169 +348,452 @@ public class Table extends FileHandler {
      * @throws IOException            if an I/O error occurs during
      *                                serialization/deserialization of a page.
      */
-    public void insertRow(Hashtable<String, String> htblColNameType, Hashtable<String, Object> htblColNameValue)
+    public void insertRow(Schema schema, Hashtable<String, Object> htblColNameValue)
             throws DBAppException, ClassNotFoundException, IOException {
-        Tuple newRow = Utils.convertInputToTuple(htblColNameType, htblColNameValue);
-        Hashtable<String, BPlusTreeIndex> indicies = loadAllBPlusTrees(htblColNameType);
-        int[] insertionPos = getInsertionPos(newRow, htblColNameType);
-
-        insertIntoBPlusTrees(indicies, htblColNameValue, insertionPos[0], false);
+        Tuple newRow = Utils.convertInputToTuple(schema, htblColNameValue);
+        Hashtable<String, ColumnIndex> indicies = loadAllIndices();
+        int[] insertionPos = getInsertionPos(newRow, schema);
 
         if (insertionPos[0] >= pageNums.size()) {
             // insert new row in new page
-            addPage(htblColNameType, newRow);
+            addPage(schema, newRow);
+            addRowRefs(indicies, schema, newRow, getLastPageNum());
+            markIndicesChanged(indicies.keySet());
             return;
         }
 
         Page targetPage = loadPage(pageNums.get(insertionPos[0]));
-        if (insertionPos[1] >= targetPage.getTuples().size()) {
-            targetPage.addTuple(newRow);
-            targetPage.savePage(this.name);
-            updatePageRanges(htblColNameType, targetPage);
-            return;
+        if (targetPage.isFull()) {
+            Page fullPage = targetPage;
+            BufferPool.getInstance().pinPage(this.name, fullPage);
+            try {
+                Page newPage = splitPage(indicies, schema, insertionPos[0], fullPage);
+
+                // the new row goes into the half that covers its position
+                int leftSize = fullPage.size();
+                if (insertionPos[1] > leftSize) {
+                    insertionPos[0]++;
+                    insertionPos[1] -= leftSize;
+                    targetPage = newPage;
+                }
+            } finally {
+                BufferPool.getInstance().unpinPage(this.name, fullPage);
+            }
         }
 
-        shiftRowsDownAndInsert(indicies, htblColNameType, insertionPos, newRow, targetPage);
-        updatePageRanges(htblColNameType, targetPage);
+        targetPage.insertTuple(insertionPos[1], newRow);
+        targetPage.savePage(this.name);
+        updatePageRanges(schema, targetPage);
+
+        addRowRefs(indicies, schema, newRow, pageNums.get(insertionPos[0]));
+        markIndicesChanged(indicies.keySet());
     }
 
-    private Hashtable<String, BPlusTreeIndex> loadAllBPlusTrees(Hashtable<String, String> htblColNameType)
-            throws ClassNotFoundException, IOException {
-        Hashtable<String, BPlusTreeIndex> indices = new Hashtable<>();
-        for (String col : htblColNameType.keySet()) {
-            BPlusTreeIndex colIdx = loadIndex(col);
-            if (colIdx != null) {
-                indices.put(col, colIdx);
-            }
+    /**
+     * Splits a full page by moving its upper half into a new page placed right
+     * after it. Only the two pages' ranges and the moved rows' index references
+     * change, whatever the position of the page in the table.
+     *
+     * @param indicies        the indices of the table
+     * @param schema          the schema of the table
+     * @param pageIdx         the position of the full page in pageNums
+     * @param fullPage        the page to split
+     * @return the new page holding the upper half of the rows
+     * @throws IOException if an I/O error occurs while saving the pages
+     */
+    private Page splitPage(Hashtable<String, ColumnIndex> indicies, Schema schema,
+            int pageIdx, Page fullPage) throws IOException {
+        int fullPageNum = pageNums.get(pageIdx);
+        int newPageNum = getNextPageNum();
+        pageNums.add(pageIdx + 1, newPageNum);
+
+        Vector<Tuple> rows = fullPage.getTuples();
+        int mid = rows.size() / 2;
+        Page newPage = newPage(newPageNum);
+        List<Tuple> upperRows = rows.subList(mid, rows.size());
+
+        for (Tuple row : upperRows) {
+            removeRowRefs(indicies, schema, row, fullPageNum);
+            newPage.assignSlot(row);
+            addRowRefs(indicies, schema, row, newPageNum);
         }
-        return indices;
+        newPage.setTuples(upperRows);
+        fullPage.setTuples(rows.subList(0, mid));
+
+        fullPage.savePage(this.name);
+        newPage.savePage(this.name);
+        updatePageRanges(schema, fullPage);
+        updatePageRanges(schema, newPage);
+
+        return newPage;
     }
 
-    private void insertIntoBPlusTrees(Hashtable<String, BPlusTreeIndex> indicies,
-            Hashtable<String, Object> htblColNameValue,
-            int pageNumIdx, boolean shifted) throws ClassNotFoundException, IOException {
-        // insert into BPlusTree of each index if found
-        for (String col : htblColNameValue.keySet()) {
-            BPlusTreeIndex colIdx = indicies.get(col);
-            if (colIdx == null) {
-                continue;
-            }
-            Vector<String> pageRefs = new Vector<>();
-            if (htblColNameValue.get(col) instanceof Integer) {
-                pageRefs = (Vector<String>) colIdx.tree.search((Integer) htblColNameValue.get(col));
-            } else if (htblColNameValue.get(col) instanceof Double) {
-                pageRefs = (Vector<String>) colIdx.tree.search((Double) htblColNameValue.get(col));
-
-            } else if (htblColNameValue.get(col) instanceof String) {
-                pageRefs = (Vector<String>) colIdx.tree.search(htblColNameValue.get(col).toString());
-            }
+    /**
+     * Inserts a batch of rows in one pass over the table.
+     * The batch is sorted by clustering key and merged into the pages it belongs
+     * to; pages that overflow are split into new pages placed right after them.
+     * Every touched page and index is saved once for the whole batch.
+     *
+     * @param schema          the schema of the table
+     * @param rows            the rows to insert, each mapping column names to
+     *                        values.
+     * @throws DBAppException         if an error occurs while performing the
+     *                                database operation.
+     * @throws ClassNotFoundException if the specified class cannot be found during
+     *                                deserialization of a page.
+     * @throws IOException            if an I/O error occurs while loading or
+     *                                saving a page or an index.
+     */
+    public void insertRows(Schema schema, List<Hashtable<String, Object>> rows)
+            throws DBAppException, ClassNotFoundException, IOException {
+        int clusteringKeyIndex = schema.getClusteringKeyIndex();
+        KeyComparator keyComparator = KeyComparator.forType(schema.getColType(clusteringKeyIndex));
+        Comparator<Tuple> byClusteringKey = (a, b) -> keyComparator.compare(a.getFields()[clusteringKeyIndex],
+                b.getFields()[clusteringKeyIndex]);
+
+        Vector<Tuple> newRows = new Vector<>();
+        for (Hashtable<String, Object> row : rows) {
+            newRows.add(Utils.convertInputToTuple(schema, row));
+        }
+        newRows.sort(byClusteringKey);
+        Set<Tuple> newRowSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        newRowSet.addAll(newRows);
+
+        Hashtable<String, ColumnIndex> indicies = loadAllIndices();
+
+        if (pageNums.isEmpty() && !newRows.isEmpty()) {
+            int pageNum = getNextPageNum();
+            pageNums.add(pageNum);
+            Page firstPage = newPage(pageNum);
+            placeRows(indicies, schema, 0, firstPage, newRows, newRowSet);
+            newRows.clear();
+        }
 
-            if (pageRefs == null) {
-                pageRefs = new Vector<>();
+        int next = 0;
+        for (int pageIdx = 0; pageIdx < pageNums.size() && next < newRows.size(); pageIdx++) {
+            // rows smaller than the next page's first key belong to this page
+            int end = newRows.size();
+            if (pageIdx < pageNums.size() - 1) {
+                Object nextPageMin = pageRanges.get(pageNums.get(pageIdx + 1))[0];
+                end = next;
+                while (end < newRows.size()
+                        && keyComparator.compare(newRows.get(end).getFields()[clusteringKeyIndex], nextPageMin) < 0) {
+                    end++;
+                }
             }
+            if (end == next)
+                continue;
 
-            if (shifted) {
-                pageRefs.remove("page " + pageNums.get(pageNumIdx - 1));
+            Page currPage = loadPage(pageNums.get(pageIdx));
+            Vector<Tuple> pageRows = currPage.getTuples();
+            Vector<Tuple> merged = new Vector<>(pageRows.size() + end - next);
+            int i = 0;
+            while (i < pageRows.size() || next < end) {
+                if (next == end || (i < pageRows.size()
+                        && byClusteringKey.compare(pageRows.get(i), newRows.get(next)) <= 0)) {
+                    merged.add(pageRows.get(i++));
+                } else {
+                    merged.add(newRows.get(next++));
+                }
             }
-            if (pageNumIdx >= pageNums.size())
-                pageRefs.add("page " + (getLastPageNum() + 1));
-            else {
-                pageRefs.add("page " + pageNums.get(pageNumIdx));
+
+            pageIdx = placeRows(indicies, schema, pageIdx, currPage, merged, newRowSet);
+        }
+
+        markIndicesChanged(indicies.keySet());
+    }
+
+    /**
+     * Stores sorted rows in a page, spilling rows that do not fit into new pages
+     * placed right after it, and records the new rows and the moved rows in the
+     * indices.
+     *
+     * @return the index in pageNums of the last page written
+     */
+    private int placeRows(Hashtable<String, ColumnIndex> indicies, Schema schema,
+            int pageIdx, Page page, Vector<Tuple> rows, Set<Tuple> newRowSet) throws IOException {
+        int originalPageNum = pageNums.get(pageIdx);
+
+        for (int start = 0; start < rows.size(); start += Page.maximumRowsCountInPage) {
+            int end = Math.min(start + Page.maximumRowsCountInPage, rows.size());
+            Page targetPage = page;
+            if (start > 0) {
+                int pageNum = getNextPageNum();
+                pageNums.add(++pageIdx, pageNum);
+                targetPage = newPage(pageNum);
             }
-            if (htblColNameValue.get(col) instanceof Integer) {
-                colIdx.tree.delete((Integer) htblColNameValue.get(col));
-                colIdx.tree.insert((Integer) htblColNameValue.get(col), pageRefs);
-            } else if (htblColNameValue.get(col) instanceof Double) {
-                colIdx.tree.delete((Double) htblColNameValue.get(col));
-                colIdx.tree.insert((Double) htblColNameValue.get(col), pageRefs);
-
-            } else if (htblColNameValue.get(col) instanceof String) {
-                colIdx.tree.delete(htblColNameValue.get(col).toString());
-                colIdx.tree.insert(htblColNameValue.get(col).toString(), pageRefs);
+            List<Tuple> pageRows = rows.subList(start, end);
+
+            int targetPageNum = pageNums.get(pageIdx);
+            for (Tuple row : pageRows) {
+                if (newRowSet.contains(row)) {
+                    targetPage.assignSlot(row);
+                    addRowRefs(indicies, schema, row, targetPageNum);
+                } else if (targetPageNum != originalPageNum) {
+                    removeRowRefs(indicies, schema, row, originalPageNum);
+                    targetPage.assignSlot(row);
+                    addRowRefs(indicies, schema, row, targetPageNum);
+                }
             }
+            targetPage.setTuples(pageRows);
 
-            colIdx.saveTree();
+            targetPage.savePage(this.name);
+            updatePageRanges(schema, targetPage);
         }
+
+        return pageIdx;
     }
 
     /**
-     * Shifts the rows down in the target page and inserts a new tuple at the
-     * specified position.
-     * 
-     * @param targetPageNum The page number of the target page.
-     * @param targetRowNum  The row number in the target page where the new tuple
-     *                      should be inserted.
-     * @param newRow        The new tuple to be inserted.
-     * @throws DBAppException         If adding a tuple in a full page.
-     * @throws IOException            If an I/O error occurs.
-     * @throws ClassNotFoundException If the class of a serialized object cannot be
-     *                                found.
+     * Adds the row id of a row to each index, without saving the indices.
      */
-    private void shiftRowsDownAndInsert(Hashtable<String, BPlusTreeIndex> indicies,
-            Hashtable<String, String> htblColNameType, int[] targetPageIdxRowNum,
-            Tuple newRow, Page targetPage)
-            throws DBAppException, IOException, ClassNotFoundException {
-        Tuple curr, prev = targetPage.getTuples().get(targetPageIdxRowNum[1]);
-        targetPage.getTuples().set(targetPageIdxRowNum[1], newRow);
+    private void addRowRefs(Hashtable<String, ColumnIndex> indicies, Schema schema,
+            Tuple row, int pageNum) {
+        long rowId = RowIdList.rowId(pageNum, row.getSlot());
+        for (ColumnIndex colIdx : indicies.values()) {
+            colIdx.addRowId(colIdx.keyOf(row.getFields(), schema), rowId);
+        }
+    }
 
-        for (int row = targetPageIdxRowNum[1] + 1; row < targetPage.getTuples().size(); row++) {
-            curr = targetPage.getTuples().get(row);
-            targetPage.getTuples().set(row, prev);
-            prev = curr;
+    /**
+     * Removes the row id of a row from each index, without saving the indices.
+     */
+    private void removeRowRefs(Hashtable<String, ColumnIndex> indicies,
+            Schema schema, Tuple row, int pageNum) {
+        long rowId = RowIdList.rowId(pageNum, row.getSlot());
+        for (ColumnIndex colIdx : indicies.values()) {
+            colIdx.removeRowId(colIdx.keyOf(row.getFields(), schema), rowId);
         }
+    }
 
-        if (targetPage.getTuples().size() < Page.maximumRowsCountInPage) {
-            targetPage.addTuple(prev);
-            targetPage.savePage(this.name);
+    private Hashtable<String, ColumnIndex> loadAllIndices()
+            throws ClassNotFoundException, IOException {
+        Hashtable<String, ColumnIndex> indices = new Hashtable<>();
+        for (String col : Metadata.getInstance().getIndexedColumns(this.name)) {
+            ColumnIndex colIdx = loadIndex(col);
+            if (colIdx != null) {
+                indices.put(col, colIdx);
+            }
+        }
+        if (compositeIndices != null) {
+            for (String key : compositeIndices) {
+                indices.put(key, loadIndex(key));
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Marks indices as changed, they are saved at the next checkpoint.
+     *
+     * @param keys the columns or composite index keys of the changed indices
+     */
+    private void markIndicesChanged(Collection<String> keys) {
+        if (changedIndices == null)
+            changedIndices = new HashSet<>();
+        changedIndices.addAll(keys);
+    }
+
+    /**
+     * Saves the open indices changed since they were last saved.
+     *
+     * @throws IOException if an I/O error occurs while saving an index
+     */
+    public void saveIndices() throws IOException {
+        if (changedIndices == null)
             return;
+
+        for (String key : changedIndices) {
+            openIndices.get(key).saveIndex();
         }
+        changedIndices.clear();
+    }
 
-        Hashtable<String, Object> htblColNameValue = Utils.convertTupleToHashtable(htblColNameType, prev);
-        insertIntoBPlusTrees(indicies, htblColNameValue, targetPageIdxRowNum[0] + 1, true);
-        targetPage.savePage(this.name);
+    private void updatePageRanges(Schema schema, Page targetPage) {
+        int targetPageNum = Integer.parseInt(targetPage.name.split(" ")[1]);
+        int clusteringKeyIdx = schema.getClusteringKeyIndex();
+        Object firstRowClusteringKey = targetPage.getField(0, clusteringKeyIdx);
+        Object lastRowClusteringKey = targetPage.getField(targetPage.size() - 1, clusteringKeyIdx);
+        Object[] clusteringKeyRange = new Object[] { firstRowClusteringKey, lastRowClusteringKey };
 
-        for (int pageIdx = targetPageIdxRowNum[0] + 1; pageIdx < pageNums.size(); pageIdx++) {
-            Page currPage = loadPage(pageNums.get(pageIdx));
+        pageRanges.put(targetPageNum, clusteringKeyRange);
 
-            for (int row = 0; row < currPage.getTuples().size(); row++) {
-                curr = currPage.getTuples().get(row);
-                currPage.getTuples().set(row, prev);
-                prev = curr;
-            }
+        zoneMaps.put(targetPageNum, ZoneMap.of(targetPage));
 
-            if (currPage.getTuples().size() < Page.maximumRowsCountInPage) {
-                currPage.addTuple(prev);
-                currPage.savePage(this.name);
-                updatePageRanges(htblColNameType, currPage);
-                return;
-            }
+        updateBloomFilters(schema, targetPage, targetPageNum);
+    }
+
+    /**
+     * Creates an index on an ordered list of columns, whose keys compare on the
+     * first column, then on the second, and so on.
+     *
+     * @param schema    the schema of the table
+     * @param colNames  the indexed columns, in key order
+     * @param indexName the name of the index
+     * @throws DBAppException if fewer than two columns are given, a column does
+     *                        not exist or repeats, or an index on these columns
+     *                        in this order already exists
+     */
+    public void createCompositeIndex(Schema schema, String[] colNames, String indexName)
+            throws DBAppException, IOException, ClassNotFoundException {
+        createCompositeIndex(schema, colNames, new String[0], indexName);
+    }
 
-            htblColNameValue = Utils.convertTupleToHashtable(htblColNameType, prev);
-            insertIntoBPlusTrees(indicies, htblColNameValue, pageIdx + 1, true);
-            currPage.savePage(this.name);
-            updatePageRanges(htblColNameType, currPage);
+    /**
+     * Creates an index on an ordered list of columns that also carries the
+     * values of other columns, so queries reading only these columns are
+     * answered from the index without loading pages.
+     *
+     * @param schema           the schema of the table
+     * @param keyColNames      the indexed columns, in key order
+     * @param includedColNames the columns carried by the index, not searched on
+     * @param indexName        the name of the index
+     * @throws DBAppException if no key column or fewer than two columns in all
+     *                        are given, a column does not exist or repeats, or
+     *                        the index already exists
+     */
+    public void createCompositeIndex(Schema schema, String[] keyColNames, String[] includedColNames,
+            String indexName) throws DBAppException, IOException, ClassNotFoundException {
+        String[] colNames = Arrays.copyOf(keyColNames, keyColNames.length + includedColNames.length);
+        System.arraycopy(includedColNames, 0, colNames, keyColNames.length, includedColNames.length);
+        if (keyColNames.length == 0 || colNames.length < 2)
+            throw new DBAppException("A composite index needs at least two columns");
+
+        HashSet<String> seen = new HashSet<>();
+        for (String col : colNames) {
+            if (schema.getOrdinal(col) < 0)
+                throw new DBAppException("invalid Column Name " + col);
+            if (!seen.add(col))
+                throw new DBAppException("Column " + col + " repeats in the index");
         }
 
-        this.addPage(htblColNameType, prev);
+        String key = CompositeIndex.keyName(colNames);
+        if (compositeIndices != null && compositeIndices.contains(key))
+            throw new DBAppException("Index already exists");
+
+        new CompositeIndex(this, schema, keyColNames, includedColNames, indexName);
+        if (compositeIndices == null)
+            compositeIndices = new Vector<>();
+        compositeIndices.add(key);
     }
 
-    private void updatePageRanges(Hashtable<String, String> htblColNameType, Page targetPage) {
-        int targetPageNum = Integer.parseInt(targetPage.name.split(" ")[1]);
-        int clusteringKeyIdx = Utils.getColIndex(htblColNameType, this.clusteringKey);
-        String firstRowClusteringKey = targetPage.getTuples().get(0).getFields()[clusteringKeyIdx].toString();
-        String lastRowClusteringKey = targetPage.getTuples().get(targetPage.getTuples().size() - 1)
-                .getFields()[clusteringKeyIdx].toString();
-        String[] clusteringKeyRange = new String[] { firstRowClusteringKey, lastRowClusteringKey };
+    /**
+     * Keeps a Bloom filter of a column on every page, built from the rows the
+     * pages hold now and rebuilt whenever a page changes. All filters of the
+     * table are rebuilt with the given false positive rate.
+     *
+     * @param schema            the schema of the table
+     * @param colName           the name of the column
+     * @param falsePositiveRate the probability that a page without the value is
+     *                          still read
+     * @throws DBAppException if the column does not exist or the rate is not
+     *                        between 0 and 1 exclusive
+     */
+    public void createBloomFilter(Schema schema, String colName, double falsePositiveRate)
+            throws DBAppException, IOException, ClassNotFoundException {
+        if (schema.getOrdinal(colName) < 0)
+            throw new DBAppException("invalid Column Name " + colName);
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new DBAppException("Bloom filter false positive rate must be between 0 and 1");
+
+        if (bloomFilterColumns == null)
+            bloomFilterColumns = new Vector<>();
+        if (!bloomFilterColumns.contains(colName))
+            bloomFilterColumns.add(colName);
+        bloomFilterFalsePositiveRate = falsePositiveRate;
+
+        for (int pageNum : pageNums) {
+            Page page = loadPage(pageNum);
+            updateBloomFilters(schema, page, pageNum);
+            page.savePage(this.name);
+        }
+    }
 
-        pageRanges.put(targetPageNum, clusteringKeyRange);
+    /**
+     * Rebuilds the Bloom filters of a page, they are written with the page.
+     */
+    private void updateBloomFilters(Schema schema, Page page, int pageNum) {
+        if (bloomFilterColumns == null)
+            return;
+
+        BloomFilter[] pageFilters = new BloomFilter[schema.getColumnCount()];
+        for (String col : bloomFilterColumns) {
+            int colIndex = schema.getOrdinal(col);
+            pageFilters[colIndex] = BloomFilter.of(page, colIndex, bloomFilterFalsePositiveRate);
+        }
+        page.setBloomFilters(pageFilters);
+
+        if (bloomFilters == null)
+            bloomFilters = new Hashtable<>();
+        bloomFilters.put(pageNum, pageFilters);
+    }
+
+    /**
+     * Returns the Bloom filters of a page without loading the page.
+     *
+     * @param pageNum a page number
+     * @return the filter of each column, null for a column without one, or null
+     *         if the page has no filters
+     * @throws IOException if an I/O error occurs while reading the filters
+     */
+    public BloomFilter[] getBloomFilters(int pageNum) throws IOException {
+        if (bloomFilterColumns == null)
+            return null;
+        if (bloomFilters == null)
+            bloomFilters = new Hashtable<>();
+
+        BloomFilter[] pageFilters = bloomFilters.get(pageNum);
+        if (pageFilters == null) {
+            pageFilters = Page.loadBloomFilters(this.name, pageNum);
+            bloomFilters.put(pageNum, pageFilters == null ? NO_BLOOM_FILTERS : pageFilters);
+        }
+        return pageFilters == NO_BLOOM_FILTERS ? null : pageFilters;
+    }
+
+    /**
+     * Returns the pages whose Bloom filters do not rule out a row with the
+     * given values.
+     *
+     * @param pages            the page numbers to check
+     * @param htblColNameValue the values a row must have
+     * @param schema           the schema of the table
+     * @return the pages that may hold such a row, in the same order
+     */
+    private Vector<Integer> filterPagesByBloomFilters(Vector<Integer> pages,
+            Hashtable<String, Object> htblColNameValue, Schema schema) throws IOException {
+        if (bloomFilterColumns == null)
+            return pages;
+
+        Vector<Integer> candidatePages = new Vector<>();
+        for (int pageNum : pages) {
+            BloomFilter[] pageFilters = getBloomFilters(pageNum);
+            boolean mayContain = true;
+            for (String col : htblColNameValue.keySet()) {
+                BloomFilter filter = pageFilters == null ? null : pageFilters[schema.getOrdinal(col)];
+                if (filter != null && !filter.mightContain(htblColNameValue.get(col))) {
+                    mayContain = false;
+                    break;
+                }
+            }
+            if (mayContain)
+                candidatePages.add(pageNum);
+        }
+        return candidatePages;
+    }
+
+    /**
+     * @param pageNum a page number
+     * @return the zone map of the page, or null if it is not known
+     */
+    public ZoneMap getZoneMap(int pageNum) {
+        return zoneMaps.get(pageNum);
     }
 
     /**
      * Returns the insertion position of a new row in the table.
      * 
      * @param newRow          the new row to be inserted
-     * @param htblColNameType a hashtable containing the column names and their
-     *                        corresponding types
+     * @param schema          the schema of the table
      * @return the insertion position in the format "pageNum_rowNum"
      * @throws DBAppException         if an error occurs in inserting a row
      * @throws IOException            if an I/O error occurs while reading or
@@ -305,14 +801,15 @@ public class Table extends FileHandler {
      * @throws ClassNotFoundException if the specified class cannot be found during
      *                                deserialization
      */
-    private int[] getInsertionPos(Tuple newRow, Hashtable<String, String> htblColNameType)
+    private int[] getInsertionPos(Tuple newRow, Schema schema)
             throws DBAppException, IOException, ClassNotFoundException {
 
         int targetPageIdx = 0;
         int targetRowIdx = 0;
-        int clusteringKeyIndex = Utils.getColIndex(htblColNameType, this.clusteringKey);
+        int clusteringKeyIndex = schema.getClusteringKeyIndex();
 
-        String targetClusteringKey = newRow.getFields()[clusteringKeyIndex] + "";
+        Object targetClusteringKey = newRow.getFields()[clusteringKeyIndex];
+        KeyComparator keyComparator = KeyComparator.forType(schema.getColType(clusteringKeyIndex));
         int pageStart = 0;
         int pageEnd = pageNums.size() - 1;
         int pageMid = 0;
@@ -321,9 +818,8 @@ public class Table extends FileHandler {
             pageMid = pageStart + (pageEnd - pageStart) / 2;
             Object[] currPageRange = pageRanges.get(pageNums.get(pageMid));
 
-            String type = htblColNameType.get(clusteringKey).toLowerCase();
-            int comparison1 = Utils.compareKeys(targetClusteringKey, currPageRange[0].toString(), type);
-            int comparison2 = Utils.compareKeys(targetClusteringKey, currPageRange[1].toString(), type);
+            int comparison1 = keyComparator.compare(targetClusteringKey, currPageRange[0]);
+            int comparison2 = keyComparator.compare(targetClusteringKey, currPageRange[1]);
 
             targetPageIdx = pageMid;
             if (comparison1 < 0) {
@@ -334,14 +830,14 @@ public class Table extends FileHandler {
                 targetRowIdx = -1;
             } else {
                 Page currPage = loadPage(pageNums.get(pageMid));
-                targetRowIdx = currPage.findInsertionRow(targetClusteringKey, clusteringKeyIndex, type);
+                targetRowIdx = currPage.findInsertionRow(targetClusteringKey, clusteringKeyIndex);
                 break;
             }
         }
 
         if (targetRowIdx == -1) {
             Page currPage = loadPage(pageNums.get(targetPageIdx));
-            targetRowIdx = currPage.getTuples().size();
+            targetRowIdx = currPage.size();
         }
         if (targetRowIdx == Page.maximumRowsCountInPage) {
             return new int[] { targetPageIdx + 1, 0 };
@@ -354,8 +850,7 @@ public class Table extends FileHandler {
      * Updates a row in the table with the specified column name-value pairs, based
      * on the given clustering key value.
      *
-     * @param htblColNameType       a Hashtable containing the column names and
-     *                              their corresponding data types
+     * @param schema                the schema of the table
      * @param htblColNameValue      a Hashtable containing the column names and
      *                              their new values
      * @param strClusteringKeyValue the value of the clustering key for the row to
@@ -366,39 +861,89 @@ public class Table extends FileHandler {
      * @throws IOException            if an I/O error occurs during deserializing a
      *                                page
      */
-    public void updateRow(Hashtable<String, String> htblColNameType, Hashtable<String, Object> htblColNameValue,
+    public void updateRow(Schema schema, Hashtable<String, Object> htblColNameValue,
             String strClusteringKeyValue)
             throws DBAppException, ClassNotFoundException, IOException {
 
-        String clusteringKey = this.getClusteringKey();
-        int clusteringKeyIndex = Utils.getColIndex(htblColNameType, this.clusteringKey);
+        Hashtable<String, ColumnIndex> indicies = loadAllIndices();
+        ColumnIndex cluIdx = indicies.get(clusteringKey);
+        Object clusteringKeyVal;
+        try {
+            clusteringKeyVal = KeyComparator.forType(schema.getColType(clusteringKey)).parse(strClusteringKeyValue);
+        } catch (NumberFormatException e) {
+            throw new DBAppException("Invalid clustering key value " + strClusteringKeyValue);
+        }
+        int pageNum;
+        Page currPage;
+        int row;
+
+        if (cluIdx != null) {
+            // the clustering key index gives the exact row
+            RowIdList rowIds = cluIdx.search(clusteringKeyVal);
+            if (rowIds == null || rowIds.isEmpty())
+                return;
+
+            pageNum = RowIdList.getPageNum(rowIds.get(0));
+            currPage = loadPage(pageNum);
+            row = currPage.findSlot(RowIdList.getSlot(rowIds.get(0)));
+        } else {
+            int[] pos = findRowByClusteringKey(clusteringKeyVal, schema);
+            if (pos == null)
+                return;
+
+            pageNum = pageNums.get(pos[0]);
+            currPage = loadPage(pageNum);
+            row = pos[1];
+        }
+
+        if (row < 0)
+            return;
+
+        long rowId = RowIdList.rowId(pageNum, currPage.getSlot(row));
+        Object[] oldFields = currPage.getTuple(row).getFields();
+        for (String col : htblColNameValue.keySet()) {
+            currPage.setField(row, schema.getOrdinal(col), htblColNameValue.get(col));
+        }
+
+        // move the row in the indices whose key changed
+        Object[] newFields = currPage.getTuple(row).getFields();
+        for (Map.Entry<String, ColumnIndex> entry : indicies.entrySet()) {
+            ColumnIndex colIdx = entry.getValue();
+            Object oldKey = colIdx.keyOf(oldFields, schema);
+            Object newKey = colIdx.keyOf(newFields, schema);
+            if (!oldKey.equals(newKey)) {
+                colIdx.removeRowId(oldKey, rowId);
+                colIdx.addRowId(newKey, rowId);
+                markIndicesChanged(Collections.singleton(entry.getKey()));
+            }
+        }
+
+        currPage.savePage(this.name);
+        updatePageRanges(schema, currPage);
+    }
+
+    /**
+     * Finds a row by binary searching the page ranges, then the rows of the page
+     * that covers the clustering key.
+     *
+     * @param clusteringKeyValue the clustering key of the row
+     * @param schema             the schema of the table
+     * @return the position of the page in pageNums and the position of the row in
+     *         the page, or null if no row has this clustering key
+     */
+    private int[] findRowByClusteringKey(Object clusteringKeyValue, Schema schema)
+            throws ClassNotFoundException, IOException {
+        int clusteringKeyIndex = schema.getClusteringKeyIndex();
+        KeyComparator keyComparator = KeyComparator.forType(schema.getColType(clusteringKeyIndex));
         int pageStart = 0;
         int pageEnd = pageNums.size() - 1;
-        int pageMid = 0;
-        BPlusTreeIndex cluIdx = loadIndex(clusteringKey);
-        while (pageStart <= pageEnd) {
-            pageMid = pageStart + (pageEnd - pageStart) / 2;
-            if (cluIdx != null) {
-                Vector<String> pageRefs = new Vector<>();
-                switch (htblColNameType.get(clusteringKey).toLowerCase()) {
-                    case "java.lang.integer":
-                        pageRefs = (Vector<String>) cluIdx.tree.search(Integer.parseInt(strClusteringKeyValue));
-                        break;
-                    case "java.lang.double":
-                        pageRefs = (Vector<String>) cluIdx.tree.search(Double.parseDouble(strClusteringKeyValue));
-                        break;
-                    case "java.lang.string":
-                        pageRefs = (Vector<String>) cluIdx.tree.search(strClusteringKeyValue);
-                        break;
-                }
-                pageMid = Integer.parseInt(pageRefs.get(0).split(" ")[1]);
-            }
 
-            String[] currPageRange = pageRanges.get(pageNums.get(pageMid));
+        while (pageStart <= pageEnd) {
+            int pageMid = pageStart + (pageEnd - pageStart) / 2;
+            Object[] currPageRange = pageRanges.get(pageNums.get(pageMid));
 
-            String type = htblColNameType.get(clusteringKey).toLowerCase();
-            int comparison1 = Utils.compareKeys(strClusteringKeyValue, currPageRange[0], type);
-            int comparison2 = Utils.compareKeys(strClusteringKeyValue, currPageRange[1], type);
+            int comparison1 = keyComparator.compare(clusteringKeyValue, currPageRange[0]);
+            int comparison2 = keyComparator.compare(clusteringKeyValue, currPageRange[1]);
 
             if (comparison1 < 0) {
                 pageEnd = pageMid - 1;
@@ -406,89 +951,27 @@ public class Table extends FileHandler {
                 pageStart = pageMid + 1;
             } else {
                 Page currPage = loadPage(pageNums.get(pageMid));
-                Vector<Tuple> currPageContent = currPage.getTuples();
+                ColumnVector keys = currPage.getColumn(clusteringKeyIndex);
 
                 int begin = 0;
-                int end = currPageContent.size();
-
+                int end = currPage.size() - 1;
                 while (begin <= end) {
                     int mid = begin + (end - begin) / 2;
-                    String currRow = currPageContent.get(mid).getFields()[clusteringKeyIndex] + "";
-                    int comparison = Utils.compareKeys(strClusteringKeyValue, currRow, type);
+                    int comparison = -keys.compare(mid, clusteringKeyValue);
 
                     if (comparison == 0) {
-                        Tuple t = currPageContent.get(mid);
-
-                        for (String col : htblColNameValue.keySet()) {
-                            int colIndex = Utils.getColIndex(htblColNameType, col);
-                            BPlusTreeIndex colIdx = loadIndex(col);
-                            if (colIdx != null) {
-                                if (!t.getFields()[colIndex].equals(htblColNameValue.get(col))) {
-                                    Vector<String> pageRefs = new Vector<>();
-                                    Vector<String> pageRefs2 = new Vector<>();
-                                    switch (htblColNameType.get(col).toLowerCase()) {
-                                        case "java.lang.integer":
-                                            pageRefs = (Vector<String>) colIdx.tree
-                                                    .search((Integer) htblColNameValue.get(col));
-                                            if (pageRefs == null)
-                                                pageRefs = new Vector<>();
-
-                                            pageRefs.add("page " + pageMid);
-                                            pageRefs2 = (Vector<String>) colIdx.tree
-                                                    .search((Integer) t.getFields()[colIndex]);
-                                            pageRefs2.remove("page " + pageMid);
-                                            colIdx.tree.delete((Integer) t.getFields()[colIndex]);
-                                            colIdx.tree.delete((Integer) htblColNameValue.get(col));
-                                            colIdx.tree.insert((Integer) t.getFields()[colIndex], pageRefs2);
-                                            colIdx.tree.insert((Integer) htblColNameValue.get(col), pageRefs);
-                                            break;
-                                        case "java.lang.double":
-                                            pageRefs = (Vector<String>) colIdx.tree
-                                                    .search((Double) htblColNameValue.get(col));
-                                            if (pageRefs == null)
-                                                pageRefs = new Vector<>();
-
-                                            pageRefs.add("page " + pageMid);
-                                            pageRefs2 = (Vector<String>) colIdx.tree
-                                                    .search((Double) t.getFields()[colIndex]);
-                                            pageRefs2.remove("page " + pageMid);
-                                            colIdx.tree.delete((Double) t.getFields()[colIndex]);
-                                            colIdx.tree.delete((Double) htblColNameValue.get(col));
-                                            colIdx.tree.insert((Double) t.getFields()[colIndex], pageRefs2);
-                                            colIdx.tree.insert((Double) htblColNameValue.get(col), pageRefs);
-                                            break;
-                                        case "java.lang.string":
-                                            pageRefs = (Vector<String>) colIdx.tree
-                                                    .search(htblColNameValue.get(col).toString());
-                                            if (pageRefs == null)
-                                                pageRefs = new Vector<>();
-
-                                            pageRefs.add("page " + pageMid);
-                                            pageRefs2 = (Vector<String>) colIdx.tree
-                                                    .search(t.getFields()[colIndex].toString());
-                                            pageRefs2.remove("page " + pageMid);
-                                            colIdx.tree.delete(t.getFields()[colIndex].toString());
-                                            colIdx.tree.delete(htblColNameValue.get(col).toString());
-                                            colIdx.tree.insert(t.getFields()[colIndex].toString(), pageRefs2);
-                                            colIdx.tree.insert(htblColNameValue.get(col).toString(), pageRefs);
-                                            break;
-                                    }
-
-                                    colIdx.saveTree();
-                                }
-                            }
-                            t.getFields()[colIndex] = htblColNameValue.get(col);
-                        }
-                        currPage.savePage(this.name);
-                        return;
+                        return new int[] { pageMid, mid };
                     } else if (comparison < 0) {
                         end = mid - 1;
                     } else {
                         begin = mid + 1;
                     }
                 }
+                return null;
             }
         }
+
+        return null;
     }
 
     /**
@@ -496,207 +979,188 @@ public class Table extends FileHandler {
      *
      * @param htblColNameValue a Hashtable containing the column name-value pairs to
      *                         match
-     * @param htblColNameType  a Hashtable containing the column name-type pairs
+     * @param schema           the schema of the table
      * @throws ClassNotFoundException if the specified class cannot be found
      * @throws IOException            if an I/O error occurs
      * @throws DBAppException         if an error occurs in the database application
      */
 
     public void deleteRow(Hashtable<String, Object> htblColNameValue,
-            Hashtable<String, String> htblColNameType)
+            Schema schema)
             throws ClassNotFoundException, IOException, DBAppException {
 
-        Hashtable<String, BPlusTreeIndex> indicies = loadAllBPlusTrees(htblColNameType);
+        Hashtable<String, ColumnIndex> indicies = loadAllIndices();
+
+        // no conditions, drop every page and empty the indices
+        if (htblColNameValue.isEmpty()) {
+            for (int pageNum : pageNums) {
+                BufferPool.getInstance().discardPage(this.name, pageNum);
+            }
+            for (int pageNum : pageNums) {
+                Page.deletePage(this.name, pageNum);
+            }
+            removedPageCount += pageNums.size();
+            pageNums = new Vector<>();
+            pageRanges = new Hashtable<>();
+            zoneMaps = new Hashtable<>();
+            bloomFilters = null;
+            for (ColumnIndex colIdx : indicies.values()) {
+                colIdx.clear();
+            }
+            markIndicesChanged(indicies.keySet());
+            return;
+        }
 
         // use clusteringKey (if found) to binary search and delete row
         for (String col : htblColNameValue.keySet()) {
             if (col.equals(clusteringKey)) {
-                deleteByBinarySearch(htblColNameValue.get(col), htblColNameType, indicies);
+                deleteByBinarySearch(htblColNameValue, schema, indicies);
                 return;
             }
         }
 
-        HashSet<Integer> pagesToBeLoaded = new HashSet<>();
-
+        // intersect the row ids of the indexed columns
+        RowIdBitmap rowIds = null;
         for (String col : htblColNameValue.keySet()) {
-            Vector<String> pageRefs = new Vector<>();
             if (indicies.get(col) == null)
                 continue;
-            if (htblColNameValue.get(col) instanceof Integer) {
-                pageRefs = (Vector<String>) indicies.get(col).tree.search((Integer) htblColNameValue.get(col));
-            } else if (htblColNameValue.get(col) instanceof Double) {
-                pageRefs = (Vector<String>) indicies.get(col).tree.search((Double) htblColNameValue.get(col));
 
-            } else if (htblColNameValue.get(col) instanceof String) {
-                pageRefs = (Vector<String>) indicies.get(col).tree.search(htblColNameValue.get(col).toString());
-            }
+            RowIdList colRowIds = indicies.get(col).search(htblColNameValue.get(col));
             // if the value is not found in the index, then the row does not exist
-            if (pageRefs == null) {
+            if (colRowIds == null) {
                 return;
             }
-            if (pagesToBeLoaded.isEmpty()) {
-                for (String x : pageRefs) {
-                    pagesToBeLoaded.add(Integer.parseInt(x.split(" ")[1]));
-                }
-            } else {
-                Vector<Integer> tmp = new Vector<>();
-                for (String x : pageRefs) {
-                    tmp.add(Integer.parseInt(x.split(" ")[1]));
-                }
-                pagesToBeLoaded.retainAll(tmp);
-            }
+
+            RowIdBitmap tmp = RowIdBitmap.of(colRowIds);
+            rowIds = rowIds == null ? tmp : rowIds.and(tmp);
         }
 
-        Vector<Integer> pagesToBeLoadedVec = new Vector<>();
-        for (int page : pagesToBeLoaded) {
-            pagesToBeLoadedVec.add(page);
+        if (rowIds == null) {
+            Vector<Integer> pages = filterPagesByBloomFilters(new Vector<>(pageNums), htblColNameValue, schema);
+            deleteByLinearSearch(pages, null, htblColNameValue, schema, indicies);
+            return;
         }
 
-        if (pagesToBeLoadedVec.isEmpty()) {
-            pagesToBeLoadedVec = pageNums;
+        // only visit the pages and slots the indices point to
+        TreeMap<Integer, HashSet<Integer>> slotsByPage = new TreeMap<>();
+        for (long rowId : rowIds.toArray()) {
+            int pageNum = RowIdList.getPageNum(rowId);
+            if (!slotsByPage.containsKey(pageNum)) {
+                slotsByPage.put(pageNum, new HashSet<>());
+            }
+            slotsByPage.get(pageNum).add(RowIdList.getSlot(rowId));
         }
 
-        deleteByLinearSearch(pagesToBeLoadedVec, htblColNameValue, htblColNameType, indicies);
+        deleteByLinearSearch(new Vector<>(slotsByPage.keySet()), slotsByPage, htblColNameValue, schema,
+                indicies);
     }
 
-    private void deleteByBinarySearch(Object clusteringKeyVal, Hashtable<String, String> htblColNameType,
-            Hashtable<String, BPlusTreeIndex> indicies)
+    private void deleteByBinarySearch(Hashtable<String, Object> htblColNameValue,
+            Schema schema, Hashtable<String, ColumnIndex> indicies)
             throws ClassNotFoundException, IOException, DBAppException {
 
-        int clusteringKeyIndex = Utils.getColIndex(htblColNameType, clusteringKey);
-        int pageStart = 0;
-        int pageEnd = pageNums.size() - 1;
-        int pageMid = 0;
-
-        while (pageStart <= pageEnd) {
-            pageMid = pageStart + (pageEnd - pageStart) / 2;
-            Object[] currPageRange = pageRanges.get(pageNums.get(pageMid));
-
-            String type = htblColNameType.get(clusteringKey).toLowerCase();
-            int comparison1 = Utils.compareKeys(clusteringKeyVal.toString(), currPageRange[0].toString(), type);
-            int comparison2 = Utils.compareKeys(clusteringKeyVal.toString(), currPageRange[1].toString(), type);
-
-            if (comparison1 < 0) {
-                pageEnd = pageMid - 1;
-            } else if (comparison2 > 0) {
-                pageStart = pageMid + 1;
-            } else {
-                Page currPage = loadPage(pageNums.get(pageMid));
-                Vector<Tuple> currPageContent = currPage.getTuples();
-
-                int begin = 0;
-                int end = currPageContent.size();
-
-                while (begin <= end) {
-                    int mid = begin + (end - begin) / 2;
-                    String currRow = currPageContent.get(mid).getFields()[clusteringKeyIndex] + "";
-                    int comparison = Utils.compareKeys(clusteringKeyVal.toString(), currRow, type);
+        int[] pos = findRowByClusteringKey(htblColNameValue.get(clusteringKey), schema);
+        if (pos == null)
+            return;
 
-                    if (comparison == 0) {
-                        Tuple t = currPageContent.get(mid);
+        int pageNum = pageNums.get(pos[0]);
+        Page currPage = loadPage(pageNum);
+        if (!matchesRow(currPage, pos[1], htblColNameValue, schema))
+            return;
 
-                        Hashtable<String, Object> htblRow = Utils.convertTupleToHashtable(htblColNameType, t);
-                        deleteFromBplustrees(indicies, htblRow, pageNums.get(pageMid));
+        removeRowRefs(indicies, schema, currPage.getTuple(pos[1]), pageNum);
+        markIndicesChanged(indicies.keySet());
 
-                        currPage.removeTuple(t);
-                        currPage.savePage(this.name);
-                        updatePageRanges(htblColNameType, currPage);
-                        return;
-                    } else if (comparison < 0) {
-                        end = mid - 1;
-                    } else {
-                        begin = mid + 1;
-                    }
-                }
-                break;
-            }
+        currPage.removeRow(pos[1]);
+        if (currPage.isEmpty()) {
+            removePage(pageNum);
+            return;
         }
+        currPage.savePage(this.name);
+        updatePageRanges(schema, currPage);
     }
 
-    private void deleteByLinearSearch(Vector<Integer> pages, Hashtable<String, Object> htblColNameValue,
-            Hashtable<String, String> htblColNameType, Hashtable<String, BPlusTreeIndex> indicies)
+    /**
+     * Deletes the matching rows of the given pages.
+     *
+     * @param pages       the page numbers to search
+     * @param slotsByPage if not null, only the rows in these slots of each page
+     *                    are considered
+     */
+    private void deleteByLinearSearch(Vector<Integer> pages, Map<Integer, HashSet<Integer>> slotsByPage,
+            Hashtable<String, Object> htblColNameValue, Schema schema,
+            Hashtable<String, ColumnIndex> indicies)
             throws ClassNotFoundException, IOException, DBAppException {
 
         Vector<Integer> pagesToBeRemoved = new Vector<>();
         for (int pageNum : pages) {
             Page currPage = loadPage(pageNum);
-            Page newPage = new Page(currPage.name);
-
-            for (Tuple row : currPage.getTuples()) {
-                boolean remove = true;
-
-                for (String col : htblColNameValue.keySet()) {
-                    int colIndex = Utils.getColIndex(htblColNameType, col);
-                    if (!row.getFields()[colIndex].equals(htblColNameValue.get(col))) {
-                        newPage.addTuple(row);
-                        remove = false;
-                        break;
-                    }
-                }
-
-                if (remove) {
-                    Hashtable<String, Object> htblRow = Utils.convertTupleToHashtable(htblColNameType, row);
-                    deleteFromBplustrees(indicies, htblRow, pageNum);
+            HashSet<Integer> slots = slotsByPage == null ? null : slotsByPage.get(pageNum);
+            boolean removed = false;
+
+            // only the deleted rows are built as tuples, to update the indices
+            int row = 0;
+            while (row < currPage.size()) {
+                if ((slots == null || slots.contains(currPage.getSlot(row)))
+                        && matchesRow(currPage, row, htblColNameValue, schema)) {
+                    removeRowRefs(indicies, schema, currPage.getTuple(row), pageNum);
+                    currPage.removeRow(row);
+                    removed = true;
+                } else {
+                    row++;
                 }
             }
 
-            if (newPage.isEmpty()) {
+            if (!removed)
+                continue;
+
+            if (currPage.isEmpty()) {
                 pagesToBeRemoved.add(pageNum);
             } else {
-                newPage.savePage(this.name);
-                updatePageRanges(htblColNameType, newPage);
+                currPage.savePage(this.name);
+                updatePageRanges(schema, currPage);
             }
         }
 
         for (int i = 0; i < pagesToBeRemoved.size(); i++) {
-            pageRanges.remove(pagesToBeRemoved.get(i));
-            pageNums.remove(pagesToBeRemoved.get(i));
+            removePage(pagesToBeRemoved.get(i));
         }
+        markIndicesChanged(indicies.keySet());
     }
 
-    private void deleteFromBplustrees(Hashtable<String, BPlusTreeIndex> indicies,
-            Hashtable<String, Object> htblColNameValue, int pageNum) throws ClassNotFoundException, IOException {
-        for (String col : indicies.keySet()) {
-            BPlusTreeIndex colIdx = indicies.get(col);
-            Vector<String> pageRefs = new Vector<>();
-
-            if (htblColNameValue.get(col) instanceof Integer) {
-
-                pageRefs = (Vector<String>) colIdx.tree.search((Integer) htblColNameValue.get(col));
-                if (pageRefs == null) {
-                    continue;
-                }
-                pageRefs.remove("page " + pageNum);
-                colIdx.tree.delete((Integer) htblColNameValue.get(col));
-                if (!pageRefs.isEmpty()) {
-                    colIdx.tree.insert((Integer) htblColNameValue.get(col), pageRefs);
-                }
-
-            } else if (htblColNameValue.get(col) instanceof Double) {
-                pageRefs = (Vector<String>) colIdx.tree.search((Double) htblColNameValue.get(col));
-                if (pageRefs == null) {
-                    continue;
-                }
-                pageRefs.remove("page " + pageNum);
-                colIdx.tree.delete((Double) htblColNameValue.get(col));
-                if (!pageRefs.isEmpty()) {
-                    colIdx.tree.insert((Double) htblColNameValue.get(col), pageRefs);
-                }
-
-            } else if (htblColNameValue.get(col) instanceof String) {
-                pageRefs = (Vector<String>) colIdx.tree.search(htblColNameValue.get(col).toString());
-                if (pageRefs == null) {
-                    continue;
-                }
-                pageRefs.remove("page " + pageNum);
-                colIdx.tree.delete(htblColNameValue.get(col).toString());
-                if (!pageRefs.isEmpty()) {
-                    colIdx.tree.insert(htblColNameValue.get(col).toString(), pageRefs);
-                }
+    private boolean matchesRow(Page page, int row, Hashtable<String, Object> htblColNameValue,
+            Schema schema) {
+        for (String col : htblColNameValue.keySet()) {
+            int colIndex = schema.getOrdinal(col);
+            if (!page.fieldEquals(row, colIndex, htblColNameValue.get(col))) {
+                return false;
             }
-
-            colIdx.saveTree();
         }
+        return true;
+    }
+
+    /**
+     * Removes an empty page from the table and deletes its files.
+     *
+     * @param pageNum the page number of the page to remove
+     */
+    private void removePage(Integer pageNum) throws IOException {
+        pageRanges.remove(pageNum);
+        zoneMaps.remove(pageNum);
+        if (bloomFilters != null)
+            bloomFilters.remove(pageNum);
+        pageNums.remove(pageNum);
+        removedPageCount++;
+        BufferPool.getInstance().discardPage(this.name, pageNum);
+        Page.deletePage(this.name, pageNum);
+    }
+
+    /**
+     * @return the number of pages removed since the table was loaded, which
+     *         changes whenever pageNums loses a page
+     */
+    int getRemovedPageCount() {
+        return removedPageCount;
     }
 
     /**
@@ -707,9 +1171,9 @@ public class Table extends FileHandler {
      *                        conditions of the query
      * @param strarrOperators an array of String objects representing the logical
      *                        operators between the conditions
-     * @param htblColNameType a Hashtable containing the column names and their
-     *                        corresponding data types
-     * @return an Iterator over the result set of the select query
+     * @param schema          the schema of the table
+     * @return a cursor over the result set of the select query, rows are read
+     *         page by page as the cursor advances
      * @throws DBAppException         if there is an error executing the select
      *                                query
      * @throws ClassNotFoundException if a required class is not found during the
@@ -717,372 +1181,349 @@ public class Table extends FileHandler {
      * @throws IOException            if an I/O error occurs during the execution of
      *                                the select query
      */
-    public Iterator selectFromTable(SQLTerm[] arrSQLTerms, String[] strarrOperators,
-            Hashtable<String, String> htblColNameType) throws DBAppException, ClassNotFoundException, IOException {
+    public Iterator<Tuple> selectFromTable(SQLTerm[] arrSQLTerms, String[] strarrOperators,
+            Schema schema) throws DBAppException, ClassNotFoundException, IOException {
 
-        String tableName = arrSQLTerms[0]._strTableName;
-        Vector<Tuple> resultSet = new Vector<>();
-        Hashtable<String, BPlusTreeIndex> indicies = loadAllBPlusTrees(htblColNameType);
-        Vector<Integer> pageNums2 = new Vector<>(pageNums);
+        Hashtable<String, ColumnIndex> indicies = loadAllIndices();
         boolean indexFound = false;
 
-        for (SQLTerm term : arrSQLTerms) {
-            if (!(term._strOperator.equals("=") || term._strOperator.equals("!=") || term._strOperator.equals(">")
-                    || term._strOperator.equals("<") || term._strOperator.equals(">=")
-                    || term._strOperator.equals("<="))) {
-                throw new DBAppException("Invalid operator");
-            }
+        checkTableNames(arrSQLTerms);
 
-            if (!term._strTableName.equals(tableName)) {
-                throw new DBAppException("Invalid table name");
-            }
-
-        }
-
-        for (String string : strarrOperators) {
-            if (!string.equals("AND") && !string.equals("OR") && !string.equals("XOR")) {
-                throw new DBAppException("Invalid operator");
-            }
-        }
+        // resolves columns and validates operators and values once per query
+        RowPredicate predicate = RowPredicate.compile(arrSQLTerms, strarrOperators, schema);
+        KeyRange keyRange = KeyRange.of(arrSQLTerms, strarrOperators, schema);
 
         for (SQLTerm term : arrSQLTerms) {
-            if (indicies.get(term._strColumnName) == null) {
-                continue;
-            }
-            if (term._strColumnName.equals(indicies.get(term._strColumnName).colName)) {
+            if (canUseIndex(indicies.get(term._strColumnName), term)) {
                 indexFound = true;
             }
         }
+
+        // a composite index answers equalities on its leading columns and a
+        // range on the next one with a single run of its leaves
+        CompositeIndex.Match compositeMatch = findCompositeMatch(indicies, arrSQLTerms, strarrOperators);
+        if (compositeMatch != null) {
+            indexFound = true;
+        }
         Vector<Integer> pagesToBeLoaded = new Vector<Integer>(pageNums);
         if (indexFound) {
-            // Vector<String> pageRefs = new Vector<>();
-            Vector<HashSet<Integer>> pageRefsInt = new Vector<>();
-            HashSet<Integer> pageRefsIntCondition;
-            HashSet<Integer> pageNumsHashset = new HashSet<>();
+            // the row ids each condition may match, combined as bitmaps
+            CandidateRows[] termRows = new CandidateRows[arrSQLTerms.length];
 
-            for (Integer x : pageNums2) {
-                pageNumsHashset.add(x);
-            }
+            // ANDed comparisons of a column with a B+ tree are answered together
+            // by one walk of its leaves between the tightest bounds
+            HashSet<String> rangedCols = new HashSet<>();
 
             int i = 0;
             for (SQLTerm term : arrSQLTerms) {
-                if (indicies.get(term._strColumnName) == null || term._strOperator.equals("!=")) {
-                    pageRefsInt.add(pageNumsHashset);
+                boolean answered = compositeMatch != null && compositeMatch.usedTerms[i];
+                if (answered || !canUseIndex(indicies.get(term._strColumnName), term)) {
+                    termRows[i++] = CandidateRows.all();
                     continue;
                 }
-
-                pageRefsIntCondition = new HashSet<>();
-                Vector<Vector<String>> pageRefs = new Vector<>();
-
-                switch (term._strOperator) {
-                    case "=":
-                        pageRefsIntCondition = equalCondition(indicies, term);
-                        break;
-
-                    case ">":
-                        if (term._objValue instanceof Integer) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater((Integer) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else if (term._objValue instanceof Double) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater((Double) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater(term._objValue.toString(),
-                                    htblColNameType.get(term._strColumnName));
-                        }
-
-                        break;
-
-                    case "<":
-                        if (term._objValue instanceof Integer) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower((Integer) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else if (term._objValue instanceof Double) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower((Double) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower(term._objValue.toString(),
-                                    htblColNameType.get(term._strColumnName));
-                        }
-                        break;
-
-                    case ">=":
-                        if (term._objValue instanceof Integer) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater((Integer) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else if (term._objValue instanceof Double) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater((Double) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchGreater(term._objValue.toString(),
-                                    htblColNameType.get(term._strColumnName));
-                        }
-
-                        break;
-
-                    case "<=":
-                        if (term._objValue instanceof Integer) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower((Integer) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else if (term._objValue instanceof Double) {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower((Double) term._objValue,
-                                    htblColNameType.get(term._strColumnName));
-                        } else {
-                            pageRefs = indicies.get(term._strColumnName).tree.searchLower(term._objValue.toString(),
-                                    htblColNameType.get(term._strColumnName));
-                        }
-                        break;
-
-                    default:
-                        throw new DBAppException("Invalid operator");
+                if (term._strOperator.equals("=")) {
+                    termRows[i++] = CandidateRows.exact(equalCondition(indicies, term));
+                    continue;
                 }
 
-                if (!term._strOperator.equals("=")) {
-                    for (Vector<String> v : pageRefs) {
-                        for (String x : v) {
-                            pageRefsIntCondition.add(Integer.parseInt(x.split(" ")[1]));
-                        }
-                    }
-
-                    if (term._strOperator.equals(">=") || term._strOperator.equals("<=")) {
-                        HashSet<Integer> tmp = equalCondition(indicies, term);
-                        for (Integer x : tmp) {
-                            pageRefsIntCondition.add(x);
-                        }
-                    }
+                // only a B+ tree reaches the range cases
+                BPlusTreeIndex<?> treeIdx = (BPlusTreeIndex<?>) indicies.get(term._strColumnName);
+                KeyRange colRange = KeyRange.of(arrSQLTerms, strarrOperators, schema, term._strColumnName);
+                if (colRange == null) {
+                    termRows[i++] = CandidateRows.exact(rangeCondition(treeIdx, term));
+                } else if (rangedCols.add(term._strColumnName)) {
+                    termRows[i++] = CandidateRows.exact(collectRowIds(colRange.search(treeIdx)));
+                } else {
+                    termRows[i++] = CandidateRows.all();
                 }
+            }
 
-                pageRefsInt.add(pageRefsIntCondition);
-
+            CandidateRows candidates = CandidateRows.combine(termRows, strarrOperators);
+            if (compositeMatch != null) {
+                candidates = candidates.and(CandidateRows.exact(compositeMatch.search()));
             }
-            HashSet<Integer> tmp = mystery(pageRefsInt, strarrOperators);
-            pagesToBeLoaded = new Vector<>();
-            for (Integer x : tmp) {
-                pagesToBeLoaded.add(x);
+            RowIdBitmap rowIds = candidates.getRows();
+            if (rowIds != null) {
+                HashSet<Integer> candidatePages = new HashSet<>(rowIds.getPageNums());
+                pagesToBeLoaded = new Vector<>();
+                for (Integer x : pageNums) {
+                    if (candidatePages.contains(x)) {
+                        pagesToBeLoaded.add(x);
+                    }
+                }
             }
         }
 
-        for (int pageNum = 0; pageNum < pagesToBeLoaded.size(); pageNum++) {
-            Page currPage = loadPage(pagesToBeLoaded.get(pageNum));
+        // a clustering key range limits the scan to one run of pages
+        if (keyRange != null) {
+            Vector<Integer> pagesInRange = findPagesInKeyRange(keyRange);
+            if (indexFound) {
+                pagesToBeLoaded.retainAll(new HashSet<>(pagesInRange));
+            } else {
+                pagesToBeLoaded = pagesInRange;
+            }
+        }
 
-            for (int row = 0; row < currPage.getTuples().size(); row++) {
-                Tuple currRow = currPage.getTuples().get(row);
-                Vector<Boolean> tupleConditions = new Vector<>();
+        // skip the pages whose zone maps or Bloom filters show that no row can
+        // match
+        Vector<Integer> pagesToBeScanned = new Vector<>();
+        for (Integer pageNum : pagesToBeLoaded) {
+            ZoneMap zoneMap = getZoneMap(pageNum);
+            if (zoneMap != null && !predicate.mayMatch(zoneMap))
+                continue;
+            BloomFilter[] pageFilters = getBloomFilters(pageNum);
+            if (pageFilters != null && !predicate.mayContain(pageFilters))
+                continue;
+            pagesToBeScanned.add(pageNum);
+        }
 
-                for (SQLTerm term : arrSQLTerms) {
-                    String colName = term._strColumnName;
-                    Object colValue = term._objValue;
-                    String operator = term._strOperator;
-                    int colIndex = 0;
+        return new SelectIterator(this, pagesToBeScanned, predicate, keyRange, schema.getClusteringKeyIndex());
+    }
 
-                    for (String col : htblColNameType.keySet()) {
-                        if (col.equals(colName)) {
-                            break;
-                        }
-                        colIndex++;
-                    }
-                    Object rowValue = currRow.getFields()[colIndex];
-                    int comparison = Utils.compareKeys(rowValue.toString(), colValue.toString(),
-                            htblColNameType.get(colName).toLowerCase());
-                    switch (operator) {
-                        case "=":
-                            tupleConditions.add(rowValue.equals(colValue));
-                            break;
-
-                        case "!=":
-                            tupleConditions.add(!rowValue.equals(colValue));
-                            break;
-
-                        case ">":
-                            tupleConditions.add(comparison > 0);
-                            break;
-
-                        case "<":
-                            tupleConditions.add(comparison < 0);
-                            break;
-
-                        case ">=":
-                            tupleConditions.add(comparison >= 0);
-                            break;
-
-                        case "<=":
-                            tupleConditions.add(comparison <= 0);
-                            break;
-
-                        default:
-                            throw new DBAppException("Invalid operator");
-                    }
+    /**
+     * Selects the given columns of the rows matching the conditions. When a
+     * composite index holds every column the query reads, the rows are read
+     * from the leaf chain of the index in index key order and no page is
+     * loaded; otherwise the rows of {@link #selectFromTable(SQLTerm[], String[],
+     * Schema)} are projected.
+     *
+     * @param arrSQLTerms     the conditions of the query
+     * @param strarrOperators the logical operators between the conditions
+     * @param schema          the schema of the table
+     * @param colNames        the columns to return, in this order
+     * @return an iterator over tuples holding the given columns
+     * @throws DBAppException if a column, an operator or a value is invalid
+     */
+    public Iterator<Tuple> selectFromTable(SQLTerm[] arrSQLTerms, String[] strarrOperators,
+            Schema schema, String[] colNames) throws DBAppException, ClassNotFoundException, IOException {
+        checkTableNames(arrSQLTerms);
+        RowPredicate predicate = RowPredicate.compile(arrSQLTerms, strarrOperators, schema);
+
+        int[] colIdx = new int[colNames.length];
+        HashSet<String> queryCols = new HashSet<>();
+        for (int i = 0; i < colNames.length; i++) {
+            colIdx[i] = schema.getOrdinal(colNames[i]);
+            if (colIdx[i] < 0)
+                throw new DBAppException("invalid Column Name " + colNames[i]);
+            queryCols.add(colNames[i]);
+        }
+        for (SQLTerm term : arrSQLTerms) {
+            queryCols.add(term._strColumnName);
+        }
 
+        CompositeIndex coveringIdx = findCoveringIndex(queryCols);
+        if (coveringIdx == null) {
+            Iterator<Tuple> rows = selectFromTable(arrSQLTerms, strarrOperators, schema);
+            return new Iterator<Tuple>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
                 }
 
-                Vector<String> strVecOperators = new Vector<>();
-                for (int m = 0; m < strarrOperators.length; m++) {
-                    strVecOperators.add(strarrOperators[m]);
-                }
-                int m = 0;
-                int countAnd = 0;
-                int countOR = 0;
-                int countXOR = 0;
-
-                for (int d = 0; d < strVecOperators.size(); d++) {
-                    if (strVecOperators.get(d).equals("AND")) {
-                        countAnd = countAnd + 1;
-                    }
-                }
-                while (countAnd > 0) {
-                    if (strVecOperators.get(m).equals("AND")) {
-                        tupleConditions.set(m, tupleConditions.get(m) && tupleConditions.get(m + 1));
-                        tupleConditions.remove(m + 1);
-                        strVecOperators.remove(m);
-                        m = 0;
-                        countAnd--;
-                    } else {
-                        m++;
-                    }
+                @Override
+                public Tuple next() {
+                    return project(rows.next().getFields(), colIdx);
                 }
+            };
+        }
 
-                for (int d = 0; d < strVecOperators.size(); d++) {
-                    if (strVecOperators.get(d).equals("OR")) {
-                        countOR = countOR + 1;
-                    }
-                }
+        return new IndexOnlyIterator(coveringIdx, matchAll(coveringIdx, arrSQLTerms, strarrOperators), schema,
+                predicate, colIdx);
+    }
 
-                m = 0;
-                while (countOR > 0) {
-                    if (strVecOperators.get(m).equals("OR")) {
-                        tupleConditions.set(m, tupleConditions.get(m) || tupleConditions.get(m + 1));
-                        tupleConditions.remove(m + 1);
-                        strVecOperators.remove(m);
-                        m = 0;
-                        countOR--;
-                    } else {
-                        m++;
-                    }
-                }
+    /**
+     * Counts the rows matching the conditions, from the leaf chain of a
+     * composite index holding every column of the conditions if there is one,
+     * otherwise by scanning the rows {@link #selectFromTable(SQLTerm[], String[],
+     * Schema)} returns.
+     *
+     * @param arrSQLTerms     the conditions of the query
+     * @param strarrOperators the logical operators between the conditions
+     * @param schema          the schema of the table
+     * @return the number of matching rows
+     * @throws DBAppException if a column, an operator or a value is invalid
+     */
+    public int countRows(SQLTerm[] arrSQLTerms, String[] strarrOperators, Schema schema)
+            throws DBAppException, ClassNotFoundException, IOException {
+        checkTableNames(arrSQLTerms);
+        RowPredicate predicate = RowPredicate.compile(arrSQLTerms, strarrOperators, schema);
 
-                for (int d = 0; d < strVecOperators.size(); d++) {
-                    if (strVecOperators.get(d).equals("XOR")) {
-                        countXOR = countXOR + d + 1;
-                    }
-                }
+        HashSet<String> queryCols = new HashSet<>();
+        for (SQLTerm term : arrSQLTerms) {
+            queryCols.add(term._strColumnName);
+        }
 
-                m = 0;
-                while (countXOR > 0) {
-                    if (strVecOperators.get(m).equals("XOR")) {
-                        tupleConditions.set(m, tupleConditions.get(m) ^ tupleConditions.get(m + 1));
-                        tupleConditions.remove(m + 1);
-                        strVecOperators.remove(m);
-                        m = 0;
-                        countXOR--;
-                    } else {
-                        m++;
-                    }
-                }
-                if (tupleConditions.get(0)) {
-                    resultSet.add(currRow);
-                }
+        CompositeIndex coveringIdx = findCoveringIndex(queryCols);
+        if (coveringIdx == null) {
+            int count = 0;
+            Iterator<Tuple> rows = selectFromTable(arrSQLTerms, strarrOperators, schema);
+            while (rows.hasNext()) {
+                rows.next();
+                count++;
             }
+            return count;
         }
 
-        return resultSet.iterator();
+        return new IndexOnlyIterator(coveringIdx, matchAll(coveringIdx, arrSQLTerms, strarrOperators), schema,
+                predicate, new int[0]).count();
+    }
 
+    private static Tuple project(Object[] fields, int[] colIdx) {
+        Object[] projected = new Object[colIdx.length];
+        for (int i = 0; i < colIdx.length; i++) {
+            projected[i] = fields[colIdx[i]];
+        }
+        return new Tuple(projected);
     }
 
-    private HashSet<Integer> equalCondition(Hashtable<String, BPlusTreeIndex> indicies, SQLTerm term) {
-        Vector<String> pageRefs = new Vector<>();
-        HashSet<Integer> pageRefsIntCondition = new HashSet<>();
+    /**
+     * Picks the composite index holding all the given columns whose key is the
+     * shortest, so the fewest bytes are read per row. Only composite indices
+     * are loaded.
+     *
+     * @param cols the columns a query reads
+     * @return the index, or null if none holds all the columns
+     */
+    private CompositeIndex findCoveringIndex(Set<String> cols) throws ClassNotFoundException, IOException {
+        if (compositeIndices == null)
+            return null;
 
-        if (term._objValue instanceof Integer) {
-            pageRefs = (Vector<String>) indicies.get(term._strColumnName).tree.search((Integer) term._objValue);
-        } else if (term._objValue instanceof Double) {
-            pageRefs = (Vector<String>) indicies.get(term._strColumnName).tree.search((Double) term._objValue);
-        } else {
-            pageRefs = (Vector<String>) indicies.get(term._strColumnName).tree.search(term._objValue.toString());
-        }
-        if (pageRefs != null) {
-            for (String x : pageRefs) {
-                pageRefsIntCondition.add(Integer.parseInt(x.split(" ")[1]));
-            }
+        CompositeIndex best = null;
+        for (String key : compositeIndices) {
+            if (!Arrays.asList(key.split(",")).containsAll(cols))
+                continue;
+            if (best == null || key.split(",").length < best.colNames.length)
+                best = (CompositeIndex) loadIndex(key);
         }
-
-        return pageRefsIntCondition;
+        return best;
     }
 
-    private HashSet<Integer> mystery(Vector<HashSet<Integer>> pageRefsInt, String[] strarrOperators) {
-        Vector<String> strVecOperators = new Vector<>();
-        for (int m = 0; m < strarrOperators.length; m++) {
-            strVecOperators.add(strarrOperators[m]);
+    /**
+     * @return the range of keys of an index holding the rows that may match
+     *         conditions ANDed together, or null to read the whole index
+     */
+    private static CompositeIndex.Match matchAll(CompositeIndex colIdx, SQLTerm[] arrSQLTerms,
+            String[] strarrOperators) {
+        for (String operator : strarrOperators) {
+            if (!operator.equals("AND"))
+                return null;
         }
-        int m = 0;
-        int countAnd = 0;
-        int countOR = 0;
-        int countXOR = 0;
-
-        for (int d = 0; d < strVecOperators.size(); d++) {
-            if (strVecOperators.get(d).equals("AND")) {
-                countAnd = countAnd + 1;
+        return colIdx.match(arrSQLTerms);
+    }
+
+    private static void checkTableNames(SQLTerm[] arrSQLTerms) throws DBAppException {
+        String tableName = arrSQLTerms[0]._strTableName;
+        for (SQLTerm term : arrSQLTerms) {
+            if (!term._strTableName.equals(tableName)) {
+                throw new DBAppException("Invalid table name");
             }
         }
-        while (countAnd > 0) {
-            if (strVecOperators.get(m).equals("AND")) {
-                HashSet<Integer> tmp = pageRefsInt.get(m);
-                tmp.retainAll(pageRefsInt.get(m + 1));
-                pageRefsInt.set(m, tmp);
-                pageRefsInt.remove(m + 1);
-                strVecOperators.remove(m);
-                m = 0;
-                countAnd--;
+    }
+
+    /**
+     * Binary searches the page ranges for the run of pages that may hold keys
+     * in the given range.
+     *
+     * @param keyRange a clustering key range
+     * @return the page numbers of the run, in clustering key order
+     */
+    private Vector<Integer> findPagesInKeyRange(KeyRange keyRange) {
+        if (keyRange.isEmpty())
+            return new Vector<>();
+
+        // first page whose largest key is not below the range
+        int pageStart = 0;
+        int pageEnd = pageNums.size();
+        while (pageStart < pageEnd) {
+            int pageMid = pageStart + (pageEnd - pageStart) / 2;
+            if (keyRange.isAboveLow(pageRanges.get(pageNums.get(pageMid))[1])) {
+                pageEnd = pageMid;
             } else {
-                m++;
+                pageStart = pageMid + 1;
             }
         }
+        int firstPageIdx = pageStart;
 
-        for (int d = 0; d < strVecOperators.size(); d++) {
-            if (strVecOperators.get(d).equals("OR")) {
-                countOR = countOR + 1;
+        // first page whose smallest key is above the range
+        pageEnd = pageNums.size();
+        while (pageStart < pageEnd) {
+            int pageMid = pageStart + (pageEnd - pageStart) / 2;
+            if (keyRange.isBelowHigh(pageRanges.get(pageNums.get(pageMid))[0])) {
+                pageStart = pageMid + 1;
+            } else {
+                pageEnd = pageMid;
             }
         }
 
-        m = 0;
-        while (countOR > 0) {
-            if (strVecOperators.get(m).equals("OR")) {
-                HashSet<Integer> tmp = pageRefsInt.get(m);
-                for (Integer x : pageRefsInt.get(m + 1)) {
-                    tmp.add(x);
-                }
-                pageRefsInt.set(m, tmp);
-                pageRefsInt.remove(m + 1);
-                strVecOperators.remove(m);
-                m = 0;
-                countOR--;
-            } else {
-                m++;
-            }
+        return new Vector<>(pageNums.subList(firstPageIdx, pageStart));
+    }
+
+    /**
+     * Picks the composite index fixing the longest prefix of its key, for
+     * conditions ANDed together.
+     *
+     * @return the best match, or null if there is none
+     */
+    private CompositeIndex.Match findCompositeMatch(Hashtable<String, ColumnIndex> indicies,
+            SQLTerm[] arrSQLTerms, String[] strarrOperators) {
+        for (String operator : strarrOperators) {
+            if (!operator.equals("AND"))
+                return null;
         }
 
-        for (int d = 0; d < strVecOperators.size(); d++) {
-            if (strVecOperators.get(d).equals("XOR")) {
-                countXOR = countXOR + d + 1;
-            }
+        CompositeIndex.Match best = null;
+        for (ColumnIndex colIdx : indicies.values()) {
+            if (!(colIdx instanceof CompositeIndex))
+                continue;
+            CompositeIndex.Match match = ((CompositeIndex) colIdx).match(arrSQLTerms);
+            if (match != null && (best == null || match.score > best.score))
+                best = match;
         }
+        return best;
+    }
 
-        m = 0;
-        while (countXOR > 0) {
-            if (strVecOperators.get(m).equals("XOR")) {
-                HashSet<Integer> tmp = pageRefsInt.get(m);
-                for (Integer x : pageRefsInt.get(m + 1)) {
-                    tmp.add(x);
-                }
-                pageRefsInt.set(m, tmp);
-                pageRefsInt.remove(m + 1);
-                strVecOperators.remove(m);
-                m = 0;
-                countXOR--;
-            } else {
-                m++;
-            }
+    /**
+     * @return true if the index can narrow down the rows matching the term; a
+     *         hash index only answers equality
+     */
+    private boolean canUseIndex(ColumnIndex colIdx, SQLTerm term) {
+        if (colIdx == null || term._strOperator.equals("!="))
+            return false;
+        return term._strOperator.equals("=") || colIdx.supportsRanges();
+    }
+
+    /**
+     * @param colIdx a B+ tree index on the column of the term
+     * @param term   a comparison of the column
+     * @return the row ids of the rows satisfying the comparison
+     */
+    private static <TKey extends Comparable<TKey>> RowIdBitmap rangeCondition(BPlusTreeIndex<TKey> colIdx,
+            SQLTerm term) throws DBAppException {
+        BTree<TKey, RowIdList> tree = colIdx.tree;
+        TKey value = colIdx.toKey(term._objValue);
+        switch (term._strOperator) {
+            case ">":
+                return collectRowIds(tree.range(value, false, null, false));
+            case ">=":
+                return collectRowIds(tree.range(value, true, null, false));
+            case "<":
+                return collectRowIds(tree.range(null, false, value, false));
+            case "<=":
+                return collectRowIds(tree.range(null, false, value, true));
+            default:
+                throw new DBAppException("Invalid operator");
+        }
+    }
+
+    private static RowIdBitmap collectRowIds(RangeCursor<?, RowIdList> postings) {
+        RowIdBitmap rowIds = new RowIdBitmap();
+        while (postings.hasNext()) {
+            rowIds.addAll(postings.next());
         }
+        return rowIds;
+    }
 
-        return pageRefsInt.get(0);
+    private RowIdBitmap equalCondition(Hashtable<String, ColumnIndex> indicies, SQLTerm term) {
+        return RowIdBitmap.of(indicies.get(term._strColumnName).search(term._objValue));
     }
 }
@@ -8,9 +8,16 @@ import java.util.Arrays;
  * It contains a set of fields, which represent the columns in the row.
  */
 public class Tuple implements Serializable {
+    // Tuples inside serialized pages were saved with this value
+    private static final long serialVersionUID = 5748769208971117833L;
+
     // Fields in the tuple
     private Object[] fields;
 
+    // Slot of the tuple in its page, stored by the page file rather than by
+    // serialization
+    private transient int slot;
+
     /**
      * Constructor for the Tuple class.
      * Initializes the fields with the provided values.
@@ -39,6 +46,26 @@ public class Tuple implements Serializable {
         this.fields = fields;
     }
 
+    /**
+     * Returns the slot of the tuple in its page.
+     * The slot stays the same while the tuple remains in the page, so together
+     * with the page number it identifies the row in an index.
+     *
+     * @return the slot of the tuple
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Sets the slot of the tuple in its page.
+     *
+     * @param slot the slot of the tuple
+     */
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     /**
      * Returns a string representation of the tuple.
      * The string is a comma-separated list of the string representations of the
@@ -53,4 +80,4 @@ public class Tuple implements Serializable {
                 .replace("[", "")
                 .replace("]", "");
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package Table;
+
+import java.io.Serializable;
+
+/**
+ * The smallest value, the largest value and the number of nulls of each column
+ * of a page. A table keeps one for each of its pages, so a select can tell
+ * that no row of a page satisfies its conditions without loading the page.
+ */
+public class ZoneMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int rowCount;
+    private final Object[] minValues;
+    private final Object[] maxValues;
+    private final int[] nullCounts;
+
+    ZoneMap(int rowCount, Object[] minValues, Object[] maxValues, int[] nullCounts) {
+        this.rowCount = rowCount;
+        this.minValues = minValues;
+        this.maxValues = maxValues;
+        this.nullCounts = nullCounts;
+    }
+
+    /**
+     * Computes the zone map of a page from its columns. A page read from a
+     * columnar page file and not changed since already has one, which is
+     * returned without decoding any column.
+     *
+     * @param page a page
+     * @return the zone map of the page
+     */
+    public static ZoneMap of(Page page) {
+        if (page.getZoneMap() != null)
+            return page.getZoneMap();
+
+        int rowCount = page.size();
+        int fieldCount = page.getFieldCount();
+        Object[] minValues = new Object[fieldCount];
+        Object[] maxValues = new Object[fieldCount];
+        int[] nullCounts = new int[fieldCount];
+        for (int col = 0; col < fieldCount; col++) {
+            ColumnVector column = page.getColumn(col);
+            if (column == null) {
+                nullCounts[col] = rowCount;
+                continue;
+            }
+            int minRow = column.minRow(rowCount);
+            if (minRow >= 0) {
+                minValues[col] = column.get(minRow);
+                maxValues[col] = column.get(column.maxRow(rowCount));
+            }
+            nullCounts[col] = column.nullCount(rowCount);
+        }
+        return new ZoneMap(rowCount, minValues, maxValues, nullCounts);
+    }
+
+    /**
+     * @return the number of rows of the page
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param col the ordinal of a column
+     * @return the smallest non null value of the column, or null if it only
+     *         holds nulls
+     */
+    public Object getMin(int col) {
+        return minValues[col];
+    }
+
+    /**
+     * @param col the ordinal of a column
+     * @return the largest non null value of the column, or null if it only holds
+     *         nulls
+     */
+    public Object getMax(int col) {
+        return maxValues[col];
+    }
+
+    /**
+     * @param col the ordinal of a column
+     * @return the number of nulls in the column
+     */
+    public int getNullCount(int col) {
+        return nullCounts[col];
+    }
+
+    /**
+     * Tests whether a value of a column of the page can satisfy a term. A null
+     * never satisfies a term, so a column that only holds nulls cannot.
+     *
+     * @param col      the ordinal of the column
+     * @param operator the operator code of the term
+     * @param value    the value the term compares the column with
+     * @return false if no row of the page satisfies the term
+     */
+    boolean mayMatch(int col, int operator, Comparable<Object> value) {
+        if (getNullCount(col) == rowCount)
+            return false;
+        return RowPredicate.rangeMayMatch(operator, value, getMin(col), getMax(col));
+    }
+}
@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.SQLTerm;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+import Table.HashIndex;
+import Table.Page;
+import Table.Table;
+import Table.Tuple;
+
+/**
+ * Inserts shuffled batches into an empty table and between the rows of a
+ * filled one, and checks that the rows come back in clustering key order, that
+ * no page holds more rows than allowed, and that the indices find every row.
+ */
+public class BatchInsertTest {
+    static final String emptyTableName = "BatchEmptyStudent";
+    static final String filledTableName = "BatchFilledStudent";
+    static final int pageSize = 10;
+
+    static DBApp engine;
+
+    @BeforeClass
+    public static void openEngine() throws Exception {
+        TestDatabase.deleteTable(emptyTableName);
+        TestDatabase.deleteTable(filledTableName);
+        engine = TestDatabase.open();
+        Page.maximumRowsCountInPage = pageSize;
+    }
+
+    @AfterClass
+    public static void deleteTables() throws IOException {
+        TestDatabase.close();
+        TestDatabase.deleteTable(emptyTableName);
+        TestDatabase.deleteTable(filledTableName);
+    }
+
+    static void createTable(String strTableName) throws ClassNotFoundException, DBAppException, IOException {
+        Hashtable<String, String> htblColNameType = new Hashtable<>();
+        htblColNameType.put("id", "java.lang.Integer");
+        htblColNameType.put("name", "java.lang.String");
+        htblColNameType.put("gpa", "java.lang.Double");
+        engine.createTable(strTableName, "id", htblColNameType);
+        engine.createIndex(strTableName, "gpa", "gpaIndex");
+        engine.createIndex(strTableName, "name", "nameIndex", HashIndex.TYPE);
+    }
+
+    static Hashtable<String, Object> rowOf(int id) {
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        htblColNameValue.put("id", id);
+        htblColNameValue.put("name", "student" + id);
+        htblColNameValue.put("gpa", id / 4.0);
+        return htblColNameValue;
+    }
+
+    /**
+     * @return the rows of the ids from, from + step, ... below to, shuffled
+     */
+    static List<Hashtable<String, Object>> shuffledRows(int from, int to, int step) {
+        List<Hashtable<String, Object>> rows = new ArrayList<>();
+        for (int id = from; id < to; id += step) {
+            rows.add(rowOf(id));
+        }
+        Collections.shuffle(rows, new Random(7));
+        return rows;
+    }
+
+    static List<Integer> selectIds(String strTableName, String colName, String operator, Object value)
+            throws ClassNotFoundException, DBAppException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Tuple> resultSet = engine.selectFromTable(
+                new SQLTerm[] { new SQLTerm(strTableName, colName, operator, value) }, new String[0],
+                new String[] { "id" });
+        while (resultSet.hasNext()) {
+            ids.add((Integer) resultSet.next().getFields()[0]);
+        }
+        return ids;
+    }
+
+    /**
+     * Asserts that the table holds the ids from 0 to count - 1 in clustering
+     * key order, in pages of at most pageSize rows, and that its indices find
+     * each of them.
+     */
+    static void assertTable(String strTableName, int count) throws ClassNotFoundException, DBAppException, IOException {
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            expected.add(id);
+        }
+        assertEquals(expected, selectIds(strTableName, "id", ">=", 0));
+
+        Table table = engine.loadTable(strTableName);
+        int rows = 0;
+        for (int pageNum : table.pageNums) {
+            int size = table.loadPage(pageNum).size();
+            assertTrue("page " + pageNum + " holds " + size + " rows", size > 0 && size <= pageSize);
+            rows += size;
+        }
+        assertEquals(count, rows);
+
+        for (int id = 0; id < count; id++) {
+            assertEquals("the name index finds " + id, Collections.singletonList(id),
+                    selectIds(strTableName, "name", "=", "student" + id));
+            assertEquals("the gpa index finds " + id, Collections.singletonList(id),
+                    selectIds(strTableName, "gpa", "=", id / 4.0));
+        }
+    }
+
+    @Test
+    public void batchIntoEmptyTable() throws Exception {
+        createTable(emptyTableName);
+        engine.insertIntoTable(emptyTableName, shuffledRows(0, 95, 1));
+
+        assertTable(emptyTableName, 95);
+        assertEquals("full pages", 10, engine.loadTable(emptyTableName).pageNums.size());
+    }
+
+    @Test
+    public void batchBetweenExistingRows() throws Exception {
+        createTable(filledTableName);
+        for (int id = 0; id < 100; id += 2) {
+            engine.insertIntoTable(filledTableName, rowOf(id));
+        }
+
+        // every odd id lands between two rows already in the table
+        engine.insertIntoTable(filledTableName, shuffledRows(1, 100, 2));
+        assertTable(filledTableName, 100);
+
+        // a batch below and above every row
+        List<Hashtable<String, Object>> rows = shuffledRows(100, 130, 1);
+        engine.deleteFromTable(filledTableName, rowOf(0));
+        rows.add(rowOf(0));
+        engine.insertIntoTable(filledTableName, rows);
+        assertTable(filledTableName, 130);
+    }
+}
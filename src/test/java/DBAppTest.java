@@ -7,6 +7,7 @@ import Engine.DBApp;
 import Engine.SQLTerm;
 import Exceptions.DBAppException;
 import Table.BPlusTreeIndex;
+import Table.ColumnIndex;
 import Table.Page;
 import Table.Table;
 
@@ -106,11 +107,11 @@ public class DBAppTest {
 
     public static void printTree(String col) throws ClassNotFoundException, IOException {
         Table testTable = engine.loadTable(strTableName);
-        BPlusTreeIndex tree = testTable.loadIndex(col);
-        if (tree == null)
+        ColumnIndex index = testTable.loadIndex(col);
+        if (!(index instanceof BPlusTreeIndex))
             return;
 
-        tree.tree.print();
+        ((BPlusTreeIndex<?>) index).tree.print();
         // System.out.println(tree.tree.search("c"));
     }
 
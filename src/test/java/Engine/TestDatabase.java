@@ -0,0 +1,109 @@
+package Engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import Table.BTree.BTree;
+
+/**
+ * Runs the engine in the working directory for tests, and removes the tables
+ * they create. The engine reads its configuration and writes its tables at
+ * Windows paths, which elsewhere are plain file names in the working
+ * directory; the configuration is copied there when it is missing.
+ */
+public class TestDatabase {
+    static final String configPath = "src\\main\\java\\resources\\DBApp.config";
+    static boolean configCopied = false;
+
+    /**
+     * @return an engine reading the configuration in src/main/java/resources
+     */
+    public static DBApp open() throws IOException {
+        if (!new File(configPath).exists()) {
+            Files.copy(Paths.get("src", "main", "java", "resources", "DBApp.config"), Paths.get(configPath),
+                    StandardCopyOption.REPLACE_EXISTING);
+            configCopied = true;
+        }
+        return new DBApp();
+    }
+
+    /**
+     * Writes everything the engine holds to disk and closes the index files,
+     * so the files of the tables can be deleted.
+     */
+    public static void close() throws IOException {
+        DBApp.checkpoint();
+        BTree.closeAll();
+        if (configCopied) {
+            Files.delete(Paths.get(configPath));
+            configCopied = false;
+        }
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param rows      the metadata rows of the table's columns, as written in
+     *                  metadata.csv
+     * @return the schema of a table that is not in the metadata
+     */
+    public static Schema schema(String tableName, String... rows) {
+        List<String[]> columns = new ArrayList<>();
+        for (String row : rows) {
+            columns.add(row.split(","));
+        }
+        return new Schema(tableName, columns);
+    }
+
+    /**
+     * Removes the files of a table and its rows in metadata.csv.
+     *
+     * @param tableName the name of the table
+     */
+    public static void deleteTable(String tableName) throws IOException {
+        String tableDirectory = "src\\main\\java\\Table\\" + tableName + "\\";
+        for (File file : new File(".").listFiles()) {
+            if (file.getName().startsWith(tableDirectory))
+                file.delete();
+        }
+        deleteRecursively(new File(tableDirectory));
+
+        File metadata = new File("metadata.csv");
+        if (!metadata.exists())
+            return;
+
+        List<String> rows = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(metadata));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(tableName + ","))
+                rows.add(line);
+        }
+        reader.close();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(metadata));
+        for (String row : rows) {
+            writer.write(row);
+            writer.newLine();
+        }
+        writer.close();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,160 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.SQLTerm;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+import Table.BPlusTreeIndex;
+import Table.ColumnIndex;
+import Table.Table;
+import Table.Tuple;
+
+/**
+ * Opens a table written by the first version of the engine: a serialized table
+ * header with string page ranges, pages saved by Java serialization and a B+
+ * tree index on gpa. The files in src/test/resources/legacy hold ids 2, 4, ...,
+ * 24 in pages of four rows, the row with id 2 * i has gpa 0.25 * i.
+ */
+public class LegacyTableTest {
+    static final String strTableName = "LegacyStudent";
+    static final String tableDirectory = "src\\main\\java\\Table\\" + strTableName + "\\";
+    static final String[] metadataRows = {
+            "LegacyStudent,gpa,java.lang.Double,false,gpaIndex,B+tree",
+            "LegacyStudent,name,java.lang.String,false,null,null",
+            "LegacyStudent,id,java.lang.Integer,true,null,null" };
+
+    static DBApp engine;
+
+    /**
+     * Puts the legacy table files where the engine looks for them and adds the
+     * table's columns to metadata.csv, before the engine reads it.
+     */
+    @BeforeClass
+    public static void installLegacyTable() throws IOException {
+        TestDatabase.deleteTable(strTableName);
+        copyResource("LegacyStudent.class", tableDirectory, strTableName + ".class");
+        for (int i = 0; i < 3; i++) {
+            copyResource("page " + i + ".class", tableDirectory + "Pages\\", "page " + i + ".class");
+        }
+        copyResource("gpa.class", tableDirectory + "Indicies\\", "gpa.class");
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter("metadata.csv", true));
+        for (String row : metadataRows) {
+            writer.write(row);
+            writer.newLine();
+        }
+        writer.close();
+
+        engine = TestDatabase.open();
+    }
+
+    @AfterClass
+    public static void deleteTable() throws IOException {
+        TestDatabase.close();
+        TestDatabase.deleteTable(strTableName);
+    }
+
+    static void copyResource(String resource, String directory, String fileName) throws IOException {
+        new File(directory).mkdirs();
+        try (InputStream in = LegacyTableTest.class.getResourceAsStream("/legacy/" + resource)) {
+            Files.copy(in, Paths.get(directory + fileName), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static List<Integer> selectIds(SQLTerm[] arrSQLTerms, String[] strarrOperators)
+            throws ClassNotFoundException, DBAppException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Tuple> resultSet = engine.selectFromTable(arrSQLTerms, strarrOperators);
+        while (resultSet.hasNext()) {
+            ids.add((Integer) resultSet.next().getFields()[2]);
+        }
+        return ids;
+    }
+
+    @Test
+    public void header() throws ClassNotFoundException, IOException {
+        Table table = engine.loadTable(strTableName);
+        assertNotNull("the legacy table opens", table);
+        assertEquals(3, table.pageNums.size());
+        for (Integer pageNum : table.pageRanges.keySet()) {
+            Object[] range = table.pageRanges.get(pageNum);
+            assertTrue("page ranges are parsed to the clustering key type",
+                    range[0] instanceof Integer && range[1] instanceof Integer);
+        }
+        assertFalse("a legacy table stores pages row by row", table.isColumnar());
+    }
+
+    @Test
+    public void index() throws ClassNotFoundException, DBAppException, IOException {
+        ColumnIndex index = engine.loadTable(strTableName).loadIndex("gpa");
+        assertTrue("the legacy index is rebuilt as a B+ tree", index instanceof BPlusTreeIndex);
+
+        SQLTerm[] arrSQLTerms = new SQLTerm[] { new SQLTerm(strTableName, "gpa", "=", 0.5) };
+        assertEquals(Arrays.asList(4), selectIds(arrSQLTerms, new String[0]));
+
+        arrSQLTerms = new SQLTerm[] { new SQLTerm(strTableName, "gpa", ">", 2.5) };
+        assertEquals(Arrays.asList(22, 24), selectIds(arrSQLTerms, new String[0]));
+    }
+
+    @Test
+    public void rangeSelect() throws ClassNotFoundException, DBAppException, IOException {
+        // 10 sorts before 4 as a string, so this needs typed page ranges
+        SQLTerm[] arrSQLTerms = new SQLTerm[] {
+                new SQLTerm(strTableName, "id", ">=", 4),
+                new SQLTerm(strTableName, "id", "<", 11) };
+        assertEquals(Arrays.asList(4, 6, 8, 10), selectIds(arrSQLTerms, new String[] { "AND" }));
+    }
+
+    @Test
+    public void insert() throws ClassNotFoundException, DBAppException, IOException {
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        htblColNameValue.put("id", 11);
+        htblColNameValue.put("name", "new");
+        htblColNameValue.put("gpa", 1.0);
+        engine.insertIntoTable(strTableName, htblColNameValue);
+
+        SQLTerm[] arrSQLTerms = new SQLTerm[] { new SQLTerm(strTableName, "id", ">", 0) };
+        List<Integer> ids = selectIds(arrSQLTerms, new String[0]);
+        assertEquals("rows after inserting into the legacy table", 13, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue("rows stay in clustering key order: " + ids, ids.get(i - 1) < ids.get(i));
+        }
+
+        arrSQLTerms = new SQLTerm[] { new SQLTerm(strTableName, "id", "=", 11) };
+        assertEquals("the inserted row is found", 1, selectIds(arrSQLTerms, new String[0]).size());
+
+        arrSQLTerms = new SQLTerm[] { new SQLTerm(strTableName, "gpa", "=", 1.0) };
+        assertEquals("the rebuilt index holds the new row", Arrays.asList(8, 11),
+                selectIds(arrSQLTerms, new String[0]));
+
+        // the page the row went to keeps a zone map from now on
+        Table table = engine.loadTable(strTableName);
+        int zoneMapCount = 0;
+        for (int pageNum : table.pageNums) {
+            if (table.getZoneMap(pageNum) != null)
+                zoneMapCount++;
+        }
+        assertTrue("a changed page of the legacy table has a zone map", zoneMapCount > 0);
+    }
+}
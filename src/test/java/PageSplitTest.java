@@ -0,0 +1,141 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.SQLTerm;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+import Table.HashIndex;
+import Table.Page;
+import Table.Table;
+import Table.Tuple;
+
+/**
+ * Inserts into a full page at the start of a table and checks that the page is
+ * split in two, that no other page changes, and that the indices follow the
+ * rows moved to the new page.
+ */
+public class PageSplitTest {
+    static final String strTableName = "SplitStudent";
+    static final int pageSize = 10;
+    static final int pageCount = 20;
+
+    static DBApp engine;
+
+    @BeforeClass
+    public static void createTable() throws Exception {
+        TestDatabase.deleteTable(strTableName);
+        engine = TestDatabase.open();
+        Page.maximumRowsCountInPage = pageSize;
+
+        Hashtable<String, String> htblColNameType = new Hashtable<>();
+        htblColNameType.put("id", "java.lang.Integer");
+        htblColNameType.put("name", "java.lang.String");
+        engine.createTable(strTableName, "id", htblColNameType);
+        engine.createIndex(strTableName, "name", "nameIndex", HashIndex.TYPE);
+
+        // even ids in full pages
+        List<Hashtable<String, Object>> rows = new ArrayList<>();
+        for (int id = 0; id < 2 * pageSize * pageCount; id += 2) {
+            rows.add(rowOf(id));
+        }
+        engine.insertIntoTable(strTableName, rows);
+    }
+
+    @AfterClass
+    public static void deleteTable() throws IOException {
+        TestDatabase.close();
+        TestDatabase.deleteTable(strTableName);
+    }
+
+    static Hashtable<String, Object> rowOf(int id) {
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        htblColNameValue.put("id", id);
+        htblColNameValue.put("name", "student" + id);
+        return htblColNameValue;
+    }
+
+    static List<Integer> selectIds(String colName, String operator, Object value)
+            throws ClassNotFoundException, DBAppException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Tuple> resultSet = engine.selectFromTable(
+                new SQLTerm[] { new SQLTerm(strTableName, colName, operator, value) },
+                new String[0], new String[] { "id" });
+        while (resultSet.hasNext()) {
+            ids.add((Integer) resultSet.next().getFields()[0]);
+        }
+        return ids;
+    }
+
+    static List<Object[]> rowsOf(Table table, int pageNum) throws ClassNotFoundException, IOException {
+        List<Object[]> rows = new ArrayList<>();
+        Page page = table.loadPage(pageNum);
+        for (int row = 0; row < page.size(); row++) {
+            rows.add(page.getTuple(row).getFields());
+        }
+        return rows;
+    }
+
+    @Test
+    public void splitFirstPage() throws Exception {
+        Table table = engine.loadTable(strTableName);
+        assertEquals(pageCount, table.pageNums.size());
+
+        // the pages after the first, as they are before the split
+        Vector<Integer> laterPageNums = new Vector<>(table.pageNums.subList(1, pageCount));
+        List<Object[]> laterRanges = new ArrayList<>();
+        List<List<Object[]>> laterRows = new ArrayList<>();
+        for (int pageNum : laterPageNums) {
+            laterRanges.add(table.pageRanges.get(pageNum).clone());
+            laterRows.add(rowsOf(table, pageNum));
+        }
+
+        engine.insertIntoTable(strTableName, rowOf(1));
+
+        // the first page keeps its lower half and the new row, the new page
+        // right after it takes the upper half
+        assertEquals(pageCount + 1, table.pageNums.size());
+        int firstPageNum = table.pageNums.get(0);
+        int newPageNum = table.pageNums.get(1);
+        assertEquals(pageSize / 2 + 1, table.loadPage(firstPageNum).size());
+        assertEquals(pageSize / 2, table.loadPage(newPageNum).size());
+        assertArrayEquals(new Object[] { 0, 8 }, table.pageRanges.get(firstPageNum));
+        assertArrayEquals(new Object[] { 10, 18 }, table.pageRanges.get(newPageNum));
+
+        assertEquals(laterPageNums, new Vector<>(table.pageNums.subList(2, pageCount + 1)));
+        for (int i = 0; i < laterPageNums.size(); i++) {
+            int pageNum = laterPageNums.get(i);
+            assertArrayEquals("range of page " + pageNum, laterRanges.get(i), table.pageRanges.get(pageNum));
+            List<Object[]> rows = rowsOf(table, pageNum);
+            assertEquals("rows of page " + pageNum, laterRows.get(i).size(), rows.size());
+            for (int row = 0; row < rows.size(); row++) {
+                assertArrayEquals("row " + row + " of page " + pageNum, laterRows.get(i).get(row), rows.get(row));
+            }
+        }
+
+        // the rows moved to the new page are found through the index there
+        for (int id = 0; id < 2 * pageSize; id += 2) {
+            assertEquals("the index finds " + id, Collections.singletonList(id), selectIds("name", "=", "student" + id));
+        }
+        assertEquals(Collections.singletonList(1), selectIds("name", "=", "student1"));
+
+        List<Integer> ids = selectIds("id", ">=", 0);
+        assertEquals(pageSize * pageCount + 1, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue("rows stay in clustering key order", ids.get(i - 1) < ids.get(i));
+        }
+    }
+}
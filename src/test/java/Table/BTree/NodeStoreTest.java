@@ -0,0 +1,208 @@
+package Table.BTree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Keeps a B+ tree whose leaves are larger than a block in a node file, and
+ * checks that the nodes are read back through their overflow blocks, that the
+ * blocks of removed nodes are reused, that a tree closed before it is flushed
+ * is read back as last flushed, and that closed stores are opened again.
+ */
+public class NodeStoreTest {
+    static final int order = 16;
+    Path directory;
+    String path;
+
+    // the tree of keys 0 to 499, as serialized after its nodes were flushed
+    byte[] saved;
+
+    @Before
+    public void saveTree() throws IOException {
+        directory = Files.createTempDirectory("node-store-test");
+        path = directory.resolve("tree.btree").toString();
+
+        BTree<Integer, String> tree = new BTree<>(order, Integer.class, path, new StringCodec());
+        insertKeys(tree, 0, 500);
+        tree.flush();
+        assertKeys(tree, 0, 500, 500, 510, "after inserts");
+        saved = serialize(tree);
+    }
+
+    @After
+    public void deleteTree() throws IOException {
+        BTree.closeAll();
+        Files.deleteIfExists(new File(path).toPath());
+        Files.delete(directory);
+    }
+
+    /**
+     * Writes Integer keys and String values.
+     */
+    static class StringCodec implements NodeCodec<Integer, String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void writeKey(DataOutput out, Integer key) throws IOException {
+            out.writeInt(key);
+        }
+
+        @Override
+        public Integer readKey(DataInput in) throws IOException {
+            return in.readInt();
+        }
+
+        @Override
+        public void writeValue(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String readValue(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+
+    /**
+     * @return a value of 600 characters, so a leaf of 16 keys spans three
+     *         blocks
+     */
+    static String valueOf(int key) {
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 600) {
+            value.append(key).append('-');
+        }
+        return value.substring(0, 600);
+    }
+
+    static void insertKeys(BTree<Integer, String> tree, int from, int to) {
+        for (int key = from; key < to; key++) {
+            tree.insert(key, valueOf(key));
+        }
+    }
+
+    static void deleteKeys(BTree<Integer, String> tree, int from, int to) {
+        for (int key = from; key < to; key++) {
+            tree.delete(key);
+        }
+    }
+
+    /**
+     * Asserts that the keys in [from, to) hold their values and that the keys
+     * in [absentFrom, absentTo) are not in the tree.
+     */
+    static void assertKeys(BTree<Integer, String> tree, int from, int to, int absentFrom, int absentTo,
+            String when) {
+        for (int key = from; key < to; key++) {
+            assertEquals("key " + key + " " + when, valueOf(key), tree.search(key));
+        }
+        for (int key = absentFrom; key < absentTo; key++) {
+            assertNull("key " + key + " " + when, tree.search(key));
+        }
+    }
+
+    static byte[] serialize(BTree<Integer, String> tree) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tree);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return a copy of the tree, reading its nodes from the node file
+     */
+    @SuppressWarnings("unchecked")
+    static BTree<Integer, String> deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        BTree<Integer, String> tree = (BTree<Integer, String>) in.readObject();
+        in.close();
+        return tree;
+    }
+
+    @Test
+    public void overflow() throws Exception {
+        BTree.closeAll();
+        BTree<Integer, String> tree = deserialize(saved);
+        assertKeys(tree, 0, 500, 500, 510, "after reading the tree from its node file");
+    }
+
+    @Test
+    public void unflushedFrees() throws Exception {
+        // merged nodes free their blocks, which still hold the tree last flushed
+        BTree<Integer, String> tree = deserialize(saved);
+        deleteKeys(tree, 0, 400);
+        assertKeys(tree, 400, 500, 0, 400, "after deletes");
+
+        BTree.closeAll();
+        tree = deserialize(saved);
+        assertKeys(tree, 0, 500, 500, 510, "after closing a tree with unflushed deletes");
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        long fullLength = new File(path).length();
+
+        BTree<Integer, String> tree = deserialize(saved);
+        deleteKeys(tree, 0, 400);
+        tree.flush();
+        assertEquals("deletes do not shrink or grow the file", fullLength, new File(path).length());
+
+        // the new keys fill the blocks of the removed nodes
+        insertKeys(tree, 1000, 1400);
+        tree.flush();
+        long length = new File(path).length();
+        assertTrue("the file grew from " + fullLength + " to " + length + " bytes", length <= fullLength);
+
+        BTree.closeAll();
+        tree = deserialize(saved);
+        assertKeys(tree, 400, 500, 0, 400, "after reusing freed blocks");
+        assertKeys(tree, 1000, 1400, 500, 1000, "after reusing freed blocks");
+
+        // blocks freed and taken again before a flush are not linked twice
+        deleteKeys(tree, 1000, 1200);
+        insertKeys(tree, 2000, 2200);
+        tree.flush();
+        BTree.closeAll();
+        tree = deserialize(saved);
+        assertKeys(tree, 1200, 1400, 1000, 1200, "after deletes and inserts between two flushes");
+        assertKeys(tree, 2000, 2200, 1400, 2000, "after deletes and inserts between two flushes");
+    }
+
+    @Test
+    public void close() throws Exception {
+        BTree<Integer, String> tree = deserialize(saved);
+        assertNotNull("a key is found before closing", tree.search(450));
+        tree.close();
+        assertEquals("a closed tree opens its node file again", valueOf(450), tree.search(450));
+
+        // a new tree at the path replaces the file and closes the old store
+        NodeStore old = NodeStore.open(path, order, Integer.class, new StringCodec());
+        BTree<Integer, String> replacement = new BTree<>(order, Integer.class, path, new StringCodec());
+        assertTrue("creating a tree at the path closes the previous store", old.isClosed());
+        assertNull("the replacing tree is empty", replacement.search(450));
+
+        assertTrue("the node file exists", replacement.hasNodeFile());
+        BTree.closeAll();
+        Files.delete(new File(path).toPath());
+        assertFalse("a deleted node file is reported missing", replacement.hasNodeFile());
+    }
+}
@@ -0,0 +1,126 @@
+package Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the Bloom filters of a page's columns report every value of the
+ * column, that values not in the column pass at about the requested false
+ * positive rate, and that filters are read back unchanged from their file.
+ */
+public class BloomFilterTest {
+    static final int rowCount = 200;
+    static Path directory;
+    static Page page;
+
+    @BeforeClass
+    public static void buildPage() throws Exception {
+        Page.maximumRowsCountInPage = rowCount;
+        directory = Files.createTempDirectory("bloom-filter-test");
+
+        // row i holds 7 * i, "name" + i, i / 4.0 and a null
+        page = new Page("page 0");
+        for (int i = 0; i < rowCount; i++) {
+            page.addTuple(new Tuple(7 * i, "name" + i, i / 4.0, null));
+        }
+    }
+
+    @AfterClass
+    public static void deleteDirectory() throws IOException {
+        Files.delete(directory);
+    }
+
+    static Object valueOf(int col, int i) {
+        switch (col) {
+            case 0:
+                return 7 * i;
+            case 1:
+                return "name" + i;
+            default:
+                return i / 4.0;
+        }
+    }
+
+    static void assertFilter(BloomFilter filter, int col, double falsePositiveRate, String name) {
+        for (int i = 0; i < rowCount; i++) {
+            assertTrue(name + ": value " + valueOf(col, i) + " is reported absent", filter.mightContain(valueOf(col, i)));
+        }
+
+        // values from rowCount on are not in the column; 7 * i + 1 is no
+        // multiple of 7 either
+        int probes = 20000;
+        int falsePositives = 0;
+        for (int i = rowCount; i < rowCount + probes; i++) {
+            Object value = col == 0 ? (Object) (7 * i + 1) : valueOf(col, i);
+            if (filter.mightContain(value))
+                falsePositives++;
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(name + ": false positive rate " + rate + " for a requested " + falsePositiveRate,
+                rate <= 2 * falsePositiveRate);
+    }
+
+    static void assertColumns(Page page, String pageName) {
+        double[] rates = { 0.001, 0.01, 0.1 };
+        for (double rate : rates) {
+            for (int col = 0; col < 3; col++) {
+                assertFilter(BloomFilter.of(page, col, rate), col, rate, pageName + " column " + col + " at " + rate);
+            }
+        }
+
+        BloomFilter nulls = BloomFilter.of(page, 3, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(pageName + ": a column of nulls reports " + i, nulls.mightContain(i));
+        }
+    }
+
+    @Test
+    public void columns() {
+        assertColumns(page, "page");
+    }
+
+    @Test
+    public void columnsOfPageReadBack() throws Exception {
+        // the columns of a page read from disk hash their values the same way
+        Path pagePath = directory.resolve("page 0" + SlottedPage.EXTENSION);
+        SlottedPage.write(pagePath, page);
+        Page readPage = SlottedPage.read(pagePath, "page 0");
+        Files.delete(pagePath);
+
+        assertColumns(readPage, "page read back");
+    }
+
+    @Test
+    public void file() throws Exception {
+        BloomFilter[] filters = { BloomFilter.of(page, 0, 0.01), null, BloomFilter.of(page, 2, 0.05), null };
+        Path path = directory.resolve("page 0" + BloomFilter.EXTENSION);
+        BloomFilter.writeAll(path, filters);
+        BloomFilter[] readFilters = BloomFilter.readAll(path);
+        Files.delete(path);
+
+        assertEquals(filters.length, readFilters.length);
+        assertNull("columns without a filter stay without one", readFilters[1]);
+        assertNull("columns without a filter stay without one", readFilters[3]);
+        for (int i = 0; i < 1000; i++) {
+            Object integer = 7 * i + i % 7;
+            Object fraction = i / 4.0 + (i % 3) / 10.0;
+            assertEquals("a filter read back answers for " + integer, filters[0].mightContain(integer),
+                    readFilters[0].mightContain(integer));
+            assertEquals("a filter read back answers for " + fraction, filters[2].mightContain(fraction),
+                    readFilters[2].mightContain(fraction));
+        }
+        assertFilter(readFilters[0], 0, 0.01, "filter read back");
+
+        assertNull("a page without a filter file has no filters", BloomFilter.readAll(path));
+    }
+}
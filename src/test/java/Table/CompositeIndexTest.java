@@ -0,0 +1,190 @@
+package Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.SQLTerm;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+
+/**
+ * Builds a composite index on (dept, age) and checks that its keys sort
+ * lexicographically, that it answers equalities on dept with a range on age,
+ * and that selects through it return the rows a scan of the table would, also
+ * after updates, deletes and inserts.
+ */
+public class CompositeIndexTest {
+    static final String strTableName = "CompositeStudent";
+    static final int rowCount = 400;
+
+    static DBApp engine;
+
+    // id -> { dept, age }, the rows the table should hold
+    static final TreeMap<Integer, Object[]> rows = new TreeMap<>();
+
+    @BeforeClass
+    public static void createTable() throws Exception {
+        TestDatabase.deleteTable(strTableName);
+        engine = TestDatabase.open();
+        Page.maximumRowsCountInPage = 10;
+
+        Hashtable<String, String> htblColNameType = new Hashtable<>();
+        htblColNameType.put("id", "java.lang.Integer");
+        htblColNameType.put("dept", "java.lang.String");
+        htblColNameType.put("age", "java.lang.Integer");
+        engine.createTable(strTableName, "id", htblColNameType);
+
+        // half of the rows are indexed by the build, half by inserts
+        for (int id = 0; id < rowCount; id++) {
+            if (id == rowCount / 2)
+                engine.createIndex(strTableName, new String[] { "dept", "age" }, "deptAgeIndex");
+            insert(id, "d" + id % 5, 18 + id * 7 % 13);
+        }
+    }
+
+    @AfterClass
+    public static void deleteTable() throws IOException {
+        TestDatabase.close();
+        TestDatabase.deleteTable(strTableName);
+    }
+
+    static void insert(int id, String dept, int age) throws ClassNotFoundException, DBAppException, IOException {
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        htblColNameValue.put("id", id);
+        htblColNameValue.put("dept", dept);
+        htblColNameValue.put("age", age);
+        engine.insertIntoTable(strTableName, htblColNameValue);
+        rows.put(id, new Object[] { dept, age });
+    }
+
+    static SQLTerm term(String colName, String operator, Object value) {
+        return new SQLTerm(strTableName, colName, operator, value);
+    }
+
+    static List<Integer> selectIds(SQLTerm[] arrSQLTerms, String... strarrOperators)
+            throws ClassNotFoundException, DBAppException, IOException {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Tuple> resultSet = engine.selectFromTable(arrSQLTerms, strarrOperators, new String[] { "id" });
+        while (resultSet.hasNext()) {
+            ids.add((Integer) resultSet.next().getFields()[0]);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return the ids of the rows whose dept and age satisfy the condition
+     */
+    static List<Integer> expectedIds(Predicate<Object[]> condition) {
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, Object[]> row : rows.entrySet()) {
+            if (condition.test(row.getValue()))
+                ids.add(row.getKey());
+        }
+        return ids;
+    }
+
+    static CompositeIndex loadIndex() throws ClassNotFoundException, IOException {
+        return (CompositeIndex) engine.loadTable(strTableName).loadIndex("dept,age");
+    }
+
+    @Test
+    public void keyOrder() {
+        assertTrue(CompositeKey.of("d1", 30).compareTo(CompositeKey.of("d2", 5)) < 0);
+        assertTrue(CompositeKey.of("d2", 5).compareTo(CompositeKey.of("d2", 30)) < 0);
+        assertTrue(CompositeKey.lowerBound("d2").compareTo(CompositeKey.of("d2", Integer.MIN_VALUE)) < 0);
+        assertTrue(CompositeKey.upperBound("d2").compareTo(CompositeKey.of("d2", Integer.MAX_VALUE)) > 0);
+        assertTrue(CompositeKey.upperBound("d2").compareTo(CompositeKey.of("d3", Integer.MIN_VALUE)) < 0);
+        assertTrue(CompositeKey.lowerBound("d2", 20).compareTo(CompositeKey.of("d2", 20)) < 0);
+        assertTrue(CompositeKey.upperBound("d2", 20).compareTo(CompositeKey.of("d2", 20)) > 0);
+        assertTrue(CompositeKey.upperBound("d2", 20).compareTo(CompositeKey.of("d2", 21)) < 0);
+    }
+
+    @Test
+    public void match() throws ClassNotFoundException, IOException {
+        CompositeIndex index = loadIndex();
+
+        SQLTerm[] arrSQLTerms = { term("age", "<", 25), term("id", ">", 100), term("age", ">=", 20),
+                term("dept", "=", "d2") };
+        CompositeIndex.Match match = index.match(arrSQLTerms);
+        assertEquals("[true, false, true, true]", Arrays.toString(match.usedTerms));
+
+        // the range of keys holds exactly the rows matching the terms on dept
+        // and age
+        assertEquals(expectedIds(r -> r[0].equals("d2") && (Integer) r[1] >= 20 && (Integer) r[1] < 25).size(),
+                match.search().cardinality());
+        assertEquals(expectedIds(r -> r[0].equals("d4") && (Integer) r[1] > 25).size(),
+                index.match(new SQLTerm[] { term("dept", "=", "d4"), term("age", ">", 25) }).search().cardinality());
+        assertEquals(expectedIds(r -> r[0].equals("d4") && (Integer) r[1] <= 25).size(),
+                index.match(new SQLTerm[] { term("dept", "=", "d4"), term("age", "<=", 25) }).search().cardinality());
+        assertEquals(expectedIds(r -> r[0].equals("d3") && r[1].equals(21)).size(),
+                index.match(new SQLTerm[] { term("age", "=", 21), term("dept", "=", "d3") }).search().cardinality());
+        assertEquals(expectedIds(r -> r[0].equals("d1")).size(),
+                index.match(new SQLTerm[] { term("dept", "=", "d1") }).search().cardinality());
+
+        // without a condition on dept the index has no run of keys to read
+        assertNull(index.match(new SQLTerm[] { term("age", "=", 20) }));
+    }
+
+    @Test
+    public void selects() throws ClassNotFoundException, DBAppException, IOException {
+        assertSelects();
+    }
+
+    static void assertSelects() throws ClassNotFoundException, DBAppException, IOException {
+        assertEquals(expectedIds(r -> r[0].equals("d2") && (Integer) r[1] >= 20 && (Integer) r[1] < 25),
+                selectIds(new SQLTerm[] { term("dept", "=", "d2"), term("age", ">=", 20), term("age", "<", 25) },
+                        "AND", "AND"));
+        assertEquals(expectedIds(r -> r[0].equals("d3") && r[1].equals(21)),
+                selectIds(new SQLTerm[] { term("age", "=", 21), term("dept", "=", "d3") }, "AND"));
+        assertEquals(expectedIds(r -> r[0].equals("d1")),
+                selectIds(new SQLTerm[] { term("dept", "=", "d1") }));
+        assertEquals(expectedIds(r -> r[0].equals("d4") && (Integer) r[1] > 25),
+                selectIds(new SQLTerm[] { term("age", ">", 25), term("dept", "=", "d4") }, "AND"));
+        assertEquals(expectedIds(r -> r[0].equals("d0") && (Integer) r[1] <= 19 || r[1].equals(30)),
+                selectIds(new SQLTerm[] { term("dept", "=", "d0"), term("age", "<=", 19), term("age", "=", 30) },
+                        "AND", "OR"));
+    }
+
+    @Test
+    public void changes() throws ClassNotFoundException, DBAppException, IOException {
+        // moves rows to other keys of the index
+        for (int id = 0; id < rowCount; id += 9) {
+            Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+            htblColNameValue.put("age", 40 + id % 3);
+            engine.updateTable(strTableName, Integer.toString(id), htblColNameValue);
+            rows.get(id)[1] = 40 + id % 3;
+        }
+
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        htblColNameValue.put("dept", "d2");
+        htblColNameValue.put("age", 20);
+        engine.deleteFromTable(strTableName, htblColNameValue);
+        rows.values().removeIf(r -> r[0].equals("d2") && r[1].equals(20));
+
+        for (int id = rowCount; id < rowCount + 50; id++) {
+            insert(id, "d" + id % 3, 20 + id % 6);
+        }
+
+        assertSelects();
+        assertEquals(expectedIds(r -> r[0].equals("d1") && (Integer) r[1] >= 40),
+                selectIds(new SQLTerm[] { term("dept", "=", "d1"), term("age", ">=", 40) }, "AND"));
+    }
+}
@@ -0,0 +1,169 @@
+package Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.SQLTerm;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+
+/**
+ * Builds an index on (dept, age) carrying gpa, then hides the table's pages
+ * and checks that selects and counts reading only these columns still return
+ * every matching row, so they are answered from the index alone.
+ */
+public class CoveringIndexTest {
+    static final String strTableName = "CoveringStudent";
+    static final int rowCount = 300;
+
+    static DBApp engine;
+
+    // { id, dept, age, gpa, name } of each row
+    static final List<Object[]> rows = new ArrayList<>();
+
+    @BeforeClass
+    public static void createTable() throws Exception {
+        TestDatabase.deleteTable(strTableName);
+        engine = TestDatabase.open();
+        Page.maximumRowsCountInPage = 10;
+
+        Hashtable<String, String> htblColNameType = new Hashtable<>();
+        htblColNameType.put("id", "java.lang.Integer");
+        htblColNameType.put("dept", "java.lang.String");
+        htblColNameType.put("age", "java.lang.Integer");
+        htblColNameType.put("gpa", "java.lang.Double");
+        htblColNameType.put("name", "java.lang.String");
+        engine.createTable(strTableName, "id", htblColNameType);
+
+        for (int id = 0; id < rowCount; id++) {
+            Object[] row = { id, "d" + id % 4, 18 + id * 5 % 13, id % 9 / 2.0, "student" + id };
+            Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+            htblColNameValue.put("id", row[0]);
+            htblColNameValue.put("dept", row[1]);
+            htblColNameValue.put("age", row[2]);
+            htblColNameValue.put("gpa", row[3]);
+            htblColNameValue.put("name", row[4]);
+            engine.insertIntoTable(strTableName, htblColNameValue);
+            rows.add(row);
+        }
+        engine.createIndex(strTableName, new String[] { "dept", "age" }, new String[] { "gpa" }, "deptAgeIndex");
+
+        // a query reading a page now finds it missing
+        DBApp.checkpoint();
+        for (int pageNum : engine.loadTable(strTableName).pageNums) {
+            BufferPool.getInstance().discardPage(strTableName, pageNum);
+            Files.move(pagePath(pageNum), hiddenPagePath(pageNum));
+        }
+    }
+
+    @AfterClass
+    public static void deleteTable() throws Exception {
+        for (int pageNum : engine.loadTable(strTableName).pageNums) {
+            Files.move(hiddenPagePath(pageNum), pagePath(pageNum));
+        }
+        TestDatabase.close();
+        TestDatabase.deleteTable(strTableName);
+    }
+
+    static Path pagePath(int pageNum) {
+        return Paths.get("src\\main\\java\\Table\\" + strTableName + "\\Pages\\page " + pageNum
+                + SlottedPage.EXTENSION);
+    }
+
+    static Path hiddenPagePath(int pageNum) {
+        return Paths.get(pagePath(pageNum) + ".hidden");
+    }
+
+    static SQLTerm term(String colName, String operator, Object value) {
+        return new SQLTerm(strTableName, colName, operator, value);
+    }
+
+    /**
+     * @return the selected columns of each row, sorted
+     */
+    static List<String> select(SQLTerm[] arrSQLTerms, String[] strarrOperators, String... colNames)
+            throws ClassNotFoundException, DBAppException, IOException {
+        List<String> result = new ArrayList<>();
+        Iterator<Tuple> resultSet = engine.selectFromTable(arrSQLTerms, strarrOperators, colNames);
+        while (resultSet.hasNext()) {
+            result.add(Arrays.toString(resultSet.next().getFields()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @param condition a condition on { id, dept, age, gpa, name }
+     * @param cols      the positions of the selected columns in a row
+     * @return the selected columns of the rows satisfying the condition, sorted
+     */
+    static List<String> expected(Predicate<Object[]> condition, int... cols) {
+        List<String> result = new ArrayList<>();
+        for (Object[] row : rows) {
+            if (!condition.test(row))
+                continue;
+            Object[] selected = new Object[cols.length];
+            for (int i = 0; i < cols.length; i++) {
+                selected[i] = row[cols[i]];
+            }
+            result.add(Arrays.toString(selected));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void selectFromIndex() throws ClassNotFoundException, DBAppException, IOException {
+        assertEquals(expected(r -> r[1].equals("d2") && (Integer) r[2] >= 20, 1, 2, 3),
+                select(new SQLTerm[] { term("dept", "=", "d2"), term("age", ">=", 20) }, new String[] { "AND" },
+                        "dept", "age", "gpa"));
+        assertEquals(expected(r -> r[1].equals("d1") && r[2].equals(23), 3),
+                select(new SQLTerm[] { term("age", "=", 23), term("dept", "=", "d1") }, new String[] { "AND" },
+                        "gpa"));
+
+        // without a condition on dept, every key of the index is read
+        assertEquals(expected(r -> (Integer) r[2] < 22, 2, 3),
+                select(new SQLTerm[] { term("age", "<", 22) }, new String[0], "age", "gpa"));
+        assertEquals(expected(r -> r[1].equals("d0") || (Double) r[3] > 3.5, 1, 3),
+                select(new SQLTerm[] { term("dept", "=", "d0"), term("gpa", ">", 3.5) }, new String[] { "OR" },
+                        "dept", "gpa"));
+    }
+
+    @Test
+    public void countFromIndex() throws ClassNotFoundException, DBAppException, IOException {
+        assertEquals(expected(r -> r[1].equals("d1") && (Double) r[3] > 1.0).size(),
+                engine.countFromTable(new SQLTerm[] { term("dept", "=", "d1"), term("gpa", ">", 1.0) },
+                        new String[] { "AND" }));
+        assertEquals(expected(r -> r[1].equals("d3")).size(),
+                engine.countFromTable(new SQLTerm[] { term("dept", "=", "d3") }, new String[0]));
+        assertEquals(expected(r -> (Integer) r[2] > 25 ^ r[1].equals("d2")).size(),
+                engine.countFromTable(new SQLTerm[] { term("age", ">", 25), term("dept", "=", "d2") },
+                        new String[] { "XOR" }));
+    }
+
+    @Test
+    public void pagesAreHidden() throws ClassNotFoundException, DBAppException, IOException {
+        // name is not in the index, so these read the missing pages
+        assertTrue(expected(r -> r[1].equals("d2"), 4).size() > 0);
+        assertEquals(Collections.emptyList(),
+                select(new SQLTerm[] { term("dept", "=", "d2") }, new String[0], "name"));
+        assertEquals(0, engine.countFromTable(new SQLTerm[] { term("name", ">", "a") }, new String[0]));
+    }
+}
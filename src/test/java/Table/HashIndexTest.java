@@ -0,0 +1,135 @@
+package Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Hashtable;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import Engine.DBApp;
+import Engine.TestDatabase;
+
+/**
+ * Fills a hash index until its buckets split over several rounds, and checks
+ * that every key is still found after the splits, after removals and after the
+ * index is saved and read back.
+ */
+public class HashIndexTest {
+    static final String strTableName = "HashStudent";
+    static final int rowCount = 1000;
+
+    static DBApp engine;
+
+    @BeforeClass
+    public static void createTable() throws Exception {
+        TestDatabase.deleteTable(strTableName);
+        engine = TestDatabase.open();
+
+        Hashtable<String, String> htblColNameType = new Hashtable<>();
+        htblColNameType.put("id", "java.lang.Integer");
+        htblColNameType.put("name", "java.lang.String");
+        engine.createTable(strTableName, "id", htblColNameType);
+
+        // every row before the index is created is added by the build, the
+        // rest one by one through inserts
+        Hashtable<String, Object> htblColNameValue = new Hashtable<>();
+        for (int id = 0; id < rowCount; id++) {
+            if (id == rowCount / 2)
+                engine.createIndex(strTableName, "name", "nameIndex", HashIndex.TYPE);
+
+            htblColNameValue.clear();
+            htblColNameValue.put("id", id);
+            htblColNameValue.put("name", nameOf(id));
+            engine.insertIntoTable(strTableName, htblColNameValue);
+        }
+    }
+
+    @AfterClass
+    public static void deleteTable() throws IOException {
+        TestDatabase.close();
+        TestDatabase.deleteTable(strTableName);
+    }
+
+    static String nameOf(int id) {
+        return "student" + id;
+    }
+
+    static HashIndex loadIndex() throws ClassNotFoundException, IOException {
+        return (HashIndex) engine.loadTable(strTableName).loadIndex("name");
+    }
+
+    /**
+     * Asserts that the ids in [from, to) are found under their names, and that
+     * the others are not.
+     */
+    static void assertKeys(HashIndex index, int from, int to, String when) {
+        for (int id = 0; id < rowCount; id++) {
+            RowIdList rowIds = index.search(nameOf(id));
+            if (id >= from && id < to) {
+                assertNotNull(nameOf(id) + " " + when, rowIds);
+                assertEquals(nameOf(id) + " " + when, 1, rowIds.size());
+            } else {
+                assertNull(nameOf(id) + " " + when, rowIds);
+            }
+        }
+        assertEquals("keys " + when, to - from, index.size());
+    }
+
+    @Test
+    public void splits() throws ClassNotFoundException, IOException {
+        HashIndex index = loadIndex();
+        // 16 buckets of at most 4 keys on average hold 64 keys, so 1000 keys
+        // need at least 250 buckets
+        assertTrue("buckets split, got " + index.bucketCount(), index.bucketCount() >= rowCount / 4);
+        assertKeys(index, 0, rowCount, "after the splits");
+        assertNull("an absent key is not found", index.search("absent"));
+    }
+
+    @Test
+    public void serialization() throws ClassNotFoundException, IOException {
+        HashIndex index = loadIndex();
+        HashIndex copy = copy(index);
+        assertEquals("the buckets are rebuilt when the index is read", index.bucketCount(), copy.bucketCount());
+        assertKeys(copy, 0, rowCount, "after reading the index back");
+    }
+
+    @Test
+    public void removals() throws ClassNotFoundException, IOException {
+        // the open index is shared by the other tests, so a copy is changed
+        HashIndex index = copy(loadIndex());
+        for (int id = 0; id < rowCount / 2; id++) {
+            RowIdList rowIds = index.search(nameOf(id));
+            index.removeRowId(nameOf(id), rowIds.get(0));
+        }
+        assertKeys(index, rowCount / 2, rowCount, "after removals");
+
+        // removing a row id the key does not hold leaves the key in place
+        index.removeRowId(nameOf(rowCount - 1), -1L);
+        assertNotNull("removing an absent row id keeps the key", index.search(nameOf(rowCount - 1)));
+    }
+
+    /**
+     * @return the index as read back after it is serialized
+     */
+    static HashIndex copy(HashIndex index) throws ClassNotFoundException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(index);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        HashIndex copy = (HashIndex) in.readObject();
+        in.close();
+        return copy;
+    }
+}
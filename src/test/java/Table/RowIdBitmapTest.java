@@ -0,0 +1,167 @@
+package Table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/**
+ * Checks RowIdBitmap against a HashSet of the same row ids. The sets mix sparse
+ * containers, kept as sorted arrays, with dense ones, kept as bitmaps, so AND,
+ * OR and XOR run on every pair of container types, and results cross the 4096
+ * values at which a container changes representation in both directions.
+ */
+public class RowIdBitmapTest {
+    final Random random = new Random(42);
+
+    /**
+     * Adds row ids of a page to both sets. Slots below 65536 share a
+     * container, the next 65536 slots share the next one.
+     *
+     * @param count number of distinct slots to add, above 4096 the container
+     *              holding them is a bitmap
+     */
+    void addSlots(RowIdBitmap bitmap, HashSet<Long> rowIds, int pageNum, int firstSlot, int count) {
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = firstSlot; slot < firstSlot + 65536; slot++) {
+            slots.add(slot);
+        }
+        // shuffled, so values are also inserted in the middle of a container
+        Collections.shuffle(slots, random);
+        for (int i = 0; i < count; i++) {
+            long rowId = RowIdList.rowId(pageNum, slots.get(i));
+            bitmap.add(rowId);
+            rowIds.add(rowId);
+        }
+    }
+
+    void assertSameRowIds(RowIdBitmap bitmap, HashSet<Long> rowIds, String name) {
+        TreeSet<Long> sorted = new TreeSet<>(rowIds);
+        assertEquals(name + ": cardinality", sorted.size(), bitmap.cardinality());
+        assertEquals(name + ": isEmpty", sorted.isEmpty(), bitmap.isEmpty());
+
+        long[] expected = new long[sorted.size()];
+        int i = 0;
+        for (long rowId : sorted) {
+            expected[i++] = rowId;
+        }
+        assertArrayEquals(name + ": row ids", expected, bitmap.toArray());
+
+        Vector<Integer> pageNums = new Vector<>();
+        for (long rowId : sorted) {
+            int pageNum = RowIdList.getPageNum(rowId);
+            if (pageNums.isEmpty() || pageNums.lastElement() != pageNum)
+                pageNums.add(pageNum);
+        }
+        assertEquals(name + ": pages", pageNums, bitmap.getPageNums());
+
+        for (int probe = 0; probe < 2000; probe++) {
+            long rowId = RowIdList.rowId(random.nextInt(6), random.nextInt(2 * 65536));
+            assertEquals(name + ": contains(" + rowId + ")", rowIds.contains(rowId), bitmap.contains(rowId));
+        }
+    }
+
+    @Test
+    public void conversions() {
+        RowIdBitmap bitmap = new RowIdBitmap();
+        HashSet<Long> rowIds = new HashSet<>();
+        addSlots(bitmap, rowIds, 0, 0, 4096);
+        assertSameRowIds(bitmap, rowIds, "a full array container");
+
+        // the 4097th value turns the array into a bitmap
+        addSlots(bitmap, rowIds, 0, 0, 5000);
+        assertSameRowIds(bitmap, rowIds, "an array grown into a bitmap");
+
+        // adding a value already present changes nothing
+        bitmap.add(rowIds.iterator().next());
+        assertSameRowIds(bitmap, rowIds, "a bitmap after adding a present value");
+
+        RowIdList postings = new RowIdList();
+        for (long rowId : rowIds) {
+            postings.add(rowId);
+        }
+        assertSameRowIds(RowIdBitmap.of(postings), rowIds, "a bitmap built from a posting list");
+        assertSameRowIds(RowIdBitmap.of(null), new HashSet<Long>(), "the set of no posting list");
+    }
+
+    /**
+     * @return a set whose containers are, page by page, absent, sparse arrays,
+     *         nearly full arrays or bitmaps
+     */
+    RowIdBitmap randomSet(HashSet<Long> rowIds) {
+        int[] counts = { 0, 50, 3000, 4096, 6000, 40000 };
+        RowIdBitmap bitmap = new RowIdBitmap();
+        for (int pageNum = 0; pageNum < 6; pageNum++) {
+            for (int container = 0; container < 2; container++) {
+                int count = counts[random.nextInt(counts.length)];
+                addSlots(bitmap, rowIds, pageNum, container * 65536, count);
+            }
+        }
+        return bitmap;
+    }
+
+    @Test
+    public void operations() {
+        for (int round = 0; round < 20; round++) {
+            HashSet<Long> a = new HashSet<>();
+            HashSet<Long> b = new HashSet<>();
+            RowIdBitmap bitmapA = randomSet(a);
+            RowIdBitmap bitmapB = randomSet(b);
+
+            HashSet<Long> and = new HashSet<>(a);
+            and.retainAll(b);
+            HashSet<Long> or = new HashSet<>(a);
+            or.addAll(b);
+            HashSet<Long> xor = new HashSet<>(or);
+            xor.removeAll(and);
+
+            assertSameRowIds(bitmapA.and(bitmapB), and, "round " + round + " AND");
+            assertSameRowIds(bitmapA.or(bitmapB), or, "round " + round + " OR");
+            assertSameRowIds(bitmapA.xor(bitmapB), xor, "round " + round + " XOR");
+            assertSameRowIds(bitmapB.and(bitmapA), and, "round " + round + " AND reversed");
+
+            // the operands are left unchanged
+            assertSameRowIds(bitmapA, a, "round " + round + " first operand");
+            assertSameRowIds(bitmapB, b, "round " + round + " second operand");
+        }
+    }
+
+    @Test
+    public void shrinking() {
+        // two bitmaps sharing 100 values AND to an array
+        RowIdBitmap a = new RowIdBitmap();
+        RowIdBitmap b = new RowIdBitmap();
+        HashSet<Long> and = new HashSet<>();
+        for (int slot = 0; slot < 10000; slot++) {
+            a.add(RowIdList.rowId(1, slot));
+            b.add(RowIdList.rowId(1, slot + 9900));
+            if (slot >= 9900)
+                and.add(RowIdList.rowId(1, slot));
+        }
+        assertSameRowIds(a.and(b), and, "AND of bitmaps shrunk to an array");
+
+        // two arrays of 3000 values OR to a bitmap
+        RowIdBitmap c = new RowIdBitmap();
+        RowIdBitmap d = new RowIdBitmap();
+        HashSet<Long> or = new HashSet<>();
+        for (int slot = 0; slot < 3000; slot++) {
+            c.add(RowIdList.rowId(2, 2 * slot));
+            d.add(RowIdList.rowId(2, 2 * slot + 1));
+            or.add(RowIdList.rowId(2, 2 * slot));
+            or.add(RowIdList.rowId(2, 2 * slot + 1));
+        }
+        assertSameRowIds(c.or(d), or, "OR of arrays grown into a bitmap");
+
+        // a set XORed with itself has no container left
+        assertSameRowIds(a.xor(a), new HashSet<Long>(), "XOR of a set with itself");
+        assertSameRowIds(c.xor(c), new HashSet<Long>(), "XOR of an array set with itself");
+    }
+}
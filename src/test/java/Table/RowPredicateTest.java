@@ -0,0 +1,198 @@
+package Table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import Engine.SQLTerm;
+import Engine.Schema;
+import Engine.TestDatabase;
+import Exceptions.DBAppException;
+
+/**
+ * Checks that compiled conditions bind AND tighter than OR and OR tighter than
+ * XOR, that each term compares its column by the column's type, and that rows
+ * tested in a page match as their fields do.
+ */
+public class RowPredicateTest {
+    static final String tableName = "Predicate";
+    static final Schema schema = TestDatabase.schema(tableName,
+            "Predicate,a,java.lang.Integer,true,null,null",
+            "Predicate,b,java.lang.Double,false,null,null",
+            "Predicate,c,java.lang.String,false,null,null");
+
+    // terms that hold on the row (1, 1.0, "x") and terms that do not
+    static final SQLTerm T = new SQLTerm(tableName, "a", "=", 1);
+    static final SQLTerm F = new SQLTerm(tableName, "b", ">", 1.0);
+    static final Object[] row = { 1, 1.0, "x" };
+
+    static boolean matches(SQLTerm[] terms, String... operators) throws DBAppException {
+        return RowPredicate.compile(terms, operators, schema).matches(row);
+    }
+
+    @Test
+    public void andBindsTighterThanOr() throws DBAppException {
+        assertTrue(matches(new SQLTerm[] { T, T, F }, "OR", "AND"));
+        assertTrue(matches(new SQLTerm[] { F, T, T }, "AND", "OR"));
+        assertFalse(matches(new SQLTerm[] { F, T, F }, "OR", "AND"));
+    }
+
+    @Test
+    public void orBindsTighterThanXor() throws DBAppException {
+        // T XOR (F OR T), not (T XOR F) OR T
+        assertFalse(matches(new SQLTerm[] { T, F, T }, "XOR", "OR"));
+        // (T OR F) XOR T
+        assertFalse(matches(new SQLTerm[] { T, F, T }, "OR", "XOR"));
+        // T XOR (T AND F), not (T XOR T) AND F
+        assertTrue(matches(new SQLTerm[] { T, T, F }, "XOR", "AND"));
+        assertTrue(matches(new SQLTerm[] { T, T, T }, "XOR", "XOR"));
+        // (F OR (F AND T)) XOR (T AND T)
+        assertTrue(matches(new SQLTerm[] { F, F, T, T, T }, "OR", "AND", "XOR", "AND"));
+    }
+
+    /**
+     * Compares compiled conditions of up to six terms with a recursive descent
+     * evaluation of the same expression.
+     */
+    @Test
+    public void randomExpressions() throws DBAppException {
+        String[] operatorNames = { "AND", "OR", "XOR" };
+        Random random = new Random(3);
+        for (int round = 0; round < 2000; round++) {
+            int termCount = 1 + random.nextInt(6);
+            SQLTerm[] terms = new SQLTerm[termCount];
+            boolean[] values = new boolean[termCount];
+            String[] operators = new String[termCount - 1];
+            for (int i = 0; i < termCount; i++) {
+                values[i] = random.nextBoolean();
+                terms[i] = values[i] ? T : F;
+                if (i > 0)
+                    operators[i - 1] = operatorNames[random.nextInt(3)];
+            }
+
+            boolean expected = new Expression(values, operators).xor();
+            assertEquals(String.join(" ", operators) + " over " + Arrays.toString(values), expected,
+                    matches(terms, operators));
+        }
+    }
+
+    /**
+     * Evaluates xor := or (XOR or)*, or := and (OR and)*, and := term (AND term)*.
+     */
+    static class Expression {
+        final boolean[] values;
+        final String[] operators;
+        int next = 0;
+
+        Expression(boolean[] values, String[] operators) {
+            this.values = values;
+            this.operators = operators;
+        }
+
+        /**
+         * @return true if the operator after the last term read is the given one
+         */
+        boolean isNext(String operator) {
+            return next - 1 < operators.length && operators[next - 1].equals(operator);
+        }
+
+        boolean xor() {
+            boolean result = or();
+            while (isNext("XOR")) {
+                result ^= or();
+            }
+            return result;
+        }
+
+        boolean or() {
+            boolean result = and();
+            while (isNext("OR")) {
+                result |= and();
+            }
+            return result;
+        }
+
+        boolean and() {
+            boolean result = values[next++];
+            while (isNext("AND")) {
+                result &= values[next++];
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void typedComparisons() throws DBAppException {
+        Object[] fields = { 10, 2.5, "b" };
+        String[] operators = { "=", "!=", ">", ">=", "<", "<=" };
+        boolean[] belowValue = { false, true, true, true, false, false };
+        boolean[] atValue = { true, false, false, true, false, true };
+        Object[][] values = { { 9, 2.25, "a" }, { 10, 2.5, "b" } };
+
+        for (int col = 0; col < 3; col++) {
+            String colName = schema.getColName(col);
+            for (int i = 0; i < operators.length; i++) {
+                RowPredicate below = RowPredicate.compile(
+                        new SQLTerm[] { new SQLTerm(tableName, colName, operators[i], values[0][col]) },
+                        new String[0], schema);
+                RowPredicate at = RowPredicate.compile(
+                        new SQLTerm[] { new SQLTerm(tableName, colName, operators[i], values[1][col]) },
+                        new String[0], schema);
+                assertEquals(colName + " " + operators[i] + " " + values[0][col], belowValue[i], below.matches(fields));
+                assertEquals(colName + " " + operators[i] + " " + values[1][col], atValue[i], at.matches(fields));
+            }
+        }
+
+        // 10 sorts before 9 as a string, not as an integer
+        RowPredicate greater = RowPredicate.compile(new SQLTerm[] { new SQLTerm(tableName, "a", ">", 9) },
+                new String[0], schema);
+        assertTrue(greater.matches(fields));
+
+        // a null field satisfies no term
+        assertFalse(greater.matches(new Object[] { null, 2.5, "b" }));
+    }
+
+    @Test
+    public void rowsInPage() throws Exception {
+        Page.maximumRowsCountInPage = 200;
+        Page page = new Page("page 0");
+        Random random = new Random(5);
+        for (int i = 0; i < 100; i++) {
+            page.addTuple(new Tuple(random.nextInt(20), random.nextInt(8) / 2.0,
+                    random.nextInt(10) == 0 ? null : "s" + random.nextInt(5)));
+        }
+
+        RowPredicate predicate = RowPredicate.compile(new SQLTerm[] {
+                new SQLTerm(tableName, "a", ">=", 10),
+                new SQLTerm(tableName, "b", "<", 2.0),
+                new SQLTerm(tableName, "c", "=", "s3"),
+                new SQLTerm(tableName, "a", "!=", 4) }, new String[] { "AND", "OR", "XOR" }, schema);
+        for (int row = 0; row < page.size(); row++) {
+            assertEquals("row " + row, predicate.matches(page.getTuple(row).getFields()), predicate.matches(page, row));
+        }
+    }
+
+    @Test
+    public void invalidConditions() {
+        assertInvalid(new SQLTerm[] { T, F }, new String[0], "a missing operator");
+        assertInvalid(new SQLTerm[] { T, F }, new String[] { "NAND" }, "an unknown operator");
+        assertInvalid(new SQLTerm[] { new SQLTerm(tableName, "a", "=", 1.0) }, new String[0], "a Double for an Integer column");
+        assertInvalid(new SQLTerm[] { new SQLTerm(tableName, "d", "=", 1) }, new String[0], "an unknown column");
+        assertInvalid(new SQLTerm[] { new SQLTerm(tableName, "a", "<>", 1) }, new String[0], "an unknown comparison");
+    }
+
+    static void assertInvalid(SQLTerm[] terms, String[] operators, String name) {
+        try {
+            RowPredicate.compile(terms, operators, schema);
+            fail(name + " is accepted");
+        } catch (DBAppException e) {
+            // expected
+        }
+    }
+}
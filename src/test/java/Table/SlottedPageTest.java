@@ -0,0 +1,160 @@
+package Table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Writes pages in the slotted-page format and reads them back, and reads a
+ * page file in the version 1 layout, which has no slots.
+ */
+public class SlottedPageTest {
+    static Path directory;
+
+    @BeforeClass
+    public static void createDirectory() throws IOException {
+        Page.maximumRowsCountInPage = 200;
+        directory = Files.createTempDirectory("slotted-page-test");
+    }
+
+    @AfterClass
+    public static void deleteDirectory() throws IOException {
+        for (Path path : Files.newDirectoryStream(directory)) {
+            Files.delete(path);
+        }
+        Files.delete(directory);
+    }
+
+    static void assertSamePage(Page expected, Page actual, String name) {
+        assertEquals(name + ": rows", expected.size(), actual.size());
+        assertEquals(name + ": next slot", expected.getNextSlot(), actual.getNextSlot());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(name + ": slot of row " + row, expected.getSlot(row), actual.getSlot(row));
+            assertArrayEquals(name + ": row " + row, expected.getTuple(row).getFields(),
+                    actual.getTuple(row).getFields());
+        }
+    }
+
+    static Page roundTrip(Page page, String fileName) throws IOException {
+        Path path = directory.resolve(fileName + SlottedPage.EXTENSION);
+        SlottedPage.write(path, page);
+        return SlottedPage.read(path, page.name);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Page page = new Page("page 0");
+        page.addTuple(new Tuple(1, "ali", 0.7));
+        page.addTuple(new Tuple(2, "", -3.25));
+        page.addTuple(new Tuple(3, null, Double.NaN));
+        page.addTuple(new Tuple(4, "été 日本", Double.MAX_VALUE));
+        page.addTuple(new Tuple(Integer.MIN_VALUE, "last", null));
+
+        // a removed row leaves its slot unused, so slots are no longer row
+        // numbers
+        page.removeRow(1);
+        page.insertTuple(0, new Tuple(0, "first", 1.0));
+        assertSamePage(page, roundTrip(page, "page 0"), "round trip");
+
+        Page emptyPage = new Page("page 1");
+        assertSamePage(emptyPage, roundTrip(emptyPage, "page 1"), "empty page");
+
+        // a page read back can be written again unchanged
+        Page readPage = roundTrip(page, "page 2");
+        assertSamePage(page, roundTrip(readPage, "page 3"), "second round trip");
+    }
+
+    /**
+     * Writes the rows in the version 1 layout: a 16 byte header without the
+     * next slot, then one record offset per row.
+     */
+    static Path writeVersion1(Object[][] rows, int fieldCount) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.putInt(SlottedPage.MAGIC);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putInt(rows.length);
+        buffer.putInt(fieldCount);
+
+        int slotDirectory = buffer.position();
+        buffer.position(slotDirectory + 4 * rows.length);
+        for (int row = 0; row < rows.length; row++) {
+            buffer.putInt(slotDirectory + 4 * row, buffer.position());
+            for (Object field : rows[row]) {
+                if (field == null) {
+                    buffer.put((byte) 0);
+                } else if (field instanceof Integer) {
+                    buffer.put((byte) 1);
+                    buffer.putInt((Integer) field);
+                } else if (field instanceof Double) {
+                    buffer.put((byte) 2);
+                    buffer.putDouble((Double) field);
+                } else {
+                    byte[] bytes = ((String) field).getBytes(StandardCharsets.UTF_8);
+                    buffer.put((byte) 3);
+                    buffer.putInt(bytes.length);
+                    buffer.put(bytes);
+                }
+            }
+        }
+
+        Path path = directory.resolve("version 1" + SlottedPage.EXTENSION);
+        Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+        return path;
+    }
+
+    @Test
+    public void readVersion1() throws Exception {
+        Object[][] rows = { { 10, "a", 1.5 }, { 20, null, 2.5 }, { 30, "cç", null } };
+        Page page = SlottedPage.read(writeVersion1(rows, 3), "page 7");
+
+        assertEquals("page 7", page.name);
+        assertEquals(rows.length, page.size());
+        for (int row = 0; row < rows.length; row++) {
+            assertEquals("slot of version 1 row " + row, row, page.getSlot(row));
+            assertArrayEquals("version 1 row " + row, rows[row], page.getTuple(row).getFields());
+        }
+        assertEquals(rows.length, page.getNextSlot());
+
+        // the page is written back in the current version
+        Page rewritten = roundTrip(page, "rewritten");
+        assertSamePage(page, rewritten, "version 1 page written again");
+        byte[] bytes = Files.readAllBytes(directory.resolve("rewritten" + SlottedPage.EXTENSION));
+        assertEquals(2, ByteBuffer.wrap(bytes).getShort(4));
+    }
+
+    @Test
+    public void rejectInvalidFiles() throws Exception {
+        Path path = directory.resolve("invalid" + SlottedPage.EXTENSION);
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+        assertRejected(path, "a file without the magic number");
+
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        buffer.putInt(SlottedPage.MAGIC).putShort((short) 9);
+        Files.write(path, buffer.array());
+        assertRejected(path, "an unknown version");
+
+        Files.write(path, new byte[4]);
+        assertRejected(path, "a truncated file");
+    }
+
+    static void assertRejected(Path path, String name) {
+        try {
+            SlottedPage.read(path, "invalid");
+            fail(name + " is read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}